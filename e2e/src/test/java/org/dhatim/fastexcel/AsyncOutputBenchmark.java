@@ -0,0 +1,73 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import org.dhatim.fastexcel.benchmarks.BenchmarkLauncher;
+import org.openjdk.jmh.annotations.Benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Write a workbook to a stream limited to about 10 MB/s, like a slow HTTP
+ * response, with compression and writes on the generating thread or on the
+ * asynchronous output thread.
+ */
+public class AsyncOutputBenchmark extends BenchmarkLauncher {
+
+    private static final int NB_ROWS = 200_000;
+    private static final long NANOS_PER_BYTE = 100;
+
+    private static final class SlowStream extends OutputStream {
+        @Override
+        public void write(int b) {
+            LockSupport.parkNanos(NANOS_PER_BYTE);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            LockSupport.parkNanos(len * NANOS_PER_BYTE);
+        }
+    }
+
+    @Benchmark
+    public void synchronousOutput() throws IOException {
+        write(false);
+    }
+
+    @Benchmark
+    public void asyncOutput() throws IOException {
+        write(true);
+    }
+
+    private static void write(boolean async) throws IOException {
+        try (Workbook wb = new Workbook(new SlowStream(), "Perf", "1.0")) {
+            if (async) {
+                wb.setAsyncOutput(8);
+            }
+            Worksheet ws = wb.newWorksheet("Sheet 1");
+            ws.setAutoFlushRows(1000);
+            for (int r = 0; r < NB_ROWS; ++r) {
+                ws.value(r, 0, r);
+                ws.value(r, 1, "Customer " + (r % 1000));
+                ws.value(r, 2, r * 0.37);
+                ws.value(r, 3, r % 2 == 0);
+                ws.value(r, 4, r * 17L);
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.dhatim.fastexcel.benchmarks.BenchmarkLauncher;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.SplittableRandom;
+
+/**
+ * Fill a numeric worksheet cell by cell with boxed values, cell by cell with
+ * primitive values, and one row at a time with arrays.
+ */
+@State(Scope.Benchmark)
+public class BulkValueBenchmark extends BenchmarkLauncher {
+
+    private static final int NB_ROWS = 100_000;
+    private static final int NB_COLS = 20;
+
+    private final double[][] data = new double[NB_ROWS][NB_COLS];
+
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        for (double[] row : data) {
+            for (int c = 0; c < NB_COLS; ++c) {
+                row[c] = random.nextInt(1_000_000) / 100.0;
+            }
+        }
+    }
+
+    @Benchmark
+    public void boxedValues() throws IOException {
+        try (Workbook wb = new Workbook(NullOutputStream.NULL_OUTPUT_STREAM, "Perf", "1.0")) {
+            Worksheet ws = wb.newWorksheet("Sheet 1");
+            ws.setAutoFlushRows(1000);
+            for (int r = 0; r < NB_ROWS; ++r) {
+                for (int c = 0; c < NB_COLS; ++c) {
+                    ws.value(r, c, (Number) data[r][c]);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void primitiveValues() throws IOException {
+        try (Workbook wb = new Workbook(NullOutputStream.NULL_OUTPUT_STREAM, "Perf", "1.0")) {
+            Worksheet ws = wb.newWorksheet("Sheet 1");
+            ws.setAutoFlushRows(1000);
+            for (int r = 0; r < NB_ROWS; ++r) {
+                for (int c = 0; c < NB_COLS; ++c) {
+                    ws.value(r, c, data[r][c]);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    public void writeRows() throws IOException {
+        try (Workbook wb = new Workbook(NullOutputStream.NULL_OUTPUT_STREAM, "Perf", "1.0")) {
+            Worksheet ws = wb.newWorksheet("Sheet 1");
+            ws.setAutoFlushRows(1000);
+            for (int r = 0; r < NB_ROWS; ++r) {
+                ws.writeRow(r, 0, data[r]);
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.dhatim.fastexcel.benchmarks.BenchmarkLauncher;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialize cells, in cells per second: cell references built with
+ * {@link Ref#colToString(int)} and {@code r + 1} as before, against the
+ * precomputed {@link AddressCodec}, and whole rows written by {@link Row}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(CellReferenceBenchmark.NB_ROWS * CellReferenceBenchmark.NB_COLS)
+public class CellReferenceBenchmark extends BenchmarkLauncher {
+
+    static final int NB_ROWS = 100_000;
+    static final int NB_COLS = 40;
+
+    private Workbook workbook;
+    private Worksheet worksheet;
+    private Row row;
+
+    @Setup
+    public void setUp() {
+        workbook = new Workbook(NullOutputStream.NULL_OUTPUT_STREAM, "Perf", "1.0");
+        worksheet = workbook.newWorksheet("Sheet 1");
+        row = new Row(NB_COLS);
+        for (int c = 0; c < NB_COLS; ++c) {
+            row.ensureColumn(c);
+            row.setInt(c, c * 1000);
+        }
+    }
+
+    @Benchmark
+    public void legacyReferences() throws IOException {
+        Ref ref = new Ref() {
+            @Override
+            public String colToString(int col) {
+                StringBuilder sb = new StringBuilder();
+                while (col >= 0) {
+                    sb.append((char) ('A' + (col % 26)));
+                    col = (col / 26) - 1;
+                }
+                return sb.reverse().toString();
+            }
+        };
+        Writer w = new Writer(NullOutputStream.NULL_OUTPUT_STREAM);
+        for (int r = 0; r < NB_ROWS; ++r) {
+            for (int c = 0; c < NB_COLS; ++c) {
+                w.append("<c r=\"").append(ref.colToString(c)).append(r + 1).append("\"><v>").append(c).append("</v></c>");
+            }
+        }
+        w.flush();
+    }
+
+    @Benchmark
+    public void codecReferences() throws IOException {
+        Writer w = new Writer(NullOutputStream.NULL_OUTPUT_STREAM);
+        for (int r = 0; r < NB_ROWS; ++r) {
+            byte[] rowRef = AddressCodec.encodeRow(r);
+            for (int c = 0; c < NB_COLS; ++c) {
+                w.append("<c r=\"").appendCellReference(c, rowRef).append("\"><v>").append(c).append("</v></c>");
+            }
+        }
+        w.flush();
+    }
+
+    @Benchmark
+    public void writeRows() throws IOException {
+        Writer w = new Writer(NullOutputStream.NULL_OUTPUT_STREAM);
+        for (int r = 0; r < NB_ROWS; ++r) {
+            row.write(w, r, worksheet, 0);
+        }
+        w.flush();
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Keep a whole worksheet of numbers in memory, without flushing. With one
+ * object per cell plus a boxed value, this would take more than 40 bytes per
+ * cell and not fit in the heap; primitive row storage takes 13.
+ */
+public class CellStorageMemoryE2E {
+    public static final int ROWS = 10_000;
+    public static final int COLS = 200;
+
+    @BeforeAll
+    static void checkMemoryLimit() {
+        assertThat(Runtime.getRuntime().totalMemory() / (1024 * 1024)).isLessThan(51);
+    }
+
+    @Test
+    void numericCellsAreCompact() throws IOException {
+        try (Workbook wb = new Workbook(new NullOutputStream(), "test", "1.0")) {
+            Worksheet sheet = wb.newWorksheet("sheet");
+            long before = usedMemory();
+            for (int r = 0; r < ROWS; r++) {
+                for (int c = 0; c < COLS; c++) {
+                    if (c % 2 == 0) {
+                        sheet.value(r, c, (double) r * COLS + c);
+                    } else {
+                        sheet.value(r, c, r);
+                    }
+                }
+            }
+            long bytesPerCell = (usedMemory() - before) / ((long) ROWS * COLS);
+            assertThat(bytesPerCell).as("Bytes per cell").isLessThan(16);
+            sheet.close();
+        }
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; ++i) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import org.dhatim.fastexcel.benchmarks.BenchmarkLauncher;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Convert a time series of timestamps to serial numbers, in values per
+ * second: the former {@link Calendar} based conversion of {@link Date} values
+ * against the primitive {@link TimestampUtil} conversions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(DateSerialBenchmark.NB_VALUES)
+public class DateSerialBenchmark extends BenchmarkLauncher {
+
+    static final int NB_VALUES = 1_000_000;
+
+    private final Date[] dates = new Date[NB_VALUES];
+    private final LocalDateTime[] localDateTimes = new LocalDateTime[NB_VALUES];
+    private final long[] epochMillis = new long[NB_VALUES];
+    private final ZoneId zone = ZoneId.of("Europe/Paris");
+
+    @Setup
+    public void setUp() {
+        // One value per minute, crossing a few daylight saving time transitions
+        long start = 1_600_000_000_000L;
+        for (int i = 0; i < NB_VALUES; ++i) {
+            epochMillis[i] = start + i * 60_000L;
+            dates[i] = new Date(epochMillis[i]);
+            localDateTimes[i] = LocalDateTime.ofInstant(dates[i].toInstant(), zone);
+        }
+    }
+
+    @Benchmark
+    public double calendarDates() {
+        double sum = 0;
+        for (Date d : dates) {
+            Calendar cal = Calendar.getInstance();
+            cal.setTime(d);
+            sum += cal.get(Calendar.YEAR) + cal.get(Calendar.DAY_OF_YEAR) + cal.get(Calendar.HOUR_OF_DAY)
+                    + cal.get(Calendar.MINUTE) + cal.get(Calendar.SECOND) + cal.get(Calendar.MILLISECOND);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double serialDates() {
+        double sum = 0;
+        for (Date d : dates) {
+            sum += TimestampUtil.toSerial(d);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double serialLocalDateTimes() {
+        double sum = 0;
+        for (LocalDateTime d : localDateTimes) {
+            sum += TimestampUtil.toSerial(d);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double serialEpochMillis() {
+        double sum = 0;
+        for (long m : epochMillis) {
+            sum += TimestampUtil.toSerial(m, zone);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.dhatim.fastexcel.benchmarks.BenchmarkLauncher;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write doubles, in values per second: {@link DoubleFormatter} against the
+ * former {@link Double#toString(double)} encoding. Prices have two decimals,
+ * while measures use every bit of precision.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(DoubleFormatBenchmark.NB_VALUES)
+public class DoubleFormatBenchmark extends BenchmarkLauncher {
+
+    static final int NB_VALUES = 1_000_000;
+
+    private final double[] prices = new double[NB_VALUES];
+    private final double[] measures = new double[NB_VALUES];
+
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < NB_VALUES; ++i) {
+            prices[i] = random.nextInt(1_000_000) / 100.0;
+            measures[i] = random.nextDouble() * Math.pow(10, random.nextInt(-5, 10));
+        }
+    }
+
+    @Benchmark
+    public void toStringPrices() throws IOException {
+        writeWithToString(prices);
+    }
+
+    @Benchmark
+    public void formatterPrices() throws IOException {
+        writeWithFormatter(prices);
+    }
+
+    @Benchmark
+    public void toStringMeasures() throws IOException {
+        writeWithToString(measures);
+    }
+
+    @Benchmark
+    public void formatterMeasures() throws IOException {
+        writeWithFormatter(measures);
+    }
+
+    private static void writeWithToString(double[] values) throws IOException {
+        Writer w = new Writer(NullOutputStream.NULL_OUTPUT_STREAM);
+        for (double v : values) {
+            w.append(Double.toString(v)).append(' ');
+        }
+        w.flush();
+    }
+
+    private static void writeWithFormatter(double[] values) throws IOException {
+        Writer w = new Writer(NullOutputStream.NULL_OUTPUT_STREAM);
+        for (double v : values) {
+            w.append(v).append(' ');
+        }
+        w.flush();
+    }
+}
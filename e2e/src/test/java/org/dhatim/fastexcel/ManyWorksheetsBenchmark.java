@@ -0,0 +1,55 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.dhatim.fastexcel.benchmarks.BenchmarkLauncher;
+import org.openjdk.jmh.annotations.Benchmark;
+
+import java.io.IOException;
+
+/**
+ * Write a workbook with one small worksheet per customer, all worksheets
+ * requested with the same name or with distinct names.
+ */
+public class ManyWorksheetsBenchmark extends BenchmarkLauncher {
+
+    private static final int NB_SHEETS = 5_000;
+    private static final int NB_ROWS = 20;
+
+    @Benchmark
+    public void distinctNames() throws IOException {
+        write(false);
+    }
+
+    @Benchmark
+    public void sameNames() throws IOException {
+        write(true);
+    }
+
+    private static void write(boolean sameNames) throws IOException {
+        try (Workbook wb = new Workbook(NullOutputStream.NULL_OUTPUT_STREAM, "Perf", "1.0")) {
+            for (int i = 0; i < NB_SHEETS; ++i) {
+                Worksheet ws = wb.newWorksheet(sameNames ? "Customer" : "Customer " + i);
+                for (int r = 0; r < NB_ROWS; ++r) {
+                    ws.value(r, 0, i);
+                    ws.value(r, 1, r * 1.5);
+                }
+                ws.finish();
+            }
+        }
+    }
+}
@@ -22,6 +22,7 @@ public class MemoryUsageE2E {
     public static final int SHEETS = 3;
     public static final int COLS = 200;
     public static final int FLUSH_EVERY_NR_OR_ROWS = 100;
+    public static final long AUTO_FLUSH_BYTES = 1024 * 1024;
 
     @BeforeAll
     static void checkMemoryLimit() {
@@ -31,7 +32,7 @@ public class MemoryUsageE2E {
     @Test
     void writeAndReadFile() throws IOException {
         try (OutputStream out = new FileOutputStream(testFile)) {
-            write(out);
+            write(out, false);
         }
 
         try (ReadableWorkbook wb = new ReadableWorkbook(testFile)) {
@@ -39,8 +40,22 @@ public class MemoryUsageE2E {
         }
     }
 
-    private void write(OutputStream out) throws IOException {
+    @Test
+    void writeAndReadFileWithAutoFlush() throws IOException {
+        try (OutputStream out = new FileOutputStream(testFile)) {
+            write(out, true);
+        }
+
+        try (ReadableWorkbook wb = new ReadableWorkbook(testFile)) {
+            read(wb);
+        }
+    }
+
+    private void write(OutputStream out, boolean autoFlush) throws IOException {
         try(Workbook wb = new Workbook(out, "test", "1.0")){
+            if (autoFlush) {
+                wb.setAutoFlush(AUTO_FLUSH_BYTES);
+            }
             for (int s = 0; s < SHEETS; s++) {
                 try(Worksheet sheet = wb.newWorksheet("sheet " + s)){
                     for (int r = 0; r < ROWS; r++) {
@@ -48,7 +63,7 @@ public class MemoryUsageE2E {
                         for (int c = 0; c < COLS; c++) {
                             sheet.value(r, c, valueFor(r, c));
                         }
-                        if (r % FLUSH_EVERY_NR_OR_ROWS == 0) {
+                        if (!autoFlush && r % FLUSH_EVERY_NR_OR_ROWS == 0) {
                             sheet.flush();
                         }
                     }
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import org.dhatim.fastexcel.benchmarks.BenchmarkLauncher;
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * Check and register merged ranges as reports do: a large title block
+ * followed by either two merged cells on every row, or blocks of a hundred
+ * rows. The former bit matrix is given as a reference for {@link RangeIndex}.
+ */
+public class MergeIndexBenchmark extends BenchmarkLauncher {
+
+    private static final int NB_ROWS = 100_000;
+    private static final int BLOCK_ROWS = 100;
+
+    @Benchmark
+    public int bitMatrixRows() {
+        return merge(new MatrixMerges(), 1, 1);
+    }
+
+    @Benchmark
+    public int rangeIndexRows() {
+        return merge(new IndexMerges(), 1, 1);
+    }
+
+    @Benchmark
+    public int bitMatrixBlocks() {
+        return merge(new MatrixMerges(), BLOCK_ROWS, 49);
+    }
+
+    @Benchmark
+    public int rangeIndexBlocks() {
+        return merge(new IndexMerges(), BLOCK_ROWS, 49);
+    }
+
+    private static int merge(Merges merges, int height, int right) {
+        int count = merges.merge(0, 0, 4999, 49) ? 1 : 0;
+        for (int r = 5000; r + height <= NB_ROWS; r += height) {
+            count += merges.merge(r, 0, r + height - 1, right) ? 1 : 0;
+            count += merges.contains(r, 1) ? 1 : 0;
+        }
+        return count;
+    }
+
+    private interface Merges {
+        boolean merge(int top, int left, int bottom, int right);
+
+        boolean contains(int r, int c);
+    }
+
+    private static final class MatrixMerges implements Merges {
+        private final DynamicBitMatrix matrix = new DynamicBitMatrix(Worksheet.MAX_COLS, Worksheet.MAX_ROWS);
+
+        @Override
+        public boolean merge(int top, int left, int bottom, int right) {
+            if (matrix.isConflict(top, left, bottom, right)) {
+                return false;
+            }
+            matrix.setRegion(top, left, bottom, right);
+            return true;
+        }
+
+        @Override
+        public boolean contains(int r, int c) {
+            return matrix.get(r, c);
+        }
+    }
+
+    private static final class IndexMerges implements Merges {
+        private final RangeIndex index = new RangeIndex();
+
+        @Override
+        public boolean merge(int top, int left, int bottom, int right) {
+            if (index.overlaps(top, left, bottom, right)) {
+                return false;
+            }
+            index.add(top, left, bottom, right);
+            return true;
+        }
+
+        @Override
+        public boolean contains(int r, int c) {
+            return index.contains(r, c);
+        }
+    }
+}
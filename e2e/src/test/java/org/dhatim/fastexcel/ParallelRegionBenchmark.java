@@ -0,0 +1,83 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.dhatim.fastexcel.benchmarks.BenchmarkLauncher;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Fill one large worksheet whose rows are costly to compute: on a single
+ * thread with the row writer of the worksheet, and with one
+ * {@link ParallelRegion} per band of rows, filled by the common pool.
+ */
+@State(Scope.Benchmark)
+public class ParallelRegionBenchmark extends BenchmarkLauncher {
+
+    private static final int NB_ROWS = 400_000;
+    private static final int NB_COLS = 8;
+    private static final int NB_BANDS = 8;
+
+    @Benchmark
+    public void singleThread() throws IOException {
+        try (Workbook wb = new Workbook(NullOutputStream.NULL_OUTPUT_STREAM, "Perf", "1.0")) {
+            Worksheet ws = wb.newWorksheet("Rows");
+            RowWriter w = ws.rowWriter();
+            for (int r = 0; r < NB_ROWS; ++r) {
+                writeRow(w.nextRow(), r);
+            }
+        }
+    }
+
+    @Benchmark
+    public void parallelRegions() throws IOException {
+        try (Workbook wb = new Workbook(NullOutputStream.NULL_OUTPUT_STREAM, "Perf", "1.0")) {
+            Worksheet ws = wb.newWorksheet("Rows");
+            int bandRows = NB_ROWS / NB_BANDS;
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int b = 0; b < NB_BANDS; ++b) {
+                ParallelRegion region = ws.parallelRegion(b * bandRows, (b + 1) * bandRows);
+                futures.add(CompletableFuture.runAsync(() -> {
+                    try (ParallelRegion r = region) {
+                        RowWriter w = r.rowWriter();
+                        for (int i = r.getFromRow(); i < r.getToRow(); ++i) {
+                            writeRow(w.nextRow(), i);
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        }
+    }
+
+    private static void writeRow(RowWriter w, int r) throws IOException {
+        w.cell(r).cell("Group " + (r % 200));
+        double x = r;
+        for (int c = 2; c < NB_COLS; ++c) {
+            // Stand-in for the computation of a cell
+            x = Math.sqrt(x * 31 + c) + Math.sin(x);
+            w.cell(x);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.dhatim.fastexcel.benchmarks.BenchmarkLauncher;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Write a list of beans: field by field with {@link Worksheet#value}, and
+ * with a {@link RowSchema}.
+ */
+@State(Scope.Benchmark)
+public class RecordWriteBenchmark extends BenchmarkLauncher {
+
+    private static final int NB_RECORDS = 200_000;
+
+    public static class Trade {
+        private final long id;
+        private final String name;
+        private final double price;
+        private final int quantity;
+        private final LocalDate tradeDate;
+
+        Trade(long id, String name, double price, int quantity, LocalDate tradeDate) {
+            this.id = id;
+            this.name = name;
+            this.price = price;
+            this.quantity = quantity;
+            this.tradeDate = tradeDate;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public double getPrice() {
+            return price;
+        }
+
+        public int getQuantity() {
+            return quantity;
+        }
+
+        public LocalDate getTradeDate() {
+            return tradeDate;
+        }
+    }
+
+    private final List<Trade> trades = new ArrayList<>();
+
+    @Setup
+    public void setUp() {
+        LocalDate start = LocalDate.of(2020, 1, 1);
+        for (int i = 0; i < NB_RECORDS; ++i) {
+            trades.add(new Trade(i, "Counterparty " + (i % 500), i * 0.01, i % 1000, start.plusDays(i % 1500)));
+        }
+    }
+
+    @Benchmark
+    public void valuePerField() throws IOException {
+        try (Workbook wb = new Workbook(NullOutputStream.NULL_OUTPUT_STREAM, "Perf", "1.0")) {
+            Worksheet ws = wb.newWorksheet("Trades");
+            ws.setAutoFlushRows(1000);
+            ws.value(0, 0, "id");
+            ws.value(0, 1, "name");
+            ws.value(0, 2, "price");
+            ws.value(0, 3, "quantity");
+            ws.value(0, 4, "tradeDate");
+            int r = 1;
+            for (Trade t : trades) {
+                ws.value(r, 0, t.getId());
+                ws.value(r, 1, t.getName());
+                ws.value(r, 2, t.getPrice());
+                ws.value(r, 3, t.getQuantity());
+                ws.value(r, 4, t.getTradeDate());
+                ws.style(r, 4).format("yyyy-mm-dd").set();
+                ++r;
+            }
+        }
+    }
+
+    @Benchmark
+    public void rowSchema() throws IOException {
+        try (Workbook wb = new Workbook(NullOutputStream.NULL_OUTPUT_STREAM, "Perf", "1.0")) {
+            RowSchema<Trade> schema = RowSchema.builder(Trade.class)
+                    .property("id")
+                    .property("name")
+                    .property("price")
+                    .property("quantity")
+                    .property("tradeDate")
+                    .build();
+            wb.newWorksheet("Trades").writeRecords(schema, trades);
+        }
+    }
+}
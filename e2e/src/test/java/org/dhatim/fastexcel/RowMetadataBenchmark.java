@@ -0,0 +1,49 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.dhatim.fastexcel.benchmarks.BenchmarkLauncher;
+import org.openjdk.jmh.annotations.Benchmark;
+
+import java.io.IOException;
+
+/**
+ * Write a worksheet with many hidden, grouped and resized rows, flushing
+ * every hundred rows as large exports do.
+ */
+public class RowMetadataBenchmark extends BenchmarkLauncher {
+
+    private static final int NB_ROWS = 200_000;
+
+    @Benchmark
+    public void flushRowAttributes() throws IOException {
+        try (Workbook wb = new Workbook(NullOutputStream.NULL_OUTPUT_STREAM, "Perf", "1.0")) {
+            Worksheet ws = wb.newWorksheet("Sheet 1");
+            for (int r = 0; r < NB_ROWS; ++r) {
+                ws.value(r, 0, r);
+                if (r % 10 == 0) {
+                    ws.hideRow(r);
+                    ws.groupRows(r, r + 5);
+                    ws.rowHeight(r, 20);
+                }
+                if (r % 100 == 99) {
+                    ws.flush();
+                }
+            }
+        }
+    }
+}
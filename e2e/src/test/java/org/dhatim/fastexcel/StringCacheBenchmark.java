@@ -0,0 +1,125 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import org.dhatim.fastexcel.benchmarks.BenchmarkLauncher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.ToIntFunction;
+
+/**
+ * Cache the same set of strings from a growing number of threads, with
+ * {@link StringCache} and with the former implementation guarded by a single
+ * monitor. Each thread caches all strings, so the total amount of work grows
+ * with the number of threads: without contention, run time stays flat up to
+ * the number of available cores.
+ */
+@State(Scope.Benchmark)
+public class StringCacheBenchmark extends BenchmarkLauncher {
+
+    private static final int NB_STRINGS = 1_000_000;
+    private static final int NB_UNIQUE_STRINGS = 50_000;
+
+    @Param({"1", "2", "4", "8", "16"})
+    private int threads;
+
+    private String[] strings;
+    private ExecutorService executor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        strings = new String[NB_STRINGS];
+        for (int i = 0; i < NB_STRINGS; ++i) {
+            strings[i] = "String " + (i * 7919L % NB_UNIQUE_STRINGS);
+        }
+        executor = Executors.newFixedThreadPool(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public long stripedCache() throws Exception {
+        try (StringCache cache = new StringCache(StringStore.DEFAULT_MEMORY_THRESHOLD)) {
+            return run(s -> {
+                int index = cache.intern(s);
+                return index < 0 ? ~index : index;
+            });
+        }
+    }
+
+    @Benchmark
+    public long synchronizedHashMap() throws Exception {
+        SynchronizedStringCache cache = new SynchronizedStringCache();
+        return run(cache::cacheString);
+    }
+
+    private long run(ToIntFunction<String> cache) throws InterruptedException, ExecutionException {
+        List<Future<Long>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; ++t) {
+            int offset = t * (NB_STRINGS / threads);
+            futures.add(executor.submit(() -> {
+                long sum = 0;
+                for (int i = 0; i < NB_STRINGS; ++i) {
+                    sum += cache.applyAsInt(strings[(i + offset) % NB_STRINGS]);
+                }
+                return sum;
+            }));
+        }
+        long sum = 0;
+        for (Future<Long> future : futures) {
+            sum += future.get();
+        }
+        return sum;
+    }
+
+    /**
+     * Former string cache implementation, kept here as a baseline.
+     */
+    private static class SynchronizedStringCache {
+
+        private long count;
+        private final HashMap<String, Integer> strings = new HashMap<>();
+
+        int cacheString(String s) {
+            Integer result;
+            synchronized (strings) {
+                ++count;
+                result = strings.get(s);
+                if (result == null) {
+                    result = strings.size();
+                    strings.put(s, result);
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.dhatim.fastexcel.benchmarks.BenchmarkLauncher;
+import org.openjdk.jmh.annotations.Benchmark;
+
+import java.io.IOException;
+
+/**
+ * Style a large worksheet row by row, cycling through a few styles, as
+ * reports highlighting rows do. Styling a whole column range at once is
+ * given as a reference.
+ */
+public class StyleBenchmark extends BenchmarkLauncher {
+
+    private static final int NB_ROWS = 100_000;
+    private static final int NB_COLS = 5;
+    private static final String[] COLORS = {"FFF2CC", "DDEBF7", "E2EFDA", "FCE4D6"};
+
+    @Benchmark
+    public long styleRowByRow() throws IOException {
+        CountingOutputStream count = new CountingOutputStream(new NullOutputStream());
+        try (Workbook wb = new Workbook(count, "Perf", "1.0")) {
+            Worksheet ws = wb.newWorksheet("Sheet 1");
+            for (int r = 0; r < NB_ROWS; ++r) {
+                for (int c = 0; c < NB_COLS; ++c) {
+                    ws.value(r, c, r * c);
+                }
+                ws.range(r, 0, r, NB_COLS - 1).style().fillColor(COLORS[r % COLORS.length]).set();
+                ws.style(r, 0).bold().format("0").set();
+                if (r % 1000 == 999) {
+                    ws.flush();
+                }
+            }
+        }
+        return count.getByteCount();
+    }
+
+    @Benchmark
+    public long styleRange() throws IOException {
+        CountingOutputStream count = new CountingOutputStream(new NullOutputStream());
+        try (Workbook wb = new Workbook(count, "Perf", "1.0")) {
+            Worksheet ws = wb.newWorksheet("Sheet 1");
+            for (int r = 0; r < NB_ROWS; ++r) {
+                for (int c = 0; c < NB_COLS; ++c) {
+                    ws.value(r, c, r * c);
+                }
+            }
+            ws.range(0, 0, NB_ROWS - 1, NB_COLS - 1).style().fillColor(COLORS[0]).set();
+            ws.range(0, 0, NB_ROWS - 1, 0).style().bold().format("0").set();
+        }
+        return count.getByteCount();
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.dhatim.fastexcel.benchmarks.BenchmarkLauncher;
+import org.openjdk.jmh.annotations.Benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compare the byte-oriented {@link Writer} with the former implementation
+ * buffering chars into a {@link StringBuilder}.
+ */
+public class WriterBufferBenchmark extends BenchmarkLauncher {
+
+    private static final int NB_ROWS = 200_000;
+    private static final int NB_COLS = 10;
+
+    @Benchmark
+    public long stringBuilderWriter() throws IOException {
+        CountingOutputStream count = new CountingOutputStream(new NullOutputStream());
+        StringBuilderWriter w = new StringBuilderWriter(count);
+        for (int r = 0; r < NB_ROWS; ++r) {
+            w.append("<row r=\"").append(r + 1).append("\">");
+            for (int c = 0; c < NB_COLS; ++c) {
+                w.append("<c r=\"").append("ABCDEFGHIJ".substring(c, c + 1)).append(r + 1).append("\"><v>");
+                if (c % 2 == 0) {
+                    w.append((long) r * c);
+                } else {
+                    w.append(r / 87.0);
+                }
+                w.append("</v></c>");
+            }
+            w.append("</row>");
+        }
+        w.flush();
+        return count.getByteCount();
+    }
+
+    @Benchmark
+    public long byteWriter() throws IOException {
+        CountingOutputStream count = new CountingOutputStream(new NullOutputStream());
+        Writer w = new Writer(count);
+        for (int r = 0; r < NB_ROWS; ++r) {
+            w.append("<row r=\"").append(r + 1).append("\">");
+            for (int c = 0; c < NB_COLS; ++c) {
+                w.append("<c r=\"").append("ABCDEFGHIJ".substring(c, c + 1)).append(r + 1).append("\"><v>");
+                if (c % 2 == 0) {
+                    w.append((long) r * c);
+                } else {
+                    w.append(r / 87.0);
+                }
+                w.append("</v></c>");
+            }
+            w.append("</row>");
+        }
+        w.flush();
+        return count.getByteCount();
+    }
+
+    /**
+     * Former writer implementation, kept here as a baseline.
+     */
+    private static class StringBuilderWriter {
+
+        private final OutputStream os;
+        private final StringBuilder sb = new StringBuilder(512 * 1024);
+
+        StringBuilderWriter(OutputStream os) {
+            this.os = os;
+        }
+
+        StringBuilderWriter append(String s) throws IOException {
+            sb.append(s);
+            check();
+            return this;
+        }
+
+        StringBuilderWriter append(int n) throws IOException {
+            sb.append(n);
+            check();
+            return this;
+        }
+
+        StringBuilderWriter append(long n) throws IOException {
+            sb.append(n);
+            check();
+            return this;
+        }
+
+        StringBuilderWriter append(double n) throws IOException {
+            sb.append(n);
+            check();
+            return this;
+        }
+
+        private void check() throws IOException {
+            if (sb.capacity() - sb.length() < 1024) {
+                flush();
+            }
+        }
+
+        void flush() throws IOException {
+            os.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+            sb.setLength(0);
+        }
+    }
+}
@@ -24,6 +24,26 @@ public final class CellAddress implements Comparable<CellAddress> {
 
     private static final char ABSOLUTE_REFERENCE_MARKER = '$';
     private static final int COL_RADIX = 'Z' - 'A' + 1;
+    private static final int MAX_COLS = 16_384;
+    private static final int MAX_COL_CHARS = 3;
+    /**
+     * Letters of each column supported by Excel, right-aligned in
+     * {@link #MAX_COL_CHARS} bytes.
+     */
+    private static final byte[] COLUMNS = new byte[MAX_COL_CHARS * MAX_COLS];
+    /**
+     * Maximum number of row digits parsed without overflow checks.
+     */
+    private static final int MAX_FAST_ROW_DIGITS = 9;
+
+    static {
+        for (int c = 0; c < MAX_COLS; ++c) {
+            int end = MAX_COL_CHARS * (c + 1);
+            for (int n = c, p = end - 1; n >= 0; n = n / COL_RADIX - 1) {
+                COLUMNS[p--] = (byte) ('A' + n % COL_RADIX);
+            }
+        }
+    }
 
     private final int row;
     private final int col;
@@ -59,8 +79,28 @@ public final class CellAddress implements Comparable<CellAddress> {
                 col = col * COL_RADIX + toUpperCase(c) - (int) 'A' + 1;
             }
             this.col = col - 1;
-            this.row = Integer.parseUnsignedInt(address.substring(offset)) - 1;
+            this.row = parseRow(address, offset) - 1;
+        }
+    }
+
+    /**
+     * Parse the one-based row number of a cell reference, without creating
+     * a substring in the common case.
+     */
+    private static int parseRow(String address, int offset) {
+        final int length = address.length();
+        if (offset == length || length - offset > MAX_FAST_ROW_DIGITS) {
+            return Integer.parseUnsignedInt(address.substring(offset));
         }
+        int row = 0;
+        for (int i = offset; i < length; i++) {
+            final char c = address.charAt(i);
+            if (!isAsciiDigit(c)) {
+                return Integer.parseUnsignedInt(address.substring(offset));
+            }
+            row = row * 10 + (c - '0');
+        }
+        return row;
     }
 
     public int getRow() {
@@ -111,11 +151,14 @@ public final class CellAddress implements Comparable<CellAddress> {
     }
 
     public static String convertNumToColString(int col) {
+        if (col >= 0 && col < MAX_COLS) {
+            int length = col < COL_RADIX ? 1 : col < COL_RADIX + COL_RADIX * COL_RADIX ? 2 : 3;
+            return new String(COLUMNS, MAX_COL_CHARS * (col + 1) - length, length, StandardCharsets.ISO_8859_1);
+        }
         // Excel counts column A as the 1st column, we
         // treat it as the 0th one
         int excelColNum = col + 1;
 
-        final int MAX_COL_CHARS = 3;
         final byte[] colRef = new byte[MAX_COL_CHARS];
         int colRemain = excelColNum;
         int pos = 2;
@@ -3,6 +3,7 @@ package org.dhatim.fastexcel.reader;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class CellAddressTest {
     @Test
@@ -23,6 +24,26 @@ class CellAddressTest {
         assertCellAddress("ZZZ9999999", 9999998, 18277);
     }
 
+    @Test
+    void allColumns() {
+        StringBuilder expected = new StringBuilder();
+        for (int col = 0; col < 18_278; col++) {
+            expected.setLength(0);
+            for (int n = col; n >= 0; n = n / 26 - 1) {
+                expected.insert(0, (char) ('A' + n % 26));
+            }
+            assertEquals(expected.toString(), CellAddress.convertNumToColString(col));
+            assertCellAddressFromRef(expected + "7", 6, col);
+        }
+    }
+
+    @Test
+    void invalidRow() {
+        assertThrows(NumberFormatException.class, () -> new CellAddress("A"));
+        assertThrows(NumberFormatException.class, () -> new CellAddress("A1x"));
+        assertThrows(NumberFormatException.class, () -> new CellAddress("A99999999999"));
+    }
+
     private void assertCellAddress(String ref, int row, int col) {
         assertCellAddressFromRef(ref, row, col);
         assertCellAddressFromRef(ref.toLowerCase(), row, col);
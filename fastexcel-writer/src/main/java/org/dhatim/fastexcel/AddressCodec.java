@@ -0,0 +1,107 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encoding of cell references, such as {@code B12}, straight to bytes. The
+ * letters of every column are precomputed, and row numbers are encoded once
+ * per row then reused for each of its cells.
+ */
+final class AddressCodec {
+
+    /**
+     * Number of letters of the column names.
+     */
+    private static final int RADIX = 26;
+    /**
+     * Maximum number of letters of a column name.
+     */
+    private static final int MAX_COLUMN_LENGTH = 3;
+    /**
+     * Letters of each column, right-aligned in {@link #MAX_COLUMN_LENGTH}
+     * bytes.
+     */
+    private static final byte[] COLUMNS = new byte[MAX_COLUMN_LENGTH * Worksheet.MAX_COLS];
+
+    static {
+        for (int c = 0; c < Worksheet.MAX_COLS; ++c) {
+            int end = MAX_COLUMN_LENGTH * (c + 1);
+            for (int n = c, p = end - 1; n >= 0; n = n / RADIX - 1) {
+                COLUMNS[p--] = (byte) ('A' + n % RADIX);
+            }
+        }
+    }
+
+    private AddressCodec() {
+    }
+
+    /**
+     * Get the number of letters of a column name.
+     *
+     * @param c Zero-based column number.
+     * @return Number of letters.
+     */
+    static int getColumnLength(int c) {
+        return c < RADIX ? 1 : c < RADIX + RADIX * RADIX ? 2 : 3;
+    }
+
+    /**
+     * Get the name of a column.
+     *
+     * @param c Zero-based column number, lower than {@link Worksheet#MAX_COLS}.
+     * @return Column letters.
+     */
+    static String getColumnName(int c) {
+        int length = getColumnLength(c);
+        return new String(COLUMNS, MAX_COLUMN_LENGTH * (c + 1) - length, length, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Encode the number of a row, as written in cell references.
+     *
+     * @param r Zero-based row number.
+     * @return ASCII digits of the one-based row number.
+     */
+    static byte[] encodeRow(int r) {
+        return Integer.toString(r + 1).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Write the reference of a cell.
+     *
+     * @param b Target buffer, with room for {@link #MAX_COLUMN_LENGTH} bytes
+     * plus the encoded row.
+     * @param p Position where the reference is written.
+     * @param c Zero-based column number.
+     * @param row Row encoded with {@link #encodeRow(int)}.
+     * @return Position after the reference.
+     */
+    static int writeReference(byte[] b, int p, int c, byte[] row) {
+        int length = getColumnLength(c);
+        int from = MAX_COLUMN_LENGTH * (c + 1) - length;
+        b[p++] = COLUMNS[from];
+        if (length > 1) {
+            b[p++] = COLUMNS[from + 1];
+            if (length > 2) {
+                b[p++] = COLUMNS[from + 2];
+            }
+        }
+        System.arraycopy(row, 0, b, p, row.length);
+        return p + row.length;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static java.nio.file.StandardOpenOption.DELETE_ON_CLOSE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Append-only log of worksheet annotations, such as comments or hyperlinks,
+ * kept in a temporary file until the worksheet is finished. Each record holds
+ * a cell position and two strings; the heap does not grow with the number of
+ * records. The file is deleted when the log is closed.
+ */
+class AnnotationLog implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Consumer of records read back from the log.
+     */
+    interface RecordConsumer {
+        /**
+         * Process a record.
+         *
+         * @param row Zero-based row number.
+         * @param col Zero-based column number.
+         * @param first First string.
+         * @param second Second string, may be {@code null}.
+         * @throws IOException If an I/O error occurs.
+         */
+        void accept(int row, int col, String first, String second) throws IOException;
+    }
+
+    private final FileChannel file;
+    private final DataOutputStream out;
+    private int size;
+
+    /**
+     * Constructor, creating the temporary file.
+     *
+     * @throws UncheckedIOException If the file cannot be created.
+     */
+    AnnotationLog() {
+        try {
+            file = FileChannel.open(Files.createTempFile("fastexcel", ".log"), READ, WRITE, DELETE_ON_CLOSE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(file), BUFFER_SIZE));
+    }
+
+    /**
+     * Get the number of records in this log.
+     *
+     * @return Number of records.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Append a record.
+     *
+     * @param row Zero-based row number.
+     * @param col Zero-based column number.
+     * @param first First string.
+     * @param second Second string, may be {@code null}.
+     * @throws UncheckedIOException If an I/O error occurs.
+     */
+    void add(int row, int col, String first, String second) {
+        try {
+            out.writeInt(row);
+            out.writeInt(col);
+            writeString(first);
+            writeString(second);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        ++size;
+    }
+
+    /**
+     * Read all records back, in the order they were added. Records may be
+     * added again afterwards.
+     *
+     * @param consumer Record consumer.
+     * @throws IOException If an I/O error occurs.
+     */
+    void forEach(RecordConsumer consumer) throws IOException {
+        out.flush();
+        long end = file.position();
+        file.position(0);
+        // Not closed: that would close the file as well
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(file), BUFFER_SIZE));
+        for (int i = 0; i < size; ++i) {
+            int row = in.readInt();
+            int col = in.readInt();
+            String first = readString(in);
+            consumer.accept(row, col, first, readString(in));
+        }
+        file.position(end);
+    }
+
+    private void writeString(String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+        } else {
+            // Strings may be longer than what DataOutput.writeUTF() supports
+            byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(utf8.length);
+            out.write(utf8);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] utf8 = new byte[length];
+        in.readFully(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
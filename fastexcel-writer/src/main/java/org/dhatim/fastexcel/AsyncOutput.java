@@ -0,0 +1,337 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Queue of output operations executed in order by a dedicated thread, so
+ * that threads generating XML do not wait for compression and writes to the
+ * target stream, unless the queue is full.
+ * <p>
+ * The queue is a fixed set of slots, circulating between a queue of free
+ * slots and a queue of filled ones. A full buffer is handed over by
+ * exchanging it with the buffer of a free slot, which was written earlier:
+ * buffers are recycled and the producer never copies nor allocates them once
+ * every slot has been used.
+ */
+class AsyncOutput {
+
+    /**
+     * Interval at which threads waiting for the output thread check that it
+     * is still running.
+     */
+    private static final long POLL_MILLIS = 100;
+
+    /**
+     * Output operation run by the output thread.
+     */
+    @FunctionalInterface
+    interface Operation {
+        void run() throws IOException;
+    }
+
+    /**
+     * Receiver of the bytes of buffers, called by the output thread.
+     */
+    @FunctionalInterface
+    interface Sink {
+        void write(byte[] b, int off, int len) throws IOException;
+    }
+
+    private static final class Slot {
+        /**
+         * Bytes to write, {@code null} until a buffer is exchanged.
+         */
+        byte[] buffer;
+        int length;
+        /**
+         * Operation to run instead of writing the buffer, if not
+         * {@code null}.
+         */
+        Operation operation;
+    }
+
+    /**
+     * Operation releasing threads waiting for the operations queued before
+     * it. It runs even after a failure.
+     */
+    private static final class Barrier implements Operation {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final boolean stop;
+
+        Barrier(boolean stop) {
+            this.stop = stop;
+        }
+
+        @Override
+        public void run() {
+            latch.countDown();
+        }
+    }
+
+    private final Sink sink;
+    private final BlockingQueue<Slot> free;
+    private final BlockingQueue<Slot> filled;
+    private final Thread thread;
+    /**
+     * First failure of the output thread. Later operations are skipped, and
+     * the failure is thrown to the producer.
+     */
+    private volatile Throwable failure;
+    private volatile boolean stopped;
+    private final AtomicLong maxQueueDepth = new AtomicLong();
+    private final AtomicLong stallCount = new AtomicLong();
+    private final AtomicLong stallNanos = new AtomicLong();
+    private final AtomicLong buffersWritten = new AtomicLong();
+
+    /**
+     * Constructor, starting the output thread.
+     *
+     * @param queueDepth Number of buffers or operations which can be queued.
+     * @param sink Receiver of bytes.
+     */
+    AsyncOutput(int queueDepth, Sink sink) {
+        if (queueDepth < 1) {
+            throw new IllegalArgumentException("Queue depth must be at least 1");
+        }
+        this.sink = sink;
+        this.free = new ArrayBlockingQueue<>(queueDepth);
+        this.filled = new ArrayBlockingQueue<>(queueDepth);
+        for (int i = 0; i < queueDepth; ++i) {
+            free.add(new Slot());
+        }
+        this.thread = new Thread(this::run, "fastexcel-output");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queue a full buffer, and get another buffer to fill.
+     *
+     * @param buffer Buffer, which must not be used after this call.
+     * @param length Number of bytes to write.
+     * @return Empty buffer, at least as large as the given one.
+     * @throws IOException If an earlier operation failed.
+     */
+    byte[] swap(byte[] buffer, int length) throws IOException {
+        Slot slot = acquire(true);
+        byte[] next = slot.buffer;
+        slot.buffer = buffer;
+        slot.length = length;
+        submit(slot);
+        return next != null && next.length >= buffer.length ? next : new byte[buffer.length];
+    }
+
+    /**
+     * Queue a copy of bytes.
+     *
+     * @param b Bytes.
+     * @param off Offset of the first byte.
+     * @param len Number of bytes.
+     * @throws IOException If an earlier operation failed.
+     */
+    void write(byte[] b, int off, int len) throws IOException {
+        Slot slot = acquire(true);
+        if (slot.buffer == null || slot.buffer.length < len) {
+            slot.buffer = new byte[len];
+        }
+        System.arraycopy(b, off, slot.buffer, 0, len);
+        slot.length = len;
+        submit(slot);
+    }
+
+    /**
+     * Queue an operation.
+     *
+     * @param operation Operation.
+     * @throws IOException If an earlier operation failed.
+     */
+    void execute(Operation operation) throws IOException {
+        Slot slot = acquire(true);
+        slot.operation = operation;
+        submit(slot);
+    }
+
+    /**
+     * Queue an operation and wait until it has run.
+     *
+     * @param operation Operation.
+     * @throws IOException If this or an earlier operation failed.
+     */
+    void call(Operation operation) throws IOException {
+        execute(operation);
+        await(new Barrier(false));
+        checkFailure();
+    }
+
+    /**
+     * Wait for queued operations, then stop the output thread.
+     *
+     * @throws IOException If a queued operation failed.
+     */
+    void shutdown() throws IOException {
+        if (!stopped) {
+            await(new Barrier(true));
+            stopped = true;
+        }
+        checkFailure();
+    }
+
+    /**
+     * Stop the output thread after queued operations, ignoring failures. Used
+     * when generation fails, so that the thread does not outlive the output.
+     */
+    void abort() {
+        if (stopped) {
+            return;
+        }
+        try {
+            await(new Barrier(true));
+        } catch (IOException e) {
+            // Interrupted before the stop barrier could be queued
+            thread.interrupt();
+        } finally {
+            stopped = true;
+        }
+    }
+
+    /**
+     * Get a snapshot of statistics of this queue.
+     *
+     * @return Statistics.
+     */
+    AsyncOutputStats getStats() {
+        return new AsyncOutputStats(filled.size(), (int) maxQueueDepth.get(), stallCount.get(), stallNanos.get(), buffersWritten.get());
+    }
+
+    private void await(Barrier barrier) throws IOException {
+        Slot slot = acquire(false);
+        slot.operation = barrier;
+        submit(slot);
+        try {
+            while (!barrier.latch.await(POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                checkRunning();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for output");
+        }
+    }
+
+    /**
+     * Take a free slot, waiting for one if the queue is full.
+     *
+     * @param check Whether to throw the failure of an earlier operation.
+     * @return Free slot.
+     * @throws IOException If an earlier operation failed, the output thread
+     * died, or the calling thread was interrupted.
+     */
+    private Slot acquire(boolean check) throws IOException {
+        if (stopped) {
+            throw new IllegalStateException("Output is finished");
+        }
+        if (check) {
+            checkFailure();
+        }
+        Slot slot = free.poll();
+        if (slot == null) {
+            long start = System.nanoTime();
+            try {
+                while ((slot = free.poll(POLL_MILLIS, TimeUnit.MILLISECONDS)) == null) {
+                    checkRunning();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for output");
+            }
+            stallCount.incrementAndGet();
+            stallNanos.addAndGet(System.nanoTime() - start);
+        }
+        return slot;
+    }
+
+    private void submit(Slot slot) {
+        // Never blocks: there are as many slots as room in the queue
+        filled.add(slot);
+        maxQueueDepth.accumulateAndGet(filled.size(), Math::max);
+    }
+
+    private void checkFailure() throws IOException {
+        Throwable t = failure;
+        if (t instanceof IOException) {
+            throw (IOException) t;
+        } else if (t instanceof RuntimeException) {
+            throw (RuntimeException) t;
+        } else if (t instanceof Error) {
+            throw (Error) t;
+        } else if (t != null) {
+            throw new IOException(t);
+        }
+    }
+
+    /**
+     * Check that the output thread is still running, so that threads waiting
+     * for it do not wait forever if it was interrupted.
+     *
+     * @throws IOException If the output thread died.
+     */
+    private void checkRunning() throws IOException {
+        if (!thread.isAlive()) {
+            checkFailure();
+            throw new IOException("Output thread stopped");
+        }
+    }
+
+    private void run() {
+        while (true) {
+            Slot slot;
+            try {
+                slot = filled.take();
+            } catch (InterruptedException e) {
+                failure = new InterruptedIOException("Output thread interrupted");
+                return;
+            }
+            Operation operation = slot.operation;
+            try {
+                if (operation instanceof Barrier) {
+                    operation.run();
+                } else if (failure == null) {
+                    if (operation != null) {
+                        operation.run();
+                    } else {
+                        sink.write(slot.buffer, 0, slot.length);
+                        buffersWritten.incrementAndGet();
+                    }
+                }
+            } catch (Throwable t) {
+                failure = t;
+            }
+            slot.operation = null;
+            slot.length = 0;
+            free.add(slot);
+            if (operation instanceof Barrier && ((Barrier) operation).stop) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+/**
+ * Statistics of the asynchronous output of a workbook, see
+ * {@link Workbook#setAsyncOutput(int)}. Producer stalls are the times
+ * threads generating the workbook waited for room in the queue, which means
+ * compression or the target stream is the bottleneck.
+ */
+public final class AsyncOutputStats {
+
+    private final int queueDepth;
+    private final int maxQueueDepth;
+    private final long stallCount;
+    private final long stallNanos;
+    private final long buffersWritten;
+
+    AsyncOutputStats(int queueDepth, int maxQueueDepth, long stallCount, long stallNanos, long buffersWritten) {
+        this.queueDepth = queueDepth;
+        this.maxQueueDepth = maxQueueDepth;
+        this.stallCount = stallCount;
+        this.stallNanos = stallNanos;
+        this.buffersWritten = buffersWritten;
+    }
+
+    /**
+     * Get the number of buffers and operations waiting in the queue.
+     *
+     * @return Current queue depth.
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * Get the largest number of buffers and operations which waited in the
+     * queue at the same time.
+     *
+     * @return Maximum queue depth.
+     */
+    public int getMaxQueueDepth() {
+        return maxQueueDepth;
+    }
+
+    /**
+     * Get the number of times a producer waited for room in the queue.
+     *
+     * @return Number of stalls.
+     */
+    public long getStallCount() {
+        return stallCount;
+    }
+
+    /**
+     * Get the total time producers waited for room in the queue.
+     *
+     * @return Stall time, in nanoseconds.
+     */
+    public long getStallNanos() {
+        return stallNanos;
+    }
+
+    /**
+     * Get the number of buffers compressed and written by the output thread.
+     *
+     * @return Number of buffers.
+     */
+    public long getBuffersWritten() {
+        return buffersWritten;
+    }
+
+    @Override
+    public String toString() {
+        return "AsyncOutputStats{queueDepth=" + queueDepth + ", maxQueueDepth=" + maxQueueDepth
+                + ", stallCount=" + stallCount + ", stallNanos=" + stallNanos
+                + ", buffersWritten=" + buffersWritten + '}';
+    }
+}
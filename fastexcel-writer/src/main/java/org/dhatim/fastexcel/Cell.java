@@ -15,110 +15,129 @@
  */
 package org.dhatim.fastexcel;
 
-import java.io.IOException;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.Date;
 
 /**
- * A cell contains a value and a cached style index.
+ * A cell contains a value and a cached style index. This is a lightweight
+ * view over a column of a {@link Row}, where cell data is actually stored.
  */
-class Cell implements Ref {
+class Cell {
 
     /**
-     * Cell value.
+     * Parent worksheet.
      */
-    private Object value;
+    private final Worksheet worksheet;
 
     /**
-     * Cached style index.
+     * Row holding cell data.
      */
-    private int style;
+    private final Row row;
 
     /**
-     * Write this cell as an XML element.
+     * Zero-based column number.
+     */
+    private final int c;
+
+    /**
+     * Constructor.
      *
-     * @param w Output writer.
-     * @param r Zero-based row number.
-     * @param c Zero-based column number.
-     * @throws IOException If an I/O error occurs.
+     * @param worksheet Parent worksheet.
+     * @param row Row holding cell data.
+     * @param c Zero-based column number, in use in the row.
      */
-    void write(Writer w, int r, int c) throws IOException {
-        if (value != null || style != 0) {
-            w.append("<c r=\"").append(colToString(c)).append(r + 1).append('\"');
-            if (style != 0) {
-                w.append(" s=\"").append(style).append('\"');
-            }
-            if (value != null && !(value instanceof Formula)) {
-                w.append(" t=\"").append(getCellType(value)).append('\"');
-            }
-            w.append(">");
-            if (value instanceof Formula) {
-                w.append("<f>").append(((Formula) value).getExpression()).append("</f>");
-            } else if (value instanceof String) {
-                w.append("<is><t>").appendEscaped((String) value).append("</t></is>");
-            } else if (value != null) {
-                w.append("<v>");
-                if (value instanceof CachedString) {
-                    w.append(((CachedString) value).getIndex());
-                } else if (value instanceof Integer) {
-                    w.append((int) value);
-                } else if (value instanceof Long) {
-                    w.append((long) value);
-                } else if (value instanceof Double) {
-                    w.append((double) value);
-                } else if (value instanceof Boolean) {
-                    w.append((Boolean) value ? '1' : '0');
-                } else {
-                    w.append(value.toString());
-                }
-                w.append("</v>");
-            }
-            w.append("</c>");
-        }
+    Cell(Worksheet worksheet, Row row, int c) {
+        this.worksheet = worksheet;
+        this.row = row;
+        this.c = c;
     }
 
-    static String getCellType(Object value) {
-        if (value instanceof CachedString) {
-            return "s";
-        } else if (value instanceof Boolean) {
-            return "b";
-        } else if (value instanceof String) {
-            return "inlineStr";
+    void setValue(Worksheet ws, String v) {
+        if (v == null) {
+            row.setEmpty(c);
         } else {
-            return "n";
+            int index = ws.cacheString(c, v);
+            if (index < 0) {
+                row.setInlineString(c, v);
+            } else {
+                row.setSharedString(c, index, v.length());
+            }
         }
     }
 
-    void setValue(Workbook wb, String v) {
-        value = v == null ? null : wb.cacheString(v);
-    }
-
     void setValue(Number v) {
-        value = v;
+        row.setNumber(c, v);
     }
 
     void setValue(Boolean v) {
-        value = v;
+        if (v == null) {
+            row.setEmpty(c);
+        } else {
+            row.setBoolean(c, v);
+        }
     }
+
     void setValue(Date v) {
-        value = v == null ? null : TimestampUtil.convertDate(v);
+        if (v == null) {
+            row.setEmpty(c);
+        } else {
+            row.setDouble(c, TimestampUtil.toSerial(v.getTime(), worksheet.zone));
+        }
     }
 
     void setValue(LocalDateTime v) {
-        value = v == null ? null :
-            TimestampUtil.convertDate(v);
+        if (v == null) {
+            row.setEmpty(c);
+        } else {
+            row.setDouble(c, TimestampUtil.toSerial(v));
+        }
     }
 
     void setValue(LocalDate v) {
-        value = v == null ? null : TimestampUtil.convertDate(v);
-
+        if (v == null) {
+            row.setEmpty(c);
+        } else {
+            row.setDouble(c, TimestampUtil.toSerial(v));
+        }
     }
 
     void setValue(ZonedDateTime v) {
-        value = v == null ? null : TimestampUtil.convertZonedDateTime(v);
+        if (v == null) {
+            row.setEmpty(c);
+        } else {
+            row.setDouble(c, TimestampUtil.toSerial(v.toLocalDateTime()));
+        }
+    }
+
+    /**
+     * Set a value of any supported type, as the typed setters do.
+     *
+     * @param ws Parent worksheet, caching strings.
+     * @param v Value, may be {@code null}.
+     * @throws IllegalArgumentException If the value has an unsupported type.
+     */
+    void setValue(Worksheet ws, Object v) {
+        if (v == null) {
+            row.setEmpty(c);
+        } else if (v instanceof String) {
+            setValue(ws, (String) v);
+        } else if (v instanceof Number) {
+            setValue((Number) v);
+        } else if (v instanceof Boolean) {
+            setValue((Boolean) v);
+        } else if (v instanceof Date) {
+            setValue((Date) v);
+        } else if (v instanceof LocalDateTime) {
+            setValue((LocalDateTime) v);
+        } else if (v instanceof LocalDate) {
+            setValue((LocalDate) v);
+        } else if (v instanceof ZonedDateTime) {
+            setValue((ZonedDateTime) v);
+        } else {
+            throw new IllegalArgumentException("No supported cell type for " + v.getClass());
+        }
     }
 
     /**
@@ -127,13 +146,7 @@ class Cell implements Ref {
      * @return Value or {@link Formula}, or {@code null}.
      */
     Object getValue() {
-        Object result;
-        if (value instanceof CachedString) {
-            result = ((CachedString) value).getString();
-        } else {
-            result = value;
-        }
-        return result;
+        return row.getValue(c, worksheet.getWorkbook());
     }
 
     /**
@@ -142,7 +155,7 @@ class Cell implements Ref {
      * @param expression Formula expression.
      */
     void setFormula(String expression) {
-        value = new Formula(expression);
+        row.setFormula(c, new Formula(expression));
     }
 
     /**
@@ -151,7 +164,11 @@ class Cell implements Ref {
      * @param v String value.
      */
     void setInlineString(String v) {
-        value = v;
+        if (v == null) {
+            row.setEmpty(c);
+        } else {
+            row.setInlineString(c, v);
+        }
     }
 
     /**
@@ -160,7 +177,7 @@ class Cell implements Ref {
      * @return Cell style.
      */
     int getStyle() {
-        return style;
+        return row.getStyle(c);
     }
 
     /**
@@ -169,7 +186,7 @@ class Cell implements Ref {
      * @param style New cell style.
      */
     void setStyle(int style) {
-        this.style = style;
+        row.setStyle(c, style);
     }
 
 }
@@ -1,19 +1,76 @@
 package org.dhatim.fastexcel;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.util.Map;
 import java.util.TreeMap;
 
-class Comments {
+class Comments implements Closeable {
     private static final String COLOR = "#ffffee";
     private final Map<Location, String> cache = new TreeMap<>();
+    /**
+     * Comments added since {@link #spill()} was called, {@code null} while
+     * comments are kept in memory.
+     */
+    private AnnotationLog log;
+    /**
+     * Whether a comment was ever set, which remains known once comments are
+     * released by {@link #close()}.
+     */
+    private boolean empty = true;
 
     void set(int r, int c, String comment) {
-        cache.put(new Location(r, c), comment);
+        empty = false;
+        if (log != null) {
+            log.add(r, c, comment, null);
+        } else {
+            cache.put(new Location(r, c), comment);
+        }
+    }
+
+    /**
+     * Append comments to a temporary file rather than keeping them in
+     * memory, including comments already set. Comments are then written in
+     * the order they were set, and setting a comment again on the same cell
+     * is not supported.
+     */
+    void spill() {
+        if (log == null) {
+            log = new AnnotationLog();
+            for (Map.Entry<Location, String> entry : cache.entrySet()) {
+                log.add(entry.getKey().row, entry.getKey().col, entry.getValue(), null);
+            }
+            cache.clear();
+        }
     }
 
     boolean isEmpty() {
-        return cache.isEmpty();
+        return empty;
+    }
+
+    private void forEach(AnnotationLog.RecordConsumer consumer) throws IOException {
+        if (log != null) {
+            log.forEach(consumer);
+        } else {
+            for (Map.Entry<Location, String> entry : cache.entrySet()) {
+                consumer.accept(entry.getKey().row, entry.getKey().col, entry.getValue(), null);
+            }
+        }
+    }
+
+    /**
+     * Release comments once they are written: delete the temporary file of
+     * spilled comments, if any, or clear comments kept in memory.
+     * {@link #isEmpty()} still tells whether there were comments.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public void close() throws IOException {
+        cache.clear();
+        if (log != null) {
+            log.close();
+        }
     }
 
     void writeComments(Writer w) throws IOException {
@@ -21,14 +78,13 @@ class Comments {
         w.append("<comments xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\">");
         w.append("<authors><author/></authors>");
         w.append("<commentList>");
-        for (Map.Entry<Location, String> entry : cache.entrySet()) {
-            Location location = entry.getKey();
+        forEach((row, col, comment, unused) -> {
             w.append("<comment ref=\"");
-            w.append(location.toString());
+            w.append(new Location(row, col).toString());
             w.append("\" authorId=\"0\"><text><t>");
-            w.appendEscaped(entry.getValue());
+            w.appendEscaped(comment);
             w.append("</t></text></comment>");
-        }
+        });
         w.append("</commentList></comments>");
     }
 
@@ -40,30 +96,29 @@ class Comments {
         w.append("<v:shapetype id=\"c\" coordsize=\"21600,21600\" o:spt=\"202.0\" path=\"m,l,21600r21600,l21600,xe\">");
         w.append("<v:stroke joinstyle=\"miter\"/><v:path gradientshapeok=\"t\" o:connecttype=\"rect\"/>");
         w.append("</v:shapetype>");
-        int id = 0;
-        for (Map.Entry<Location, String> entry : cache.entrySet()) {
-            Location location = entry.getKey();
+        int[] id = {0};
+        forEach((row, col, comment, unused) -> {
             w.append("<v:shape id=\"s");
-            w.append(id++);
+            w.append(id[0]++);
             w.append("\" type=\"#c\" style=\"position:absolute; visibility:hidden\" fillcolor=\"" + COLOR + "\" o:insetmode=\"auto\">");
             w.append("<v:fill color=\"" + COLOR + "\"/><v:shadow on=\"t\" color=\"black\" obscured=\"t\"/><v:path o:connecttype=\"none\"/>");
             w.append("<v:textbox style=\"mso-direction-alt:auto\"/>");
             w.append("<x:ClientData ObjectType=\"Note\">");
             w.append("<x:MoveWithCells/><x:SizeWithCells/>");
             w.append("<x:Anchor>");
-            w.append(location.col).append(',');
+            w.append(col).append(',');
             w.append("0,");
-            w.append(location.row).append(',');
+            w.append(row).append(',');
             w.append("0,");
-            w.append(location.col + 2).append(',');
+            w.append(col + 2).append(',');
             w.append("0,");
-            w.append(location.row + 2).append(',');
+            w.append(row + 2).append(',');
             w.append("0");
             w.append("</x:Anchor>");
             w.append("<x:AutoFill>False</x:AutoFill>");
-            w.append("<x:Row>").append(location.row).append("</x:Row><x:Column>").append(location.col).append("</x:Column>");
+            w.append("<x:Row>").append(row).append("</x:Row><x:Column>").append(col).append("</x:Column>");
             w.append("</x:ClientData></v:shape>");
-        }
+        });
         w.append("</xml>");
 
     }
@@ -0,0 +1,365 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Formatting of doubles straight to ASCII bytes, with the shortest decimal
+ * which parses back to the same double. Digits are computed with the
+ * Schubfach algorithm described in "The Schubfach way to render doubles" by
+ * Raffaello Giulietti, without allocation. As in this algorithm, a closer
+ * decimal of two digits is preferred to a single digit, e.g. {@code 9.9E-324}
+ * rather than {@code 1E-323}.
+ * <p>
+ * Integral values below 2<sup>53</sup> are written as integers. Other values
+ * are written in plain or scientific notation, whichever is shorter, for
+ * example {@code 0.25}, {@code 1E-7} or {@code 1.2345678901234567E20}.
+ */
+final class DoubleFormatter {
+
+    /**
+     * Maximum number of bytes written for a double, e.g.
+     * {@code -2.2250738585072014E-308}.
+     */
+    static final int MAX_LENGTH = 24;
+
+    /**
+     * Precision of doubles, in bits.
+     */
+    private static final int P = 53;
+    /**
+     * Minimum binary exponent, for subnormal values.
+     */
+    private static final int Q_MIN = -1074;
+    /**
+     * Minimum significand of normal values.
+     */
+    private static final long C_MIN = 1L << (P - 1);
+    /**
+     * Subnormal significands below this one are scaled by 10 to get enough
+     * precision.
+     */
+    private static final long C_TINY = 3;
+    /**
+     * Range of decimal exponents of the table of powers of ten.
+     */
+    private static final int K_MIN = -324;
+    private static final int K_MAX = 292;
+    private static final long MASK_63 = (1L << 63) - 1;
+
+    /**
+     * For each decimal exponent k, g = floor(10<sup>-k</sup>
+     * 2<sup>-r</sup>) + 1 with r such that 2<sup>125</sup> &le; g &lt;
+     * 2<sup>126</sup>, split in its higher and lower 63 bits.
+     */
+    private static final long[] G = new long[2 * (K_MAX - K_MIN + 1)];
+
+    static {
+        for (int k = K_MIN; k <= K_MAX; ++k) {
+            int r = flog2pow10(-k) - 125;
+            BigInteger pow = BigInteger.TEN.pow(Math.abs(k));
+            BigInteger g;
+            if (k > 0) {
+                g = BigInteger.ONE.shiftLeft(-r).divide(pow);
+            } else if (r >= 0) {
+                g = pow.shiftRight(r);
+            } else {
+                g = pow.shiftLeft(-r);
+            }
+            g = g.add(BigInteger.ONE);
+            G[2 * (k - K_MIN)] = g.shiftRight(63).longValue();
+            G[2 * (k - K_MIN) + 1] = g.longValue() & MASK_63;
+        }
+    }
+
+    private static final byte[] NAN = "NaN".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] INFINITY = "Infinity".getBytes(StandardCharsets.US_ASCII);
+
+    private DoubleFormatter() {
+    }
+
+    /**
+     * Write a double.
+     *
+     * @param b Target buffer, with room for {@link #MAX_LENGTH} bytes.
+     * @param p Position where the double is written.
+     * @param v Double value.
+     * @return Position after the written bytes.
+     */
+    static int format(byte[] b, int p, double v) {
+        long bits = Double.doubleToRawLongBits(v);
+        int bq = (int) (bits >>> (P - 1)) & 0x7ff;
+        long t = bits & (C_MIN - 1);
+        if (bq == 0x7ff) {
+            if (t != 0) {
+                return copy(b, p, NAN);
+            }
+            if (bits < 0) {
+                b[p++] = '-';
+            }
+            return copy(b, p, INFINITY);
+        }
+        if (bits < 0) {
+            b[p++] = '-';
+        }
+        if (bq != 0) {
+            // Normal value, v = c 2^q
+            int mq = -Q_MIN + 1 - bq;
+            long c = C_MIN | t;
+            if (0 < mq && mq < P) {
+                long f = c >> mq;
+                if (f << mq == c) {
+                    // Integral value below 2^53
+                    return writeDigits(b, p, f, Writer.digitCount(f));
+                }
+            }
+            return toDecimal(b, p, -mq, c, 0);
+        }
+        if (t != 0) {
+            // Subnormal value
+            return t < C_TINY ? toDecimal(b, p, Q_MIN, 10 * t, -1) : toDecimal(b, p, Q_MIN, t, 0);
+        }
+        b[p++] = '0';
+        return p;
+    }
+
+    /**
+     * Get the length of {@link Double#toString(double)} for a double, without
+     * allocating a string. The shortest decimal is counted in the notation of
+     * {@link Double#toString(double)}: plain between 10<sup>-3</sup> and
+     * 10<sup>7</sup>, scientific otherwise, with at least one digit after the
+     * decimal point.
+     *
+     * @param v Double value.
+     * @return Number of characters.
+     */
+    static int toStringLength(double v) {
+        long bits = Double.doubleToRawLongBits(v);
+        int bq = (int) (bits >>> (P - 1)) & 0x7ff;
+        long t = bits & (C_MIN - 1);
+        if (bq == 0x7ff) {
+            return t != 0 ? NAN.length : (bits < 0 ? 1 : 0) + INFINITY.length;
+        }
+        int p = bits < 0 ? 1 : 0;
+        if (bq != 0) {
+            int mq = -Q_MIN + 1 - bq;
+            long c = C_MIN | t;
+            if (0 < mq && mq < P) {
+                long f = c >> mq;
+                if (f << mq == c) {
+                    return toChars(null, p, f, 0);
+                }
+            }
+            return toDecimal(null, p, -mq, c, 0);
+        }
+        if (t != 0) {
+            return t < C_TINY ? toDecimal(null, p, Q_MIN, 10 * t, -1) : toDecimal(null, p, Q_MIN, t, 0);
+        }
+        // "0.0"
+        return p + 3;
+    }
+
+    /**
+     * Compute the shortest decimal f 10<sup>e</sup> rounding to c
+     * 2<sup>q</sup>, and write it, or only count its characters in the
+     * notation of {@link Double#toString(double)} if b is {@code null}.
+     */
+    private static int toDecimal(byte[] b, int p, int q, long c, int dk) {
+        int out = (int) c & 1;
+        long cb = c << 2;
+        long cbr = cb + 2;
+        long cbl;
+        int k;
+        if (c != C_MIN || q == Q_MIN) {
+            // Regular spacing of doubles around v
+            cbl = cb - 2;
+            k = flog10pow2(q);
+        } else {
+            // Lower neighbour is closer, v is a power of two
+            cbl = cb - 1;
+            k = flog10threeQuartersPow2(q);
+        }
+        int h = q + flog2pow10(-k) + 2;
+        long g1 = G[2 * (k - K_MIN)];
+        long g0 = G[2 * (k - K_MIN) + 1];
+
+        long vb = rop(g1, g0, cb << h);
+        long vbl = rop(g1, g0, cbl << h);
+        long vbr = rop(g1, g0, cbr << h);
+
+        long s = vb >> 2;
+        if (s >= 100) {
+            // Try one digit less first
+            long sp10 = s / 10 * 10;
+            long tp10 = sp10 + 10;
+            boolean upin = vbl + out <= sp10 << 2;
+            boolean wpin = (tp10 << 2) + out <= vbr;
+            if (upin != wpin) {
+                return toChars(b, p, upin ? sp10 : tp10, k + dk);
+            }
+        }
+        long t = s + 1;
+        boolean uin = vbl + out <= s << 2;
+        boolean win = (t << 2) + out <= vbr;
+        if (uin != win) {
+            return toChars(b, p, uin ? s : t, k + dk);
+        }
+        // Both s and t round to v: pick the closest, or the even one
+        long cmp = vb - ((s + t) << 1);
+        return toChars(b, p, cmp < 0 || (cmp == 0 && (s & 1) == 0) ? s : t, k + dk);
+    }
+
+    /**
+     * Compute the rounded-to-odd product of g and cp, scaled by
+     * 2<sup>-127</sup>.
+     */
+    private static long rop(long g1, long g0, long cp) {
+        long x1 = multiplyHigh(g0, cp);
+        long y0 = g1 * cp;
+        long y1 = multiplyHigh(g1, cp);
+        long z = (y0 >>> 1) + x1;
+        long vbp = y1 + (z >>> 63);
+        return vbp | (((z & MASK_63) + MASK_63) >>> 63);
+    }
+
+    /**
+     * Get the higher 64 bits of the product of two non-negative longs.
+     */
+    private static long multiplyHigh(long x, long y) {
+        long x1 = x >>> 32;
+        long x0 = x & 0xffffffffL;
+        long y1 = y >>> 32;
+        long y0 = y & 0xffffffffL;
+        long t = x1 * y0 + ((x0 * y0) >>> 32);
+        long w1 = x0 * y1 + (t & 0xffffffffL);
+        return x1 * y1 + (t >>> 32) + (w1 >>> 32);
+    }
+
+    /**
+     * Write f 10<sup>e</sup>, in plain or scientific notation, whichever is
+     * shorter, or only count its characters in the notation of
+     * {@link Double#toString(double)} if b is {@code null}.
+     */
+    private static int toChars(byte[] b, int p, long f, int e) {
+        while (f % 10 == 0) {
+            f /= 10;
+            ++e;
+        }
+        int n = Writer.digitCount(f);
+        // Exponent in scientific notation, d.ddd 10^x
+        int x = e + n - 1;
+        int scientificLength = n + (n > 1 ? 1 : 0) + 1 + (x < 0 ? 1 : 0) + Writer.digitCount(Math.abs(x));
+        if (b == null) {
+            if (x >= 7 || x < -3) {
+                // d.dddE-x, with at least one fraction digit
+                return p + 2 + Math.max(1, n - 1) + 1 + (x < 0 ? 1 : 0) + Writer.digitCount(Math.abs(x));
+            }
+            // ddd.ddd or 0.000ddd, with at least one fraction digit
+            return p + (x >= 0 ? x + 2 + Math.max(1, n - x - 1) : n + 1 - x);
+        }
+        if (e >= 0) {
+            if (n + e <= scientificLength) {
+                p = writeDigits(b, p, f, n);
+                for (int i = 0; i < e; ++i) {
+                    b[p++] = '0';
+                }
+                return p;
+            }
+        } else if (x >= 0) {
+            // Decimal point within the digits
+            int end = writeDigits(b, p, f, n);
+            int point = p + x + 1;
+            System.arraycopy(b, point, b, point + 1, end - point);
+            b[point] = '.';
+            return end + 1;
+        } else if (n + 1 - x <= scientificLength) {
+            b[p++] = '0';
+            b[p++] = '.';
+            for (int i = -1; i > x; --i) {
+                b[p++] = '0';
+            }
+            return writeDigits(b, p, f, n);
+        }
+        int end = writeDigits(b, p + 1, f, n);
+        b[p] = b[p + 1];
+        if (n > 1) {
+            b[p + 1] = '.';
+        } else {
+            --end;
+        }
+        p = end;
+        b[p++] = 'E';
+        if (x < 0) {
+            b[p++] = '-';
+            x = -x;
+        }
+        return writeDigits(b, p, x, Writer.digitCount(x));
+    }
+
+    /**
+     * Write the digits of a positive long.
+     *
+     * @param b Target buffer.
+     * @param p Position of the first digit.
+     * @param f Positive long.
+     * @param n Number of digits of f.
+     * @return Position after the last digit.
+     */
+    private static int writeDigits(byte[] b, int p, long f, int n) {
+        int end = p + n;
+        int i = end;
+        while (f >= 100) {
+            int q = (int) (f % 100);
+            f /= 100;
+            b[--i] = Writer.DIGIT_ONES[q];
+            b[--i] = Writer.DIGIT_TENS[q];
+        }
+        int q = (int) f;
+        b[--i] = Writer.DIGIT_ONES[q];
+        if (q >= 10) {
+            b[--i] = Writer.DIGIT_TENS[q];
+        }
+        return end;
+    }
+
+    private static int copy(byte[] b, int p, byte[] s) {
+        System.arraycopy(s, 0, b, p, s.length);
+        return p + s.length;
+    }
+
+    /**
+     * @return floor(log10(2<sup>e</sup>)), for |e| &lt;= 5456721.
+     */
+    private static int flog10pow2(int e) {
+        return (int) ((e * 661_971_961_083L) >> 41);
+    }
+
+    /**
+     * @return floor(log10(3/4 2<sup>e</sup>)), for |e| &lt;= 5456721.
+     */
+    private static int flog10threeQuartersPow2(int e) {
+        return (int) ((e * 661_971_961_083L - 274_743_187_321L) >> 41);
+    }
+
+    /**
+     * @return floor(log2(10<sup>e</sup>)), for |e| &lt;= 1838394.
+     */
+    private static int flog2pow10(int e) {
+        return (int) ((e * 913_124_641_741L) >> 38);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Raw deflate compressor for the content of a zip entry. Uncompressed bytes
+ * written to this stream are deflated to a target stream, while the CRC-32
+ * and sizes needed by zip headers are computed on the fly. The same instance
+ * can be reused for several entries, see {@link #begin(OutputStream)}.
+ */
+abstract class EntryDeflater extends OutputStream {
+
+    /**
+     * Set the compression level of the next entries.
+     *
+     * @param level Compression level (0-9).
+     */
+    abstract void setLevel(int level);
+
+    /**
+     * Start compressing a new entry.
+     *
+     * @param target Stream receiving compressed bytes.
+     */
+    abstract void begin(OutputStream target);
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    /**
+     * Complete the deflate stream of the current entry. CRC and sizes are
+     * available after this call.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    abstract void finish() throws IOException;
+
+    /**
+     * @return CRC-32 of uncompressed bytes.
+     */
+    abstract long getCrc();
+
+    /**
+     * @return Number of uncompressed bytes.
+     */
+    abstract long getSize();
+
+    /**
+     * @return Number of compressed bytes.
+     */
+    abstract long getCompressedSize();
+
+    /**
+     * Release resources held by this compressor.
+     */
+    @Override
+    public abstract void close();
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Entry compressor deflating fixed-size blocks concurrently, in the manner of
+ * pigz. Each block is compressed by a task of a {@link ForkJoinPool}, primed
+ * with the last 32 KiB of the previous block as dictionary, and ends with a
+ * sync flush so that compressed blocks are aligned on byte boundaries. Blocks
+ * are then concatenated in order into a single deflate stream, and their
+ * CRC-32 combined.
+ * <p>
+ * At most as many blocks as the parallelism of the pool are pending at any
+ * time, which bounds memory usage.
+ */
+class ParallelEntryDeflater extends EntryDeflater {
+
+    /**
+     * Default size of uncompressed blocks.
+     */
+    static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+
+    /**
+     * Maximum distance of back references in a deflate stream.
+     */
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+
+    /**
+     * Compressed block.
+     */
+    private static class Block {
+        final byte[] data;
+        final int length;
+        final long crc;
+        final int inputLength;
+
+        Block(byte[] data, int length, long crc, int inputLength) {
+            this.data = data;
+            this.length = length;
+            this.crc = crc;
+            this.inputLength = inputLength;
+        }
+    }
+
+    private final ForkJoinPool pool;
+    private final int blockSize;
+    private final int maxPending;
+    private final ArrayDeque<ForkJoinTask<Block>> pending = new ArrayDeque<>();
+    private int level;
+    /**
+     * Stream receiving compressed bytes of the current entry.
+     */
+    private OutputStream target;
+    /**
+     * Block being filled.
+     */
+    private byte[] block;
+    private int blockLength;
+    /**
+     * Previous (full) block, source of the dictionary of the next block.
+     */
+    private byte[] previous;
+    private long crc;
+    private long size;
+    private long compressedSize;
+
+    /**
+     * Constructor.
+     *
+     * @param level Compression level (0-9).
+     * @param pool Pool running compression tasks.
+     * @param blockSize Size of uncompressed blocks.
+     */
+    ParallelEntryDeflater(int level, ForkJoinPool pool, int blockSize) {
+        if (blockSize < DICTIONARY_SIZE) {
+            throw new IllegalArgumentException("Block size must be at least " + DICTIONARY_SIZE + " bytes");
+        }
+        this.level = level;
+        this.pool = pool;
+        this.blockSize = blockSize;
+        this.maxPending = Math.max(1, pool.getParallelism());
+    }
+
+    @Override
+    void setLevel(int level) {
+        this.level = level;
+    }
+
+    @Override
+    void begin(OutputStream target) {
+        this.target = target;
+        block = new byte[blockSize];
+        blockLength = 0;
+        previous = null;
+        crc = 0;
+        size = 0;
+        compressedSize = 0;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (target == null) {
+            throw new IllegalStateException("No current entry");
+        }
+        size += len;
+        while (len > 0) {
+            int n = Math.min(len, blockSize - blockLength);
+            System.arraycopy(b, off, block, blockLength, n);
+            blockLength += n;
+            off += n;
+            len -= n;
+            if (blockLength == blockSize) {
+                submit(false);
+            }
+        }
+    }
+
+    @Override
+    void finish() throws IOException {
+        submit(true);
+        while (!pending.isEmpty()) {
+            writeNextBlock();
+        }
+        block = null;
+        previous = null;
+        target = null;
+    }
+
+    /**
+     * Hand the current block to the pool, and start a new one.
+     *
+     * @param last Whether this is the last block of the entry.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void submit(boolean last) throws IOException {
+        byte[] input = block;
+        int length = blockLength;
+        byte[] dictionary = previous;
+        int compressionLevel = level;
+        pending.add(pool.submit(() -> compress(input, length, dictionary, compressionLevel, last)));
+        previous = input;
+        block = last ? null : new byte[blockSize];
+        blockLength = 0;
+        if (pending.size() > maxPending) {
+            writeNextBlock();
+        }
+    }
+
+    /**
+     * Wait for the oldest pending block and write it to the target stream.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    private void writeNextBlock() throws IOException {
+        Block b = pending.poll().join();
+        target.write(b.data, 0, b.length);
+        compressedSize += b.length;
+        crc = combineCrc(crc, b.crc, b.inputLength);
+    }
+
+    /**
+     * Compress a block.
+     *
+     * @param input Uncompressed bytes.
+     * @param length Number of uncompressed bytes.
+     * @param dictionary Previous block, {@code null} for the first block.
+     * @param level Compression level.
+     * @param last Whether this is the last block, which terminates the
+     * deflate stream.
+     * @return Compressed block.
+     */
+    private static Block compress(byte[] input, int length, byte[] dictionary, int level, boolean last) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary, dictionary.length - DICTIONARY_SIZE, DICTIONARY_SIZE);
+            }
+            deflater.setInput(input, 0, length);
+            byte[] out = new byte[length / 2 + 64];
+            int n = 0;
+            if (last) {
+                deflater.finish();
+                while (!deflater.finished()) {
+                    if (n == out.length) {
+                        out = Arrays.copyOf(out, 2 * out.length);
+                    }
+                    n += deflater.deflate(out, n, out.length - n);
+                }
+            } else {
+                // A full output buffer means there may be more to flush
+                do {
+                    if (n == out.length) {
+                        out = Arrays.copyOf(out, 2 * out.length);
+                    }
+                    n += deflater.deflate(out, n, out.length - n, Deflater.SYNC_FLUSH);
+                } while (n == out.length);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(input, 0, length);
+            return new Block(out, n, crc.getValue(), length);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Compute the CRC-32 of two concatenated byte sequences from their
+     * respective CRC-32, as {@code crc32_combine()} of zlib.
+     *
+     * @param crc1 CRC-32 of the first sequence.
+     * @param crc2 CRC-32 of the second sequence.
+     * @param length2 Length of the second sequence.
+     * @return CRC-32 of the concatenation.
+     */
+    static long combineCrc(long crc1, long crc2, long length2) {
+        if (length2 <= 0) {
+            return crc1;
+        }
+        long[] even = new long[32];
+        long[] odd = new long[32];
+        // Operator for one zero bit
+        odd[0] = 0xedb88320L;
+        long row = 1;
+        for (int n = 1; n < 32; ++n) {
+            odd[n] = row;
+            row <<= 1;
+        }
+        // Operators for two and four zero bits
+        gf2MatrixSquare(even, odd);
+        gf2MatrixSquare(odd, even);
+        // Apply length2 zero bytes to crc1
+        do {
+            gf2MatrixSquare(even, odd);
+            if ((length2 & 1) != 0) {
+                crc1 = gf2MatrixTimes(even, crc1);
+            }
+            length2 >>= 1;
+            if (length2 == 0) {
+                break;
+            }
+            gf2MatrixSquare(odd, even);
+            if ((length2 & 1) != 0) {
+                crc1 = gf2MatrixTimes(odd, crc1);
+            }
+            length2 >>= 1;
+        } while (length2 != 0);
+        return crc1 ^ crc2;
+    }
+
+    private static long gf2MatrixTimes(long[] matrix, long vector) {
+        long sum = 0;
+        for (int i = 0; vector != 0; ++i, vector >>>= 1) {
+            if ((vector & 1) != 0) {
+                sum ^= matrix[i];
+            }
+        }
+        return sum;
+    }
+
+    private static void gf2MatrixSquare(long[] square, long[] matrix) {
+        for (int n = 0; n < 32; ++n) {
+            square[n] = gf2MatrixTimes(matrix, matrix[n]);
+        }
+    }
+
+    @Override
+    long getCrc() {
+        return crc;
+    }
+
+    @Override
+    long getSize() {
+        return size;
+    }
+
+    @Override
+    long getCompressedSize() {
+        return compressedSize;
+    }
+
+    @Override
+    public void close() {
+        pending.forEach(t -> t.cancel(false));
+        pending.clear();
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Band of consecutive rows of a worksheet, filled by another thread than the
+ * one owning the worksheet. Obtain an instance with
+ * {@link Worksheet#parallelRegion(int, int)}.
+ * <p>
+ * Rows are written with the {@link #rowWriter() row writer} of the region and
+ * serialized to a private buffer, held in memory until the region is
+ * {@link #close() closed}. The worksheet then copies the band to its output,
+ * in row order, the next time it writes rows after the beginning of the band:
+ * when it is flushed or finished, or when its own row writer or automatic
+ * flushing reaches the band. The thread owning the worksheet waits for the
+ * region to be closed at that point.
+ * <p>
+ * Shared strings and styles are cached by the workbook and may be used by
+ * several regions at once. Default styles and attributes of the rows and
+ * columns of the band are copied when the region is created, so that the
+ * thread filling it never reads state of the worksheet that may change.
+ */
+public class ParallelRegion implements Closeable {
+
+    private final Worksheet worksheet;
+    private final int fromRow;
+    private final int toRow;
+    /**
+     * Serialized rows, one chunk per flush of {@link #writer}.
+     */
+    private List<byte[]> chunks = new ArrayList<>();
+    private final Writer writer;
+    private RowWriter rowWriter;
+    /**
+     * String storage statistics of this region, by column, forked from those
+     * of the worksheet and joined back when the band is copied.
+     */
+    private StringColumnStats[] stringColumns;
+    private final StringStoragePolicy stringStoragePolicy;
+    /**
+     * Attributes of the rows of the band, copied from the worksheet.
+     */
+    private final RowMetadata rowMetadata;
+    /**
+     * Default styles of columns, copied from the worksheet.
+     */
+    private final int[] columnStyles;
+    /**
+     * Index of the last row started, -1 if none.
+     */
+    private int lastRow = -1;
+    private boolean closed;
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    /**
+     * Constructor.
+     *
+     * @param worksheet Parent worksheet.
+     * @param fromRow Zero-based index of the first row of the band.
+     * @param toRow Zero-based index of the row following the band.
+     * @param stringColumns String storage statistics of the worksheet, by
+     * column.
+     * @param stringStoragePolicy Storage policy of strings in columns without
+     * statistics yet.
+     * @param rowMetadata Copy of the attributes of the rows of the band.
+     * @param columnStyles Copy of the default styles of columns.
+     */
+    ParallelRegion(Worksheet worksheet, int fromRow, int toRow, StringColumnStats[] stringColumns,
+                   StringStoragePolicy stringStoragePolicy, RowMetadata rowMetadata, int[] columnStyles) {
+        this.worksheet = worksheet;
+        this.fromRow = fromRow;
+        this.toRow = toRow;
+        this.stringStoragePolicy = stringStoragePolicy;
+        this.rowMetadata = rowMetadata;
+        this.columnStyles = columnStyles;
+        this.stringColumns = new StringColumnStats[stringColumns.length];
+        for (int c = 0; c < stringColumns.length; ++c) {
+            if (stringColumns[c] != null) {
+                this.stringColumns[c] = stringColumns[c].fork();
+            }
+        }
+        this.writer = new Writer(new OutputStream() {
+            @Override
+            public void write(int b) {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                chunks.add(Arrays.copyOfRange(b, off, off + len));
+            }
+        });
+    }
+
+    /**
+     * Get parent worksheet.
+     *
+     * @return Parent worksheet.
+     */
+    public Worksheet getWorksheet() {
+        return worksheet;
+    }
+
+    /**
+     * Get the first row of this region.
+     *
+     * @return Zero-based index of the first row.
+     */
+    public int getFromRow() {
+        return fromRow;
+    }
+
+    /**
+     * Get the row following this region.
+     *
+     * @return Zero-based index of the first row after the band (exclusive).
+     */
+    public int getToRow() {
+        return toRow;
+    }
+
+    /**
+     * Get a writer appending rows to this region. The first call to
+     * {@link RowWriter#nextRow()} starts the first row of the band.
+     *
+     * @return Row writer of this region.
+     */
+    public RowWriter rowWriter() {
+        checkOpen();
+        if (rowWriter == null) {
+            rowWriter = new RowWriter(worksheet, this, writer, fromRow);
+        }
+        return rowWriter;
+    }
+
+    /**
+     * Close this region: the band is complete and may be copied to the
+     * worksheet. Rows cannot be added afterwards.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (rowWriter != null) {
+                rowWriter.endRow();
+            }
+            writer.flush();
+        } finally {
+            done.countDown();
+        }
+    }
+
+    /**
+     * Start a row written by the row writer of this region.
+     *
+     * @param r Zero-based index of the requested row. If rows after it have
+     * already been started, the row after the last one is started instead.
+     * @return Zero-based index of the started row.
+     * @throws IOException If an I/O error occurs.
+     */
+    int startRow(int r) throws IOException {
+        checkOpen();
+        r = Math.max(r, lastRow + 1);
+        if (r >= toRow) {
+            throw new IllegalArgumentException("Row " + r + " is outside of region " + this);
+        }
+        Worksheet.writeRowStart(writer, r, rowMetadata);
+        lastRow = r;
+        return r;
+    }
+
+    /**
+     * Get the default style of a row of this region.
+     *
+     * @param r Zero-based row number.
+     * @return Cached style index, zero if none.
+     */
+    int getRowStyle(int r) {
+        return rowMetadata.getStyle(r);
+    }
+
+    /**
+     * Get the style inherited by a cell of this region without a style of
+     * its own.
+     *
+     * @param rowStyle Default style of the row of the cell.
+     * @param c Zero-based column number.
+     * @return Cached style index, zero if none.
+     */
+    int getDefaultStyle(int rowStyle, int c) {
+        return Worksheet.getDefaultStyle(rowStyle, c, columnStyles);
+    }
+
+    /**
+     * Store a string value of the given column, according to the storage
+     * policy of this region.
+     *
+     * @param c Zero-based column number.
+     * @param s String value.
+     * @return Index of the string in the shared string table, or -1 if the
+     * string must be written inline.
+     */
+    int cacheString(int c, String s) {
+        if (c >= stringColumns.length) {
+            stringColumns = Arrays.copyOf(stringColumns, Math.min(Worksheet.MAX_COLS, Math.max(c + 1, 2 * stringColumns.length)));
+        }
+        StringColumnStats stats = stringColumns[c];
+        if (stats == null) {
+            stats = new StringColumnStats(c, stringStoragePolicy);
+            stringColumns[c] = stats;
+        }
+        return worksheet.cacheString(stats, s);
+    }
+
+    /**
+     * Wait for this region to be closed, then copy its rows.
+     *
+     * @param w Output writer of the worksheet.
+     * @return Zero-based index of the last row of this region, -1 if it has
+     * no rows.
+     * @throws IOException If an I/O error occurs, or if the current thread is
+     * interrupted while waiting.
+     */
+    int copyTo(Writer w) throws IOException {
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for region " + this);
+        }
+        for (byte[] chunk : chunks) {
+            w.append(chunk, 0, chunk.length);
+        }
+        chunks = null;
+        return lastRow;
+    }
+
+    /**
+     * Get string storage statistics of this region, valid once it has been
+     * copied.
+     *
+     * @return Statistics, by column, {@code null} for columns without
+     * string values.
+     */
+    StringColumnStats[] getStringColumnStats() {
+        return stringColumns;
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Region " + this + " is closed");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return worksheet.getName() + '!' + (fromRow + 1) + ':' + toRow;
+    }
+}
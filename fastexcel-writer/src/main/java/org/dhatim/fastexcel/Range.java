@@ -219,8 +219,10 @@ public class Range implements Ref {
     Set<Integer> getStyles() {
         Set<Integer> result = new HashSet<>();
         for (int r = top; r <= bottom; ++r) {
+            Row row = getWorksheet().row(r, right);
+            int rowStyle = getWorksheet().getRowStyle(r);
             for (int c = left; c <= right; ++c) {
-                result.add(getWorksheet().cell(r, c).getStyle());
+                result.add(getStyle(row, rowStyle, c));
             }
         }
         return result;
@@ -233,12 +235,27 @@ public class Range implements Ref {
      */
     void applyStyle(Map<Integer, Integer> styles) {
         for (int r = top; r <= bottom; ++r) {
+            Row row = getWorksheet().row(r, right);
+            int rowStyle = getWorksheet().getRowStyle(r);
             for (int c = left; c <= right; ++c) {
-                Cell cell = getWorksheet().cell(r, c);
-                cell.setStyle(styles.get(cell.getStyle()));
+                row.setStyle(c, styles.get(getStyle(row, rowStyle, c)));
             }
         }
     }
+
+    /**
+     * Get the style of a cell, or the style it inherits from its row or
+     * column if it has none.
+     *
+     * @param row Row of the cell.
+     * @param rowStyle Default style of the row.
+     * @param c Zero-based column number.
+     * @return Cached style index.
+     */
+    private int getStyle(Row row, int rowStyle, int c) {
+        int style = row.getStyle(c);
+        return style != 0 ? style : getWorksheet().getDefaultStyle(rowStyle, c);
+    }
     public void setHyperlink(HyperLink hyperLink){
         this.worksheet.value(top,left,hyperLink.getDisplayStr());
         this.worksheet.addHyperlink(this,hyperLink);
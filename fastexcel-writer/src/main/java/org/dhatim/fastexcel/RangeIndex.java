@@ -0,0 +1,212 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import java.util.BitSet;
+
+/**
+ * Index of non-overlapping rectangular ranges of cells, such as merged cells
+ * or tables. Ranges are kept in a treap ordered by top row, where each node
+ * also records the greatest bottom row of its subtree: this makes it an
+ * interval tree on row spans, answering overlap queries and point lookups in
+ * logarithmic time whatever the size of the ranges.
+ */
+class RangeIndex {
+
+    private static final class Node {
+        final int top;
+        final int left;
+        final int bottom;
+        final int right;
+        final int priority;
+        /**
+         * Greatest bottom row of the ranges in this subtree.
+         */
+        int maxBottom;
+        Node lower;
+        Node higher;
+
+        Node(int top, int left, int bottom, int right, int priority) {
+            this.top = top;
+            this.left = left;
+            this.bottom = bottom;
+            this.right = right;
+            this.priority = priority;
+            this.maxBottom = bottom;
+        }
+
+        boolean overlaps(int top, int left, int bottom, int right) {
+            return this.top <= bottom && top <= this.bottom && this.left <= right && left <= this.right;
+        }
+
+        void update() {
+            int max = bottom;
+            if (lower != null && lower.maxBottom > max) {
+                max = lower.maxBottom;
+            }
+            if (higher != null && higher.maxBottom > max) {
+                max = higher.maxBottom;
+            }
+            maxBottom = max;
+        }
+    }
+
+    private Node root;
+    private int size;
+    /**
+     * State of the xorshift generator of node priorities, seeded so that the
+     * shape of the tree does not vary between runs.
+     */
+    private int seed = 0x2545F491;
+
+    /**
+     * Get the number of ranges in this index.
+     *
+     * @return Number of ranges.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Add a range, which must not overlap ranges already in this index.
+     *
+     * @param top Zero-based top row.
+     * @param left Zero-based left column.
+     * @param bottom Zero-based bottom row.
+     * @param right Zero-based right column.
+     */
+    void add(int top, int left, int bottom, int right) {
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        root = insert(root, new Node(top, left, bottom, right, seed));
+        ++size;
+    }
+
+    /**
+     * Remove all ranges.
+     */
+    void clear() {
+        root = null;
+        size = 0;
+    }
+
+    /**
+     * Check whether a range overlaps one of the ranges in this index.
+     *
+     * @param top Zero-based top row.
+     * @param left Zero-based left column.
+     * @param bottom Zero-based bottom row.
+     * @param right Zero-based right column.
+     * @return {@code true} if at least one cell belongs to an indexed range.
+     */
+    boolean overlaps(int top, int left, int bottom, int right) {
+        return overlaps(root, top, left, bottom, right);
+    }
+
+    /**
+     * Check whether a cell belongs to one of the ranges in this index.
+     *
+     * @param r Zero-based row number.
+     * @param c Zero-based column number.
+     * @return {@code true} if an indexed range contains the cell.
+     */
+    boolean contains(int r, int c) {
+        return root != null && overlaps(root, r, c, r, c);
+    }
+
+    /**
+     * Mark the rows where indexed ranges cover the given column.
+     *
+     * @param c Zero-based column number.
+     * @param rows Set of rows to update.
+     */
+    void coveredRows(int c, BitSet rows) {
+        coveredRows(root, c, rows);
+    }
+
+    private static Node insert(Node node, Node added) {
+        if (node == null) {
+            return added;
+        }
+        if (added.top < node.top || (added.top == node.top && added.left < node.left)) {
+            node.lower = insert(node.lower, added);
+            if (node.lower.priority > node.priority) {
+                node = rotateHigher(node);
+            }
+        } else {
+            node.higher = insert(node.higher, added);
+            if (node.higher.priority > node.priority) {
+                node = rotateLower(node);
+            }
+        }
+        node.update();
+        return node;
+    }
+
+    /**
+     * Make the lower child of a node the root of its subtree.
+     */
+    private static Node rotateHigher(Node node) {
+        Node child = node.lower;
+        node.lower = child.higher;
+        child.higher = node;
+        node.update();
+        child.update();
+        return child;
+    }
+
+    /**
+     * Make the higher child of a node the root of its subtree.
+     */
+    private static Node rotateLower(Node node) {
+        Node child = node.higher;
+        node.higher = child.lower;
+        child.lower = node;
+        node.update();
+        child.update();
+        return child;
+    }
+
+    private static boolean overlaps(Node node, int top, int left, int bottom, int right) {
+        while (node != null && node.maxBottom >= top) {
+            if (node.overlaps(top, left, bottom, right)) {
+                return true;
+            }
+            if (node.top > bottom) {
+                // Ranges of the higher subtree start below the queried rows
+                node = node.lower;
+                continue;
+            }
+            if (overlaps(node.lower, top, left, bottom, right)) {
+                return true;
+            }
+            node = node.higher;
+        }
+        return false;
+    }
+
+    private static void coveredRows(Node node, int c, BitSet rows) {
+        while (node != null) {
+            if (node.left <= c && c <= node.right) {
+                rows.set(node.top, node.bottom + 1);
+            }
+            coveredRows(node.lower, c, rows);
+            node = node.higher;
+        }
+    }
+}
@@ -2,6 +2,9 @@ package org.dhatim.fastexcel;
 
 public interface Ref {
     default   String colToString(int col){
+        if (col >= 0 && col < Worksheet.MAX_COLS) {
+            return AddressCodec.getColumnName(col);
+        }
         StringBuilder sb = new StringBuilder();
         while (col >= 0) {
             sb.append((char) ('A' + (col % 26)));
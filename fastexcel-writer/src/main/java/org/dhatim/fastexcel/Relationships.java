@@ -18,6 +18,9 @@ public class Relationships {
 
     private ArrayList<Relationship> relationship = new ArrayList<>();
 
+    private AnnotationLog hyperlinkLog;
+    private int firstHyperlinkIndex;
+
     public Relationships(Worksheet worksheet) {
         this.worksheet = worksheet;
     }
@@ -28,6 +31,22 @@ public class Relationships {
         return id;
     }
 
+    /**
+     * Add hyperlink relationships for all the records of a log, without
+     * holding them in memory: they are read back from the log when this file
+     * is written. Records hold the link target as their second string.
+     *
+     * @param hyperlinks Log of hyperlinks, which must stay open until this
+     * file is written.
+     * @return Index of the relationship of the first hyperlink, following ones
+     * being numbered consecutively.
+     */
+    int setHyperLinkRels(AnnotationLog hyperlinks) {
+        hyperlinkLog = hyperlinks;
+        firstHyperlinkIndex = maxIndex.getAndAdd(hyperlinks.size());
+        return firstHyperlinkIndex;
+    }
+
     String setTableRels(int index) {
         String id = "rId" + (maxIndex.getAndIncrement());
         relationship.add(new Relationship(id,TYPE_OF_TABLE , "../tables/table"+index+".xml", null));
@@ -41,7 +60,15 @@ public class Relationships {
     }
 
     boolean isEmpty() {
-        return relationship.isEmpty();
+        return relationship.isEmpty() && (hyperlinkLog == null || hyperlinkLog.size() == 0);
+    }
+
+    /**
+     * Release relationships once this file is written.
+     */
+    void clear() {
+        relationship = new ArrayList<>();
+        hyperlinkLog = null;
     }
 
 
@@ -73,6 +100,16 @@ public class Relationships {
                 relsWr.append("Type=\""+rs.type+"\" ");
                 relsWr.append( "/>");
             }
+            if (hyperlinkLog != null) {
+                int[] index = {firstHyperlinkIndex};
+                hyperlinkLog.forEach((row, col, ref, target) -> {
+                    relsWr.append("<Relationship Id=\"rId").append(index[0]++).append("\" ");
+                    relsWr.append("Target=\"" + target + "\" ");
+                    relsWr.append("TargetMode=\"External\" ");
+                    relsWr.append("Type=\"" + TYPE_OF_HYPERLINK + "\" ");
+                    relsWr.append("/>");
+                });
+            }
             relsWr.append("</Relationships>");
     }
 
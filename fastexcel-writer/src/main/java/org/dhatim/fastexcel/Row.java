@@ -0,0 +1,468 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Cells of a row, stored in primitive arrays indexed by column: a type tag,
+ * a 64-bit payload (integer value, bits of a double value or shared string
+ * index) and a cached style index. Inline strings, formulas and other
+ * numbers are kept in an object array, only allocated when such a value is
+ * stored.
+ */
+class Row {
+
+    /**
+     * No value. The cell may still have a style.
+     */
+    static final byte EMPTY = 0;
+    /**
+     * Index in the shared string table in the lower 32 bits of the payload,
+     * number of characters of the string in the upper 32 bits.
+     */
+    static final byte SHARED_STRING = 1;
+    /**
+     * {@link String} in {@link #objects}.
+     */
+    static final byte INLINE_STRING = 2;
+    /**
+     * {@link Formula} in {@link #objects}.
+     */
+    static final byte FORMULA = 3;
+    /**
+     * Boolean payload, 0 or 1.
+     */
+    static final byte BOOLEAN = 4;
+    /**
+     * {@code int} payload.
+     */
+    static final byte INTEGER = 5;
+    /**
+     * {@code long} payload.
+     */
+    static final byte LONG = 6;
+    /**
+     * {@code double} payload, stored as raw long bits.
+     */
+    static final byte DOUBLE = 7;
+    /**
+     * Other {@link Number} in {@link #objects}, written with
+     * {@link Object#toString()}.
+     */
+    static final byte NUMBER = 8;
+
+    private byte[] types;
+    private long[] values;
+    private int[] styles;
+    /**
+     * Object values, {@code null} until the first one is stored.
+     */
+    private Object[] objects;
+    /**
+     * Number of columns in use.
+     */
+    private int length;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity Initial number of columns.
+     */
+    Row(int capacity) {
+        types = new byte[capacity];
+        values = new long[capacity];
+        styles = new int[capacity];
+    }
+
+    /**
+     * Get the number of columns in use, i.e. the index of the last column
+     * accessed plus one.
+     *
+     * @return Number of columns.
+     */
+    int length() {
+        return length;
+    }
+
+    /**
+     * Estimate the heap retained by this row, in bytes. Shared strings are
+     * not counted: they belong to the string table of the workbook.
+     *
+     * @return Estimated size of this row.
+     */
+    long estimatedSize() {
+        // Row object and headers of the three primitive arrays
+        long size = 80 + (1L + 8 + 4) * types.length;
+        if (objects != null) {
+            size += 16 + 4L * objects.length;
+            for (int c = 0; c < length; ++c) {
+                switch (types[c]) {
+                    case INLINE_STRING:
+                        size += 40 + 2L * ((String) objects[c]).length();
+                        break;
+                    case FORMULA:
+                        size += 56 + 2L * ((Formula) objects[c]).getExpression().length();
+                        break;
+                    case NUMBER:
+                        size += 32;
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Make sure the given column is in use, growing storage if necessary.
+     * Capacity grows geometrically, so filling a row left to right is
+     * linear.
+     *
+     * @param c Zero-based column number.
+     */
+    void ensureColumn(int c) {
+        if (c >= types.length) {
+            int capacity = Math.min(Worksheet.MAX_COLS, Math.max(c + 1, types.length + (types.length >> 1) + 1));
+            types = Arrays.copyOf(types, capacity);
+            values = Arrays.copyOf(values, capacity);
+            styles = Arrays.copyOf(styles, capacity);
+            if (objects != null) {
+                objects = Arrays.copyOf(objects, capacity);
+            }
+        }
+        if (c >= length) {
+            length = c + 1;
+        }
+    }
+
+    private void setObject(int c, byte type, Object value) {
+        if (objects == null) {
+            objects = new Object[types.length];
+        }
+        types[c] = type;
+        objects[c] = value;
+    }
+
+    private void setPayload(int c, byte type, long value) {
+        types[c] = type;
+        values[c] = value;
+        if (objects != null) {
+            objects[c] = null;
+        }
+    }
+
+    /**
+     * Remove the value of a cell, keeping its style.
+     *
+     * @param c Zero-based column number.
+     */
+    void setEmpty(int c) {
+        setPayload(c, EMPTY, 0);
+    }
+
+    /**
+     * Set a string stored in the shared string table.
+     *
+     * @param c Zero-based column number.
+     * @param index Index of the string in the shared string table.
+     * @param length Number of characters of the string.
+     */
+    void setSharedString(int c, int index, int length) {
+        setPayload(c, SHARED_STRING, (long) length << 32 | index);
+    }
+
+    /**
+     * Set a string stored in the cell itself.
+     *
+     * @param c Zero-based column number.
+     * @param value Value.
+     */
+    void setInlineString(int c, String value) {
+        setObject(c, INLINE_STRING, value);
+    }
+
+    /**
+     * Set a formula.
+     *
+     * @param c Zero-based column number.
+     * @param value Value.
+     */
+    void setFormula(int c, Formula value) {
+        setObject(c, FORMULA, value);
+    }
+
+    /**
+     * Set a boolean value.
+     *
+     * @param c Zero-based column number.
+     * @param value Value.
+     */
+    void setBoolean(int c, boolean value) {
+        setPayload(c, BOOLEAN, value ? 1 : 0);
+    }
+
+    /**
+     * Set an integer value.
+     *
+     * @param c Zero-based column number.
+     * @param value Value.
+     */
+    void setInt(int c, int value) {
+        setPayload(c, INTEGER, value);
+    }
+
+    /**
+     * Set a long value.
+     *
+     * @param c Zero-based column number.
+     * @param value Value.
+     */
+    void setLong(int c, long value) {
+        setPayload(c, LONG, value);
+    }
+
+    /**
+     * Set a double value.
+     *
+     * @param c Zero-based column number.
+     * @param value Value.
+     */
+    void setDouble(int c, double value) {
+        setPayload(c, DOUBLE, Double.doubleToRawLongBits(value));
+    }
+
+    /**
+     * Set a number, keeping {@link Integer}, {@link Long} and {@link Double}
+     * values unboxed.
+     *
+     * @param c Zero-based column number.
+     * @param value Number, or {@code null} to remove the value.
+     */
+    void setNumber(int c, Number value) {
+        if (value == null) {
+            setEmpty(c);
+        } else if (value instanceof Integer) {
+            setInt(c, value.intValue());
+        } else if (value instanceof Long) {
+            setLong(c, value.longValue());
+        } else if (value instanceof Double) {
+            setDouble(c, value.doubleValue());
+        } else {
+            setObject(c, NUMBER, value);
+        }
+    }
+
+    /**
+     * Get the type of a cell value.
+     *
+     * @param c Zero-based column number.
+     * @return Type tag.
+     */
+    byte getType(int c) {
+        return c < length ? types[c] : EMPTY;
+    }
+
+    /**
+     * Get the value or formula stored in a cell.
+     *
+     * @param c Zero-based column number.
+     * @param workbook Workbook holding shared strings.
+     * @return Value (shared strings are resolved) or {@link Formula}, or
+     * {@code null}.
+     */
+    Object getValue(int c, Workbook workbook) {
+        switch (getType(c)) {
+            case SHARED_STRING:
+                return workbook.getSharedString((int) values[c]);
+            case INLINE_STRING:
+            case FORMULA:
+            case NUMBER:
+                return objects[c];
+            case BOOLEAN:
+                return values[c] != 0;
+            case INTEGER:
+                return (int) values[c];
+            case LONG:
+                return values[c];
+            case DOUBLE:
+                return Double.longBitsToDouble(values[c]);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Get the number of characters displayed for a cell value, as used to
+     * compute column widths. Formulas and empty cells have no length.
+     *
+     * @param c Zero-based column number.
+     * @return Number of characters.
+     */
+    int getDisplayLength(int c) {
+        switch (getType(c)) {
+            case SHARED_STRING:
+                return (int) (values[c] >>> 32);
+            case INLINE_STRING:
+                return ((String) objects[c]).length();
+            case NUMBER:
+                return getDisplayLength((Number) objects[c]);
+            case BOOLEAN:
+                return values[c] != 0 ? 4 : 5;
+            case INTEGER:
+            case LONG:
+                return getDisplayLength(values[c]);
+            case DOUBLE:
+                return getDisplayLength(Double.longBitsToDouble(values[c]));
+            default:
+                return 0;
+        }
+    }
+
+    private static int getDisplayLength(long v) {
+        // Count digits of the negated value, which cannot overflow
+        int length = v < 0 ? 2 : 1;
+        for (long n = v < 0 ? v : -v; n <= -10; n /= 10) {
+            ++length;
+        }
+        return length;
+    }
+
+    private static int getDisplayLength(double v) {
+        long l = (long) v;
+        if (l == v && l > -10_000_000 && l < 10_000_000 && (l != 0 || Double.doubleToRawLongBits(v) == 0)) {
+            // Integral values are displayed with a ".0" suffix
+            return getDisplayLength(l) + 2;
+        }
+        return DoubleFormatter.toStringLength(v);
+    }
+
+    private static int getDisplayLength(Number v) {
+        if (v instanceof Short || v instanceof Byte) {
+            return getDisplayLength(v.longValue());
+        }
+        // BigDecimal caches its string, which is also used to write the value
+        return v.toString().length();
+    }
+
+    /**
+     * Get the style of a cell.
+     *
+     * @param c Zero-based column number.
+     * @return Cached style index.
+     */
+    int getStyle(int c) {
+        return c < length ? styles[c] : 0;
+    }
+
+    /**
+     * Set the style of a cell.
+     *
+     * @param c Zero-based column number.
+     * @param style Cached style index.
+     */
+    void setStyle(int c, int style) {
+        styles[c] = style;
+    }
+
+    /**
+     * Write the cells of this row as XML elements.
+     *
+     * Cells with a value but no style of their own are written with the
+     * default style of their row or column.
+     *
+     * @param w Output writer.
+     * @param r Zero-based row number.
+     * @param ws Worksheet holding column default styles.
+     * @param rowStyle Default style of the row, zero if none.
+     * @throws IOException If an I/O error occurs.
+     */
+    void write(Writer w, int r, Worksheet ws, int rowStyle) throws IOException {
+        byte[] rowRef = AddressCodec.encodeRow(r);
+        for (int c = 0; c < length; ++c) {
+            byte type = types[c];
+            int style = styles[c];
+            if (style == 0) {
+                if (type == EMPTY) {
+                    continue;
+                }
+                style = ws.getDefaultStyle(rowStyle, c);
+            }
+            w.append("<c r=\"").appendCellReference(c, rowRef).append('\"');
+            if (style != 0) {
+                w.append(" s=\"").append(style).append('\"');
+            }
+            if (type != EMPTY && type != FORMULA) {
+                w.append(" t=\"").append(getCellType(type)).append('\"');
+            }
+            w.append(">");
+            switch (type) {
+                case EMPTY:
+                    break;
+                case FORMULA:
+                    w.append("<f>").append(((Formula) objects[c]).getExpression()).append("</f>");
+                    break;
+                case INLINE_STRING:
+                    w.append("<is><t>").appendEscaped((String) objects[c]).append("</t></is>");
+                    break;
+                default:
+                    w.append("<v>");
+                    writeValue(w, c, type);
+                    w.append("</v>");
+                    break;
+            }
+            w.append("</c>");
+        }
+    }
+
+    private void writeValue(Writer w, int c, byte type) throws IOException {
+        switch (type) {
+            case SHARED_STRING:
+                w.append((int) values[c]);
+                break;
+            case BOOLEAN:
+                w.append(values[c] != 0 ? '1' : '0');
+                break;
+            case INTEGER:
+                w.append((int) values[c]);
+                break;
+            case LONG:
+                w.append(values[c]);
+                break;
+            case DOUBLE:
+                w.append(Double.longBitsToDouble(values[c]));
+                break;
+            default:
+                w.append(objects[c].toString());
+                break;
+        }
+    }
+
+    private static String getCellType(byte type) {
+        switch (type) {
+            case SHARED_STRING:
+                return "s";
+            case BOOLEAN:
+                return "b";
+            case INLINE_STRING:
+                return "inlineStr";
+            default:
+                return "n";
+        }
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import java.util.Arrays;
+
+/**
+ * Attributes of worksheet rows set independently of their cells: hidden
+ * flag, outline level, custom height and default style. Values are stored in
+ * primitive arrays allocated by pages of consecutive rows, so looking up a
+ * row costs two array accesses and rows without attributes cost nothing.
+ */
+class RowMetadata {
+
+    private static final int PAGE_BITS = 10;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final byte HIDDEN = 0x08;
+    private static final byte LEVEL_MASK = 0x07;
+    private static final byte MAX_LEVEL = 7;
+
+    private static final class Page {
+        /**
+         * Hidden flag and outline level of each row.
+         */
+        final byte[] flags = new byte[PAGE_SIZE];
+        /**
+         * Custom heights, {@code null} until the first one is set. Rows
+         * without a custom height hold {@link Double#NaN}.
+         */
+        double[] heights;
+        /**
+         * Default styles, {@code null} until the first one is set.
+         */
+        int[] styles;
+
+        Page copy() {
+            Page copy = new Page();
+            System.arraycopy(flags, 0, copy.flags, 0, PAGE_SIZE);
+            copy.heights = heights == null ? null : heights.clone();
+            copy.styles = styles == null ? null : styles.clone();
+            return copy;
+        }
+    }
+
+    private Page[] pages = new Page[0];
+    /**
+     * Last row which is hidden, grouped or styled, -1 if none. Rows are not
+     * removed from this maximum when their attributes are cleared.
+     */
+    private int lastRow = -1;
+
+    /**
+     * Get the last row that must be written even without cells, because it
+     * is hidden, grouped or styled. This may overestimate the actual last row
+     * if attributes were cleared.
+     *
+     * @return Zero-based row number, -1 if no row has such attributes.
+     */
+    int getLastRow() {
+        return lastRow;
+    }
+
+    /**
+     * Remove the attributes of all rows.
+     */
+    void clear() {
+        pages = new Page[0];
+        lastRow = -1;
+    }
+
+    /**
+     * Copy the attributes of a band of rows. Only pages of rows of the band
+     * are copied.
+     *
+     * @param fromRow Zero-based number of the first row of the band.
+     * @param toRow Zero-based number of the row following the band.
+     * @return Copy, independent of later changes to these attributes.
+     */
+    RowMetadata copy(int fromRow, int toRow) {
+        RowMetadata copy = new RowMetadata();
+        int end = Math.min(pages.length, ((toRow - 1) >>> PAGE_BITS) + 1);
+        if (fromRow >>> PAGE_BITS < end) {
+            copy.pages = new Page[end];
+            for (int p = fromRow >>> PAGE_BITS; p < end; ++p) {
+                if (pages[p] != null) {
+                    copy.pages[p] = pages[p].copy();
+                }
+            }
+        }
+        copy.lastRow = Math.min(lastRow, toRow - 1);
+        return copy;
+    }
+
+    /**
+     * Check whether a row must be written even without cells, because it is
+     * hidden, grouped or styled.
+     *
+     * @param r Zero-based row number.
+     * @return {@code true} if the row has attributes written with it.
+     */
+    boolean isWritten(int r) {
+        Page page = page(r);
+        return page != null && (page.flags[r & PAGE_MASK] != 0 || (page.styles != null && page.styles[r & PAGE_MASK] != 0));
+    }
+
+    /**
+     * Find the next row that must be written even without cells, skipping
+     * pages of rows without attributes at once.
+     *
+     * @param from Zero-based number of the first row to consider.
+     * @return Zero-based row number, -1 if no row from the given one has
+     * attributes written with it.
+     */
+    int nextWrittenRow(int from) {
+        for (int r = Math.max(from, 0); r <= lastRow; ) {
+            Page page = pages[r >>> PAGE_BITS];
+            int end = Math.min((r | PAGE_MASK) + 1, lastRow + 1);
+            if (page != null) {
+                for (; r < end; ++r) {
+                    if (page.flags[r & PAGE_MASK] != 0 || (page.styles != null && page.styles[r & PAGE_MASK] != 0)) {
+                        return r;
+                    }
+                }
+            }
+            r = end;
+        }
+        return -1;
+    }
+
+    boolean isHidden(int r) {
+        Page page = page(r);
+        return page != null && (page.flags[r & PAGE_MASK] & HIDDEN) != 0;
+    }
+
+    /**
+     * Hide or show a row.
+     *
+     * @param r Zero-based row number.
+     * @param hidden Whether the row is hidden.
+     * @return {@code true} if the row was changed.
+     */
+    boolean setHidden(int r, boolean hidden) {
+        if (hidden == isHidden(r)) {
+            return false;
+        }
+        Page page = pageForWrite(r);
+        page.flags[r & PAGE_MASK] ^= HIDDEN;
+        if (hidden) {
+            lastRow = Math.max(lastRow, r);
+        }
+        return true;
+    }
+
+    byte getLevel(int r) {
+        Page page = page(r);
+        return page == null ? 0 : (byte) (page.flags[r & PAGE_MASK] & LEVEL_MASK);
+    }
+
+    /**
+     * Increase the outline level of a row.
+     *
+     * @param r Zero-based row number.
+     * @throws IllegalStateException If the row already has the maximum level.
+     */
+    void increaseLevel(int r) {
+        Page page = pageForWrite(r);
+        if ((page.flags[r & PAGE_MASK] & LEVEL_MASK) == MAX_LEVEL) {
+            throw new IllegalStateException(String.format("Cannot proceed with grouping because the grouping level at this index position has reached the maximum 7.index = %s", r));
+        }
+        ++page.flags[r & PAGE_MASK];
+        lastRow = Math.max(lastRow, r);
+    }
+
+    /**
+     * Get the custom height of a row.
+     *
+     * @param r Zero-based row number.
+     * @return Height, {@link Double#NaN} if the row has the default height.
+     */
+    double getHeight(int r) {
+        Page page = page(r);
+        return page == null || page.heights == null ? Double.NaN : page.heights[r & PAGE_MASK];
+    }
+
+    void setHeight(int r, double height) {
+        Page page = pageForWrite(r);
+        if (page.heights == null) {
+            page.heights = new double[PAGE_SIZE];
+            Arrays.fill(page.heights, Double.NaN);
+        }
+        page.heights[r & PAGE_MASK] = height;
+    }
+
+    /**
+     * Get the default style of a row.
+     *
+     * @param r Zero-based row number.
+     * @return Cached style index, zero if none.
+     */
+    int getStyle(int r) {
+        Page page = page(r);
+        return page == null || page.styles == null ? 0 : page.styles[r & PAGE_MASK];
+    }
+
+    void setStyle(int r, int style) {
+        Page page = pageForWrite(r);
+        if (page.styles == null) {
+            page.styles = new int[PAGE_SIZE];
+        }
+        page.styles[r & PAGE_MASK] = style;
+        if (style != 0) {
+            lastRow = Math.max(lastRow, r);
+        }
+    }
+
+    private Page page(int r) {
+        int p = r >>> PAGE_BITS;
+        return p < pages.length ? pages[p] : null;
+    }
+
+    private Page pageForWrite(int r) {
+        if (r < 0 || r >= Worksheet.MAX_ROWS) {
+            throw new IllegalArgumentException(String.format("Row index out of range: %d", r));
+        }
+        int p = r >>> PAGE_BITS;
+        if (p >= pages.length) {
+            pages = Arrays.copyOf(pages, Math.max(p + 1, 2 * pages.length));
+        }
+        Page page = pages[p];
+        if (page == null) {
+            page = new Page();
+            pages[p] = page;
+        }
+        return page;
+    }
+}
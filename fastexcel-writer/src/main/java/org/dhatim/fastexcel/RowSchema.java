@@ -0,0 +1,605 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import java.io.IOException;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * Mapping of objects to worksheet rows, with one column per property. The
+ * type of each column and how it is read are resolved once when the schema
+ * is built, so that writing a record does no reflection, boxing of primitive
+ * properties or type dispatch. Float properties are the exception: they are
+ * boxed, so that they are written like {@link Float} values. Write records with
+ * {@link Worksheet#writeRecords(RowSchema, Iterable)}.
+ * <p>
+ * Properties are read with public getters ({@code getName()},
+ * {@code isName()} for booleans, or {@code name()} as in records), compiled
+ * to functions with {@link LambdaMetafactory} when the bean class is
+ * accessible, or invoked as method handles otherwise. Supported property
+ * types are primitives, {@link Number}, {@link Boolean}, {@link String},
+ * {@link Date}, {@link LocalDate}, {@link LocalDateTime} and
+ * {@link ZonedDateTime}. Date columns are formatted as
+ * {@code yyyy-mm-dd}, or {@code yyyy-mm-dd hh:mm:ss} if they have a time,
+ * unless a format is given. {@link Date} values are converted with the
+ * system timezone at the time the schema is built.
+ * <pre>{@code
+ * RowSchema<Trade> schema = RowSchema.builder(Trade.class)
+ *         .property("id", "Trade ID")
+ *         .property("price").format("#,##0.00")
+ *         .property("tradeDate")
+ *         .build();
+ * ws.writeRecords(schema, trades);
+ * }</pre>
+ *
+ * @param <T> Type of records.
+ */
+public final class RowSchema<T> {
+
+    /**
+     * What to do with {@code null} property values.
+     */
+    public enum NullPolicy {
+        /**
+         * Leave the cell empty, keeping the column style.
+         */
+        EMPTY,
+        /**
+         * Throw an {@link IllegalArgumentException}.
+         */
+        REJECT
+    }
+
+    private final Column<T>[] columns;
+    /**
+     * Numbering format of each column, {@code null} if none.
+     */
+    private final String[] formats;
+    private final boolean header;
+    private final boolean rejectNulls;
+
+    @SuppressWarnings("unchecked")
+    private RowSchema(Builder<T> builder) {
+        this.columns = builder.columns.toArray(new Column[0]);
+        this.formats = new String[columns.length];
+        for (int i = 0; i < columns.length; ++i) {
+            formats[i] = columns[i].format;
+        }
+        this.header = builder.header;
+        this.rejectNulls = builder.nullPolicy == NullPolicy.REJECT;
+    }
+
+    /**
+     * Start building a schema for the given type, reading properties with
+     * this library's access rights: getters must be public.
+     *
+     * @param type Type of records.
+     * @param <T> Type of records.
+     * @return New schema builder.
+     */
+    public static <T> Builder<T> builder(Class<T> type) {
+        return new Builder<>(type, MethodHandles.lookup());
+    }
+
+    /**
+     * Start building a schema for the given type, reading properties with
+     * the access rights of the given lookup. Pass
+     * {@code MethodHandles.lookup()} to map classes or getters which are not
+     * public.
+     *
+     * @param type Type of records.
+     * @param lookup Lookup used to access getters.
+     * @param <T> Type of records.
+     * @return New schema builder.
+     */
+    public static <T> Builder<T> builder(Class<T> type, MethodHandles.Lookup lookup) {
+        return new Builder<>(type, lookup);
+    }
+
+    /**
+     * Get the number of columns.
+     *
+     * @return Number of columns.
+     */
+    public int getColumnCount() {
+        return columns.length;
+    }
+
+    /**
+     * Write a header row, if any, then one row per record.
+     *
+     * @param ws Target worksheet.
+     * @param w Row writer of the worksheet.
+     * @param records Records to write.
+     * @throws IOException If an I/O error occurs.
+     */
+    void write(Worksheet ws, RowWriter w, Iterable<? extends T> records) throws IOException {
+        final Column<T>[] cols = columns;
+        final int nbColumns = cols.length;
+        int[] styles = new int[nbColumns];
+        for (int i = 0; i < nbColumns; ++i) {
+            styles[i] = formats[i] == null ? 0 : ws.getWorkbook().newStyle().format(formats[i]).id();
+        }
+        if (header) {
+            w.nextRow();
+            for (Column<T> column : cols) {
+                w.cell(column.header);
+            }
+        }
+        for (T record : records) {
+            w.nextRow();
+            for (int i = 0; i < nbColumns; ++i) {
+                cols[i].write(w, record, styles[i], rejectNulls);
+            }
+        }
+    }
+
+    /**
+     * Builder of {@link RowSchema}. Methods configuring a column, such as
+     * {@link #format(String)}, apply to the last column added.
+     *
+     * @param <T> Type of records.
+     */
+    public static final class Builder<T> {
+
+        private final Class<T> type;
+        private final MethodHandles.Lookup lookup;
+        private final List<Column<T>> columns = new ArrayList<>();
+        private boolean header = true;
+        private NullPolicy nullPolicy = NullPolicy.EMPTY;
+
+        private Builder(Class<T> type, MethodHandles.Lookup lookup) {
+            this.type = Objects.requireNonNull(type);
+            this.lookup = Objects.requireNonNull(lookup);
+        }
+
+        /**
+         * Add a column holding a property, with the property name as header.
+         *
+         * @param name Property name.
+         * @return This builder.
+         * @throws IllegalArgumentException If the property has no public
+         * getter, or its type is not supported.
+         */
+        public Builder<T> property(String name) {
+            return property(name, name);
+        }
+
+        /**
+         * Add a column holding a property.
+         *
+         * @param name Property name.
+         * @param header Column header.
+         * @return This builder.
+         * @throws IllegalArgumentException If the property has no public
+         * getter, or its type is not supported.
+         */
+        public Builder<T> property(String name, String header) {
+            Method getter = findGetter(name);
+            MethodHandle handle;
+            try {
+                if (!Modifier.isPublic(type.getModifiers()) || !Modifier.isPublic(getter.getDeclaringClass().getModifiers())) {
+                    getter.setAccessible(true);
+                }
+                handle = lookup.unreflect(getter);
+            } catch (IllegalAccessException | RuntimeException e) {
+                throw new IllegalArgumentException("Cannot access getter " + getter, e);
+            }
+            columns.add(newColumn(header, getter.getReturnType(), handle));
+            return this;
+        }
+
+        /**
+         * Add a column of numbers computed from records.
+         *
+         * @param header Column header.
+         * @param accessor Function computing cell values.
+         * @return This builder.
+         */
+        public Builder<T> numberColumn(String header, ToDoubleFunction<? super T> accessor) {
+            columns.add(new DoubleColumn<>(header, accessor));
+            return this;
+        }
+
+        /**
+         * Add a column of integers computed from records.
+         *
+         * @param header Column header.
+         * @param accessor Function computing cell values.
+         * @return This builder.
+         */
+        public Builder<T> integerColumn(String header, ToLongFunction<? super T> accessor) {
+            columns.add(new LongColumn<>(header, accessor));
+            return this;
+        }
+
+        /**
+         * Add a column of strings computed from records.
+         *
+         * @param header Column header.
+         * @param accessor Function computing cell values, which may return
+         * {@code null}.
+         * @return This builder.
+         */
+        public Builder<T> textColumn(String header, Function<? super T, String> accessor) {
+            columns.add(new StringColumn<>(header, accessor));
+            return this;
+        }
+
+        /**
+         * Set the numbering format of the last column added.
+         *
+         * @param numberingFormat Numbering format, see
+         * {@link StyleSetter#format(String)}.
+         * @return This builder.
+         */
+        public Builder<T> format(String numberingFormat) {
+            if (columns.isEmpty()) {
+                throw new IllegalStateException("No column to format");
+            }
+            columns.get(columns.size() - 1).format = numberingFormat;
+            return this;
+        }
+
+        /**
+         * Do not write a header row before records.
+         *
+         * @return This builder.
+         */
+        public Builder<T> withoutHeader() {
+            this.header = false;
+            return this;
+        }
+
+        /**
+         * Set what to do with {@code null} property values, which leave
+         * cells empty by default.
+         *
+         * @param nullPolicy Policy applied to all columns.
+         * @return This builder.
+         */
+        public Builder<T> nulls(NullPolicy nullPolicy) {
+            this.nullPolicy = Objects.requireNonNull(nullPolicy);
+            return this;
+        }
+
+        /**
+         * Build the schema.
+         *
+         * @return New schema.
+         */
+        public RowSchema<T> build() {
+            if (columns.isEmpty()) {
+                throw new IllegalStateException("A schema must have at least one column");
+            }
+            return new RowSchema<>(this);
+        }
+
+        private Method findGetter(String name) {
+            String suffix = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+            for (String methodName : new String[]{"get" + suffix, "is" + suffix, name}) {
+                try {
+                    Method method = type.getMethod(methodName);
+                    if (method.getReturnType() != void.class && (!methodName.startsWith("is") || method.getReturnType() == boolean.class || method.getReturnType() == Boolean.class)) {
+                        return method;
+                    }
+                } catch (NoSuchMethodException e) {
+                    // Try next naming convention
+                }
+            }
+            throw new IllegalArgumentException("No public getter for property " + name + " in " + type.getName());
+        }
+
+        private Column<T> newColumn(String header, Class<?> valueType, MethodHandle handle) {
+            if (valueType == double.class) {
+                return new DoubleColumn<>(header, compile(ToDoubleFunction.class, "applyAsDouble", double.class, handle));
+            } else if (valueType == long.class || valueType == int.class || valueType == short.class || valueType == byte.class) {
+                return new LongColumn<>(header, compile(ToLongFunction.class, "applyAsLong", long.class, handle));
+            } else if (valueType == boolean.class) {
+                return new BooleanColumn<>(header, compile(Predicate.class, "test", boolean.class, handle));
+            }
+            if (valueType == String.class) {
+                return new StringColumn<>(header, compile(Function.class, "apply", Object.class, handle));
+            } else if (Number.class.isAssignableFrom(valueType) || valueType == float.class) {
+                // Floats are boxed, so that they are written as Float.toString() like boxed values
+                return new NumberColumn<>(header, compile(Function.class, "apply", Object.class, handle));
+            } else if (valueType == Boolean.class) {
+                return new BoxedBooleanColumn<>(header, compile(Function.class, "apply", Object.class, handle));
+            } else if (valueType == Date.class) {
+                ZoneId zone = ZoneId.systemDefault();
+                return new DateColumn<>(header, compile(Function.class, "apply", Object.class, handle),
+                        v -> TimestampUtil.toSerial(((Date) v).getTime(), zone), "yyyy-mm-dd hh:mm:ss");
+            } else if (valueType == LocalDateTime.class) {
+                return new DateColumn<>(header, compile(Function.class, "apply", Object.class, handle),
+                        v -> TimestampUtil.toSerial((LocalDateTime) v), "yyyy-mm-dd hh:mm:ss");
+            } else if (valueType == LocalDate.class) {
+                return new DateColumn<>(header, compile(Function.class, "apply", Object.class, handle),
+                        v -> TimestampUtil.toSerial((LocalDate) v), "yyyy-mm-dd");
+            } else if (valueType == ZonedDateTime.class) {
+                return new DateColumn<>(header, compile(Function.class, "apply", Object.class, handle),
+                        v -> TimestampUtil.toSerial(((ZonedDateTime) v).toLocalDateTime()), "yyyy-mm-dd hh:mm:ss");
+            }
+            throw new IllegalArgumentException("No supported cell type for " + valueType);
+        }
+
+        /**
+         * Turn a getter into a functional interface instance. A class is
+         * generated with {@link LambdaMetafactory} if the lookup can see the
+         * record type and the getter, so that calls are as fast as a
+         * lambda calling the getter. Otherwise, the function invokes the
+         * method handle.
+         *
+         * @param functionType Functional interface.
+         * @param methodName Name of the abstract method of the interface.
+         * @param returnType Erased return type of the abstract method.
+         * @param handle Getter.
+         * @param <F> Functional interface.
+         * @return Function calling the getter.
+         */
+        @SuppressWarnings("unchecked")
+        private <F> F compile(Class<?> functionType, String methodName, Class<?> returnType, MethodHandle handle) {
+            if (isAccessible()) {
+                try {
+                    // A primitive returned through a generic function is boxed
+                    Class<?> instantiatedReturn = returnType.isPrimitive() ? returnType : handle.type().wrap().returnType();
+                    MethodType instantiated = MethodType.methodType(instantiatedReturn, type);
+                    return (F) LambdaMetafactory.metafactory(lookup, methodName, MethodType.methodType(functionType),
+                            MethodType.methodType(returnType, Object.class), handle, instantiated).getTarget().invoke();
+                } catch (Throwable e) {
+                    // Fall back to invoking the handle
+                }
+            }
+            MethodHandle generic = handle.asType(MethodType.methodType(returnType, Object.class));
+            if (returnType == double.class) {
+                return (F) (ToDoubleFunction<Object>) t -> {
+                    try {
+                        return (double) generic.invokeExact(t);
+                    } catch (Throwable e) {
+                        throw rethrow(e);
+                    }
+                };
+            } else if (returnType == long.class) {
+                return (F) (ToLongFunction<Object>) t -> {
+                    try {
+                        return (long) generic.invokeExact(t);
+                    } catch (Throwable e) {
+                        throw rethrow(e);
+                    }
+                };
+            } else if (returnType == boolean.class) {
+                return (F) (Predicate<Object>) t -> {
+                    try {
+                        return (boolean) generic.invokeExact(t);
+                    } catch (Throwable e) {
+                        throw rethrow(e);
+                    }
+                };
+            }
+            return (F) (Function<Object, Object>) t -> {
+                try {
+                    return generic.invokeExact(t);
+                } catch (Throwable e) {
+                    throw rethrow(e);
+                }
+            };
+        }
+
+        /**
+         * Check whether classes generated in the lookup class can link to
+         * the getters: the lookup must have private access, and the record
+         * type must be public and visible from the class loader of the lookup
+         * class, or belong to the same package.
+         *
+         * @return {@code true} if {@link LambdaMetafactory} can be used.
+         */
+        private boolean isAccessible() {
+            if ((lookup.lookupModes() & MethodHandles.Lookup.PRIVATE) == 0) {
+                return false;
+            }
+            Class<?> lookupClass = lookup.lookupClass();
+            if (lookupClass.getClassLoader() == type.getClassLoader() && samePackage(lookupClass, type)) {
+                return true;
+            }
+            if (!Modifier.isPublic(type.getModifiers())) {
+                return false;
+            }
+            try {
+                return Class.forName(type.getName(), false, lookupClass.getClassLoader()) == type;
+            } catch (ClassNotFoundException e) {
+                return false;
+            }
+        }
+
+        private static boolean samePackage(Class<?> c1, Class<?> c2) {
+            String n1 = c1.getName();
+            String n2 = c2.getName();
+            int i1 = n1.lastIndexOf('.');
+            int i2 = n2.lastIndexOf('.');
+            return i1 == i2 && n1.regionMatches(0, n2, 0, Math.max(i1, 0));
+        }
+
+        private static RuntimeException rethrow(Throwable e) {
+            if (e instanceof RuntimeException) {
+                return (RuntimeException) e;
+            } else if (e instanceof Error) {
+                throw (Error) e;
+            }
+            return new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Column of a schema, writing the cell of a record.
+     */
+    private abstract static class Column<T> {
+        final String header;
+        /**
+         * Numbering format, set by the builder.
+         */
+        String format;
+
+        Column(String header, String format) {
+            this.header = header;
+            this.format = format;
+        }
+
+        abstract void write(RowWriter w, T record, int style, boolean rejectNulls) throws IOException;
+
+        final void writeNull(RowWriter w, int style, boolean rejectNulls) throws IOException {
+            if (rejectNulls) {
+                throw new IllegalArgumentException("Null value in column " + header + " of row " + (w.getRow() + 1));
+            }
+            w.cell((String) null, style);
+        }
+    }
+
+    private static final class DoubleColumn<T> extends Column<T> {
+        private final ToDoubleFunction<? super T> accessor;
+
+        DoubleColumn(String header, ToDoubleFunction<? super T> accessor) {
+            super(header, null);
+            this.accessor = accessor;
+        }
+
+        @Override
+        void write(RowWriter w, T record, int style, boolean rejectNulls) throws IOException {
+            w.cell(accessor.applyAsDouble(record), style);
+        }
+    }
+
+    private static final class LongColumn<T> extends Column<T> {
+        private final ToLongFunction<? super T> accessor;
+
+        LongColumn(String header, ToLongFunction<? super T> accessor) {
+            super(header, null);
+            this.accessor = accessor;
+        }
+
+        @Override
+        void write(RowWriter w, T record, int style, boolean rejectNulls) throws IOException {
+            w.cell(accessor.applyAsLong(record), style);
+        }
+    }
+
+    private static final class BooleanColumn<T> extends Column<T> {
+        private final Predicate<? super T> accessor;
+
+        BooleanColumn(String header, Predicate<? super T> accessor) {
+            super(header, null);
+            this.accessor = accessor;
+        }
+
+        @Override
+        void write(RowWriter w, T record, int style, boolean rejectNulls) throws IOException {
+            w.cell(accessor.test(record), style);
+        }
+    }
+
+    private static final class StringColumn<T> extends Column<T> {
+        private final Function<? super T, ?> accessor;
+
+        StringColumn(String header, Function<? super T, ?> accessor) {
+            super(header, null);
+            this.accessor = accessor;
+        }
+
+        @Override
+        void write(RowWriter w, T record, int style, boolean rejectNulls) throws IOException {
+            String value = (String) accessor.apply(record);
+            if (value == null) {
+                writeNull(w, style, rejectNulls);
+            } else {
+                w.cell(value, style);
+            }
+        }
+    }
+
+    private static final class NumberColumn<T> extends Column<T> {
+        private final Function<? super T, Object> accessor;
+
+        NumberColumn(String header, Function<? super T, Object> accessor) {
+            super(header, null);
+            this.accessor = accessor;
+        }
+
+        @Override
+        void write(RowWriter w, T record, int style, boolean rejectNulls) throws IOException {
+            Number value = (Number) accessor.apply(record);
+            if (value == null) {
+                writeNull(w, style, rejectNulls);
+            } else {
+                w.cell(value, style);
+            }
+        }
+    }
+
+    private static final class BoxedBooleanColumn<T> extends Column<T> {
+        private final Function<? super T, Object> accessor;
+
+        BoxedBooleanColumn(String header, Function<? super T, Object> accessor) {
+            super(header, null);
+            this.accessor = accessor;
+        }
+
+        @Override
+        void write(RowWriter w, T record, int style, boolean rejectNulls) throws IOException {
+            Boolean value = (Boolean) accessor.apply(record);
+            if (value == null) {
+                writeNull(w, style, rejectNulls);
+            } else {
+                w.cell(value.booleanValue(), style);
+            }
+        }
+    }
+
+    private static final class DateColumn<T> extends Column<T> {
+        private final Function<? super T, Object> accessor;
+        private final ToDoubleFunction<Object> serial;
+
+        DateColumn(String header, Function<? super T, Object> accessor, ToDoubleFunction<Object> serial, String defaultFormat) {
+            super(header, defaultFormat);
+            this.accessor = accessor;
+            this.serial = serial;
+        }
+
+        @Override
+        void write(RowWriter w, T record, int style, boolean rejectNulls) throws IOException {
+            Object value = accessor.apply(record);
+            if (value == null) {
+                writeNull(w, style, rejectNulls);
+            } else {
+                w.cell(serial.applyAsDouble(value), style);
+            }
+        }
+    }
+}
@@ -0,0 +1,387 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import java.io.IOException;
+
+/**
+ * Sequential writer of worksheet rows. Cells are serialized as soon as they
+ * are written, from left to right, instead of being held in memory until the
+ * worksheet is flushed. Obtain an instance with {@link Worksheet#rowWriter()}.
+ * <p>
+ * Styles are given as indexes returned by {@link StyleSetter#id()}, see
+ * {@link Workbook#newStyle()}. A style index of zero means the default style
+ * of the row or column, see {@link Worksheet#rowStyle(int)} and
+ * {@link Worksheet#columnStyle(int)}.
+ * Null values leave the cell empty but still move to the next column.
+ */
+public class RowWriter {
+
+    private final Worksheet worksheet;
+    /**
+     * Region filled by this writer, {@code null} if rows are appended to the
+     * worksheet.
+     */
+    private final ParallelRegion region;
+    private final Writer writer;
+    /**
+     * Zero-based index of the current row, -1 if no row is open.
+     */
+    private int row = -1;
+    /**
+     * Row number used in cell references of the current row, see
+     * {@link AddressCodec#encodeRow(int)}.
+     */
+    private byte[] rowRef;
+    /**
+     * Default style of the current row, zero if none.
+     */
+    private int rowStyle;
+    /**
+     * Index of the row following the last one started.
+     */
+    private int nextRow;
+    /**
+     * Zero-based index of the next cell of the current row.
+     */
+    private int column;
+
+    /**
+     * Constructor.
+     *
+     * @param worksheet Parent worksheet.
+     * @param writer Output writer of the worksheet.
+     */
+    RowWriter(Worksheet worksheet, Writer writer) {
+        this(worksheet, null, writer, 0);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param worksheet Parent worksheet.
+     * @param region Region filled by this writer, {@code null} to append
+     * rows to the worksheet.
+     * @param writer Output writer of the worksheet or region.
+     * @param firstRow Zero-based index of the first row to start.
+     */
+    RowWriter(Worksheet worksheet, ParallelRegion region, Writer writer, int firstRow) {
+        this.worksheet = worksheet;
+        this.region = region;
+        this.writer = writer;
+        this.nextRow = firstRow;
+    }
+
+    /**
+     * Close the current row, if any, and start the next one. The first call
+     * starts the row after the last one written to the worksheet, or the
+     * first row of the region.
+     *
+     * @return This writer.
+     * @throws IOException If an I/O error occurs.
+     */
+    public RowWriter nextRow() throws IOException {
+        endRow();
+        row = region != null ? region.startRow(nextRow) : worksheet.startRow(nextRow);
+        rowRef = AddressCodec.encodeRow(row);
+        rowStyle = region != null ? region.getRowStyle(row) : worksheet.getRowStyle(row);
+        nextRow = row + 1;
+        column = 0;
+        return this;
+    }
+
+    /**
+     * Get the index of the current row.
+     *
+     * @return Zero-based index of the current row, -1 if no row is open.
+     */
+    public int getRow() {
+        return row;
+    }
+
+    /**
+     * Get the index of the next cell written in the current row.
+     *
+     * @return Zero-based column index.
+     */
+    public int getColumn() {
+        return column;
+    }
+
+    /**
+     * Leave the next cell empty.
+     *
+     * @return This writer.
+     */
+    public RowWriter skip() {
+        return skip(1);
+    }
+
+    /**
+     * Leave the next cells empty.
+     *
+     * @param count Number of cells to skip.
+     * @return This writer.
+     */
+    public RowWriter skip(int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Cannot skip a negative number of cells");
+        }
+        checkRow();
+        checkColumn(column + count - 1);
+        column += count;
+        return this;
+    }
+
+    /**
+     * Write a string, stored in the shared string table unless the storage
+     * policy of the column says otherwise, see
+     * {@link Worksheet#setStringStoragePolicy(int, StringStoragePolicy)}.
+     *
+     * @param value Cell value, may be {@code null}.
+     * @return This writer.
+     * @throws IOException If an I/O error occurs.
+     */
+    public RowWriter cell(String value) throws IOException {
+        return cell(value, 0);
+    }
+
+    /**
+     * Write a styled string, stored in the shared string table unless the
+     * storage policy of the column says otherwise.
+     *
+     * @param value Cell value, may be {@code null}.
+     * @param style Style index.
+     * @return This writer.
+     * @throws IOException If an I/O error occurs.
+     */
+    public RowWriter cell(String value, int style) throws IOException {
+        if (value == null) {
+            return empty(style);
+        }
+        checkRow();
+        int index = region != null ? region.cacheString(column, value) : worksheet.cacheString(column, value);
+        if (index < 0) {
+            return inlineString(value, style);
+        }
+        startCell(style, "s");
+        writer.append("<v>").append(index).append("</v></c>");
+        return this;
+    }
+
+    /**
+     * Write a number.
+     *
+     * @param value Cell value.
+     * @return This writer.
+     * @throws IOException If an I/O error occurs.
+     */
+    public RowWriter cell(double value) throws IOException {
+        return cell(value, 0);
+    }
+
+    /**
+     * Write a styled number.
+     *
+     * @param value Cell value.
+     * @param style Style index.
+     * @return This writer.
+     * @throws IOException If an I/O error occurs.
+     */
+    public RowWriter cell(double value, int style) throws IOException {
+        startCell(style, "n");
+        writer.append("<v>").append(value).append("</v></c>");
+        return this;
+    }
+
+    /**
+     * Write an integer.
+     *
+     * @param value Cell value.
+     * @return This writer.
+     * @throws IOException If an I/O error occurs.
+     */
+    public RowWriter cell(long value) throws IOException {
+        return cell(value, 0);
+    }
+
+    /**
+     * Write a styled integer.
+     *
+     * @param value Cell value.
+     * @param style Style index.
+     * @return This writer.
+     * @throws IOException If an I/O error occurs.
+     */
+    public RowWriter cell(long value, int style) throws IOException {
+        startCell(style, "n");
+        writer.append("<v>").append(value).append("</v></c>");
+        return this;
+    }
+
+    /**
+     * Write a number of any type.
+     *
+     * @param value Cell value, may be {@code null}.
+     * @param style Style index.
+     * @return This writer.
+     * @throws IOException If an I/O error occurs.
+     */
+    public RowWriter cell(Number value, int style) throws IOException {
+        if (value == null) {
+            return empty(style);
+        } else if (value instanceof Integer || value instanceof Long) {
+            return cell(value.longValue(), style);
+        } else if (value instanceof Double) {
+            return cell(value.doubleValue(), style);
+        }
+        startCell(style, "n");
+        writer.append("<v>").append(value.toString()).append("</v></c>");
+        return this;
+    }
+
+    /**
+     * Write a boolean.
+     *
+     * @param value Cell value.
+     * @return This writer.
+     * @throws IOException If an I/O error occurs.
+     */
+    public RowWriter cell(boolean value) throws IOException {
+        return cell(value, 0);
+    }
+
+    /**
+     * Write a styled boolean.
+     *
+     * @param value Cell value.
+     * @param style Style index.
+     * @return This writer.
+     * @throws IOException If an I/O error occurs.
+     */
+    public RowWriter cell(boolean value, int style) throws IOException {
+        startCell(style, "b");
+        writer.append("<v>").append(value ? '1' : '0').append("</v></c>");
+        return this;
+    }
+
+    /**
+     * Write an inline string, which is not stored in the shared string table.
+     *
+     * @param value Cell value, may be {@code null}.
+     * @return This writer.
+     * @throws IOException If an I/O error occurs.
+     */
+    public RowWriter inlineString(String value) throws IOException {
+        return inlineString(value, 0);
+    }
+
+    /**
+     * Write a styled inline string, which is not stored in the shared string
+     * table.
+     *
+     * @param value Cell value, may be {@code null}.
+     * @param style Style index.
+     * @return This writer.
+     * @throws IOException If an I/O error occurs.
+     */
+    public RowWriter inlineString(String value, int style) throws IOException {
+        if (value == null) {
+            return empty(style);
+        }
+        startCell(style, "inlineStr");
+        writer.append("<is><t>").appendEscaped(value).append("</t></is></c>");
+        return this;
+    }
+
+    /**
+     * Write a formula.
+     *
+     * @param expression Formula expression, without the leading '='.
+     * @return This writer.
+     * @throws IOException If an I/O error occurs.
+     */
+    public RowWriter formula(String expression) throws IOException {
+        return formula(expression, 0);
+    }
+
+    /**
+     * Write a styled formula.
+     *
+     * @param expression Formula expression, without the leading '='.
+     * @param style Style index.
+     * @return This writer.
+     * @throws IOException If an I/O error occurs.
+     */
+    public RowWriter formula(String expression, int style) throws IOException {
+        if (expression == null) {
+            return empty(style);
+        }
+        startCell(style, null);
+        writer.append("<f>").append(expression).append("</f></c>");
+        return this;
+    }
+
+    /**
+     * Close the current row, if any.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    void endRow() throws IOException {
+        if (row >= 0) {
+            writer.append("</row>");
+            row = -1;
+        }
+    }
+
+    private RowWriter empty(int style) throws IOException {
+        if (style == 0) {
+            return skip();
+        }
+        startCell(style, null);
+        writer.append("</c>");
+        return this;
+    }
+
+    private void startCell(int style, String type) throws IOException {
+        checkRow();
+        checkColumn(column);
+        writer.append("<c r=\"").appendCellReference(column, rowRef).append('\"');
+        if (style == 0) {
+            style = region != null ? region.getDefaultStyle(rowStyle, column) : worksheet.getDefaultStyle(rowStyle, column);
+        }
+        if (style != 0) {
+            writer.append(" s=\"").append(style).append('\"');
+        }
+        if (type != null) {
+            writer.append(" t=\"").append(type).append('\"');
+        }
+        writer.append('>');
+        ++column;
+    }
+
+    private void checkRow() {
+        if (row < 0) {
+            throw new IllegalStateException("No current row, call nextRow() first");
+        }
+    }
+
+    private static void checkColumn(int c) {
+        if (c >= Worksheet.MAX_COLS) {
+            throw new IllegalArgumentException("Too many columns");
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Entry compressor deflating bytes on the calling thread, as they are
+ * written.
+ */
+class SerialEntryDeflater extends EntryDeflater {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    /**
+     * Stream receiving compressed bytes of the current entry.
+     */
+    private OutputStream target;
+    private long size;
+    private long compressedSize;
+
+    /**
+     * Constructor.
+     *
+     * @param level Compression level (0-9).
+     */
+    SerialEntryDeflater(int level) {
+        this.deflater = new Deflater(level, true);
+    }
+
+    @Override
+    void setLevel(int level) {
+        deflater.setLevel(level);
+    }
+
+    @Override
+    void begin(OutputStream target) {
+        this.target = target;
+        deflater.reset();
+        crc.reset();
+        size = 0;
+        compressedSize = 0;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (target == null) {
+            throw new IllegalStateException("No current entry");
+        }
+        if (len == 0) {
+            return;
+        }
+        crc.update(b, off, len);
+        size += len;
+        deflater.setInput(b, off, len);
+        while (!deflater.needsInput()) {
+            deflate();
+        }
+    }
+
+    @Override
+    void finish() throws IOException {
+        deflater.finish();
+        while (!deflater.finished()) {
+            deflate();
+        }
+        target = null;
+    }
+
+    private void deflate() throws IOException {
+        int n = deflater.deflate(buffer, 0, buffer.length);
+        if (n > 0) {
+            target.write(buffer, 0, n);
+            compressedSize += n;
+        }
+    }
+
+    @Override
+    long getCrc() {
+        return crc.getValue();
+    }
+
+    @Override
+    long getSize() {
+        return size;
+    }
+
+    @Override
+    long getCompressedSize() {
+        return compressedSize;
+    }
+
+    @Override
+    public void close() {
+        deflater.end();
+    }
+}
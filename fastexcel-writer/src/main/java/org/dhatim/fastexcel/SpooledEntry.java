@@ -0,0 +1,187 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Zip entry compressed ahead of time, independently of the archive it will
+ * eventually be copied to. Compressed bytes are kept in memory up to a given
+ * threshold, then spilled to a temporary file.
+ */
+class SpooledEntry extends OutputStream {
+
+    /**
+     * Default number of compressed bytes kept in memory.
+     */
+    static final int DEFAULT_MEMORY_THRESHOLD = 4 * 1024 * 1024;
+
+    private final EntryDeflater deflater;
+    private final int memoryThreshold;
+    /**
+     * Compressed bytes, while they fit in memory.
+     */
+    private byte[] memory = new byte[1024];
+    private int memoryLength;
+    /**
+     * Temporary file holding compressed bytes, once they have been spilled.
+     */
+    private Path file;
+    private OutputStream fileStream;
+    private boolean finished;
+
+    /**
+     * Constructor.
+     *
+     * @param deflater Compressor, owned by this entry.
+     * @param memoryThreshold Maximum number of compressed bytes kept in
+     * memory.
+     */
+    SpooledEntry(EntryDeflater deflater, int memoryThreshold) {
+        if (memoryThreshold < 0) {
+            throw new IllegalArgumentException("Memory threshold must not be negative");
+        }
+        this.memoryThreshold = memoryThreshold;
+        this.deflater = deflater;
+        this.deflater.begin(new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                spool(b, off, len);
+            }
+        });
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        deflater.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        deflater.write(b, off, len);
+    }
+
+    /**
+     * Store compressed bytes.
+     *
+     * @param b Bytes.
+     * @param off Offset of the first byte.
+     * @param len Number of bytes.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void spool(byte[] b, int off, int len) throws IOException {
+        if (fileStream == null && memoryLength + len > memoryThreshold) {
+            file = Files.createTempFile("fastexcel", ".deflate");
+            fileStream = new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024);
+            fileStream.write(memory, 0, memoryLength);
+            memory = null;
+            memoryLength = 0;
+        }
+        if (fileStream != null) {
+            fileStream.write(b, off, len);
+        } else {
+            if (memoryLength + len > memory.length) {
+                int capacity = Math.max(memoryLength + len, (int) Math.min(memoryThreshold, 2L * memory.length));
+                memory = Arrays.copyOf(memory, capacity);
+            }
+            System.arraycopy(b, off, memory, memoryLength, len);
+            memoryLength += len;
+        }
+    }
+
+    /**
+     * Complete compression. CRC and sizes are available after this call.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        deflater.finish();
+        deflater.close();
+        if (fileStream != null) {
+            fileStream.close();
+        }
+        finished = true;
+    }
+
+    /**
+     * @return CRC-32 of uncompressed bytes.
+     */
+    long getCrc() {
+        return deflater.getCrc();
+    }
+
+    /**
+     * @return Number of uncompressed bytes.
+     */
+    long getSize() {
+        return deflater.getSize();
+    }
+
+    /**
+     * @return Number of compressed bytes.
+     */
+    long getCompressedSize() {
+        return deflater.getCompressedSize();
+    }
+
+    /**
+     * Copy compressed bytes to the given stream.
+     *
+     * @param out Target stream.
+     * @throws IOException If an I/O error occurs.
+     */
+    void writeCompressedTo(OutputStream out) throws IOException {
+        if (!finished) {
+            throw new IllegalStateException("Entry is not finished");
+        }
+        if (file != null) {
+            Files.copy(file, out);
+        } else {
+            out.write(memory, 0, memoryLength);
+        }
+    }
+
+    /**
+     * Release memory and delete the temporary file, if any.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            memory = null;
+            if (file != null) {
+                Files.deleteIfExists(file);
+                file = null;
+            }
+        }
+    }
+}
@@ -15,64 +15,282 @@
  */
 package org.dhatim.fastexcel;
 
+import java.io.Closeable;
 import java.io.IOException;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map.Entry;
-import java.util.stream.Stream;
-
-import static java.util.Comparator.comparingInt;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Thread-safe cache for shared strings. Each string is uniquely identified by
- * an integer. See {@link CachedString}.
+ * an integer.
+ * <p>
+ * Strings are stored in UTF-8 in a {@link StringStore}, which spills to a
+ * temporary file beyond a memory threshold. An open-addressing hash table
+ * maps strings to their index, and the location of each string is recorded
+ * along with its index, so that heap usage grows with the number of unique
+ * strings rather than their length.
+ * <p>
+ * Strings are partitioned by hash code into stripes, each with its own lock,
+ * hash table and store, so that worksheets generated by different threads
+ * rarely wait for each other. Indexes are assigned by a shared counter, so
+ * they remain dense, and follow insertion order when a single thread caches
+ * strings.
  */
-class StringCache {
+class StringCache implements Closeable {
 
     /**
-     * Number of strings, including duplicates.
+     * Number of stripes, a power of two.
      */
-    private long count;
+    private static final int STRIPES = 16;
+
     /**
-     * Map giving string index for each unique string.
+     * Next string index.
      */
-    private final HashMap<String, CachedString> strings = new HashMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final Stripe[] stripes = new Stripe[STRIPES];
 
     /**
-     * Add a string to this cache.
+     * Constructor.
+     *
+     * @param memoryThreshold Number of bytes of strings kept on the heap
+     * before spilling to a temporary file.
+     */
+    StringCache(long memoryThreshold) {
+        for (int i = 0; i < STRIPES; ++i) {
+            stripes[i] = new Stripe(memoryThreshold / STRIPES);
+        }
+    }
+
+    /**
+     * Set the number of bytes of strings kept on the heap before spilling to
+     * a temporary file.
+     *
+     * @param memoryThreshold Number of bytes.
+     */
+    void setMemoryThreshold(long memoryThreshold) {
+        if (memoryThreshold < 0) {
+            throw new IllegalArgumentException("Memory threshold must not be negative");
+        }
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.store.setMemoryThreshold(memoryThreshold / STRIPES);
+            }
+        }
+    }
+
+    /**
+     * Add a string to this cache, telling whether it was already present.
      *
      * @param s String to cache.
+     * @return Index of the string if it was already present, complement of
+     * its index ({@code ~index}) if it was added.
+     */
+    int intern(String s) {
+        s = removeLoneSurrogates(s);
+        int hash = mix(s.hashCode());
+        // Upper bits select the stripe, lower bits the slot in its table
+        Stripe stripe = stripes[hash >>> (Integer.SIZE - Integer.numberOfTrailingZeros(STRIPES))];
+        synchronized (stripe) {
+            return stripe.intern(hash, s, size);
+        }
+    }
+
+    /**
+     * Get a cached string by index.
+     *
+     * @param index Index of the string.
      * @return Cached string.
      */
-    CachedString cacheString(String s) {
-        CachedString result;
-        synchronized (strings) {
-            ++count;
-            result = strings.get(s);
-            if (result == null) {
-                result = new CachedString(s, strings.size());
-                strings.put(s, result);
+    String get(int index) {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                // Indexes of a stripe are increasing, as they are taken under its lock
+                int entry = Arrays.binarySearch(stripe.indexes, 0, stripe.size, index);
+                if (entry >= 0) {
+                    return stripe.store.get(stripe.locations[entry]);
+                }
+            }
+        }
+        throw new IllegalArgumentException("No string at index " + index);
+    }
+
+    /**
+     * Remove unpaired surrogates, which cannot be encoded in UTF-8 and are
+     * dropped when written as XML anyway, so that strings which only differ
+     * by them share the same entry.
+     *
+     * @param s String.
+     * @return String without unpaired surrogates.
+     */
+    static String removeLoneSurrogates(String s) {
+        int n = s.length();
+        int i = 0;
+        while (i < n) {
+            char c = s.charAt(i);
+            if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                i += 2;
+            } else if (Character.isSurrogate(c)) {
+                break;
+            } else {
+                ++i;
+            }
+        }
+        if (i == n) {
+            return s;
+        }
+        StringBuilder sb = new StringBuilder(n - 1).append(s, 0, i);
+        for (; i < n; ++i) {
+            char c = s.charAt(i);
+            if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                sb.append(c).append(s.charAt(++i));
+            } else if (!Character.isSurrogate(c)) {
+                sb.append(c);
             }
         }
-        return result;
+        return sb.toString();
     }
 
     /**
-     * Write this cache as an XML file.
+     * Spread hash code bits, as strings often differ in their last
+     * characters only.
+     */
+    private static int mix(int hash) {
+        int h = hash * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Write this cache as an XML file. Strings must not be added while this
+     * method runs.
      *
      * @param w Output writer.
      * @throws IOException If an I/O error occurs.
      */
     void write(Writer w) throws IOException {
-        w.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?><sst xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\" count=\"").append(count).append("\" uniqueCount=\"").append(strings.size()).append("\">");
-        Stream<String> sortedStrings = strings.entrySet().stream()
-                .sorted(comparingInt(e -> e.getValue().getIndex()))
-                .map(Entry::getKey);
-        Iterator<String> it = sortedStrings.iterator();
-        while (it.hasNext()) {
-            w.append("<si><t>").appendEscaped(it.next()).append("</t></si>");
+        // Locate each string by index: stripe number and entry in the stripe
+        int uniqueCount = size.get();
+        byte[] stripeOf = new byte[uniqueCount];
+        int[] entryOf = new int[uniqueCount];
+        long count = 0;
+        for (int i = 0; i < STRIPES; ++i) {
+            Stripe stripe = stripes[i];
+            synchronized (stripe) {
+                for (int entry = 0; entry < stripe.size; ++entry) {
+                    stripeOf[stripe.indexes[entry]] = (byte) i;
+                    entryOf[stripe.indexes[entry]] = entry;
+                }
+                count += stripe.count;
+            }
+        }
+        w.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?><sst xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\" count=\"").append(count).append("\" uniqueCount=\"").append(uniqueCount).append("\">");
+        for (int index = 0; index < uniqueCount; ++index) {
+            Stripe stripe = stripes[stripeOf[index]];
+            String s;
+            synchronized (stripe) {
+                s = stripe.store.get(stripe.locations[entryOf[index]]);
+            }
+            w.append("<si><t>").appendEscaped(s).append("</t></si>");
         }
         w.append("</sst>");
     }
+
+    /**
+     * Delete the temporary files holding strings, if any.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public void close() throws IOException {
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.store.close();
+            }
+        }
+    }
+
+    /**
+     * Subset of strings sharing the upper bits of their hash code. Access is
+     * guarded by the stripe monitor.
+     */
+    private static class Stripe {
+
+        private static final int INITIAL_CAPACITY = 64;
+
+        /**
+         * Number of strings, including duplicates.
+         */
+        long count;
+        /**
+         * Number of unique strings.
+         */
+        int size;
+        /**
+         * Hash table of entries: mixed hash code in the upper 32 bits, entry
+         * plus one in the lower 32 bits, zero for empty slots. Its length is
+         * a power of two, at least twice the number of entries.
+         */
+        long[] table = new long[INITIAL_CAPACITY];
+        /**
+         * Location of each entry in {@link #store}.
+         */
+        long[] locations = new long[INITIAL_CAPACITY / 2];
+        /**
+         * String index of each entry.
+         */
+        int[] indexes = new int[INITIAL_CAPACITY / 2];
+        final StringStore store;
+
+        Stripe(long memoryThreshold) {
+            store = new StringStore(memoryThreshold);
+        }
+
+        int intern(int hash, String s, AtomicInteger nextIndex) {
+            ++count;
+            int mask = table.length - 1;
+            int slot = hash & mask;
+            long e;
+            while ((e = table[slot]) != 0) {
+                int entry = (int) e - 1;
+                if ((int) (e >>> 32) == hash && store.equals(locations[entry], s)) {
+                    return indexes[entry];
+                }
+                slot = (slot + 1) & mask;
+            }
+            int entry = size;
+            if (entry == locations.length) {
+                locations = Arrays.copyOf(locations, 2 * entry);
+                indexes = Arrays.copyOf(indexes, 2 * entry);
+            }
+            try {
+                locations[entry] = store.append(s.getBytes(StandardCharsets.UTF_8));
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            int index = nextIndex.getAndIncrement();
+            indexes[entry] = index;
+            table[slot] = (long) hash << 32 | (entry + 1);
+            ++size;
+            if (2 * size > table.length) {
+                rehash(2 * table.length);
+            }
+            return ~index;
+        }
+
+        private void rehash(int capacity) {
+            long[] newTable = new long[capacity];
+            int mask = capacity - 1;
+            for (long e : table) {
+                if (e != 0) {
+                    int slot = (int) (e >>> 32) & mask;
+                    while (newTable[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    newTable[slot] = e;
+                }
+            }
+            table = newTable;
+        }
+    }
 }
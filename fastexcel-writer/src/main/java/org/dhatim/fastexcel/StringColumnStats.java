@@ -0,0 +1,207 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+/**
+ * Storage statistics of the string values of a worksheet column. See
+ * {@link StringStoragePolicy}.
+ */
+public class StringColumnStats {
+
+    /**
+     * Number of strings sampled before an adaptive column chooses between
+     * shared and inline strings.
+     */
+    static final int SAMPLE_SIZE = 1000;
+
+    /**
+     * Minimum ratio of unique strings in the sample for an adaptive column to
+     * switch to inline strings.
+     */
+    static final double INLINE_UNIQUE_RATIO = 0.9;
+
+    private final int column;
+    private StringStoragePolicy policy;
+    private long sharedCount;
+    private long inlineCount;
+    private int sampleCount;
+    private int sampleUniqueCount;
+    private boolean inline;
+
+    /**
+     * Constructor.
+     *
+     * @param column Zero-based column number.
+     * @param policy Storage policy of the column.
+     */
+    StringColumnStats(int column, StringStoragePolicy policy) {
+        this.column = column;
+        setPolicy(policy);
+    }
+
+    /**
+     * Change the storage policy of the column. Adaptive columns sample
+     * strings again.
+     *
+     * @param policy Storage policy.
+     */
+    void setPolicy(StringStoragePolicy policy) {
+        this.policy = policy;
+        this.inline = policy == StringStoragePolicy.INLINE;
+        this.sampleCount = 0;
+        this.sampleUniqueCount = 0;
+    }
+
+    /**
+     * Check whether the next string of the column must be written inline.
+     *
+     * @return {@code true} for inline strings, {@code false} for shared
+     * strings.
+     */
+    boolean isInline() {
+        return inline;
+    }
+
+    /**
+     * Count a string stored in the shared string table, and decide the path
+     * of an adaptive column once enough strings have been sampled.
+     *
+     * @param added Whether the string was added to the table, as opposed to
+     * already present.
+     */
+    void shared(boolean added) {
+        ++sharedCount;
+        if (policy == StringStoragePolicy.ADAPTIVE && sampleCount < SAMPLE_SIZE) {
+            ++sampleCount;
+            if (added) {
+                ++sampleUniqueCount;
+            }
+            if (sampleCount == SAMPLE_SIZE) {
+                inline = sampleUniqueCount >= INLINE_UNIQUE_RATIO * SAMPLE_SIZE;
+            }
+        }
+    }
+
+    /**
+     * Count a string written inline.
+     */
+    void inline() {
+        ++inlineCount;
+    }
+
+    /**
+     * Copy the policy and sampling state of this column, with no strings
+     * counted, to be filled by another thread.
+     *
+     * @return Copy of these statistics.
+     */
+    StringColumnStats fork() {
+        StringColumnStats result = new StringColumnStats(column, policy);
+        result.inline = inline;
+        result.sampleCount = sampleCount;
+        result.sampleUniqueCount = sampleUniqueCount;
+        return result;
+    }
+
+    /**
+     * Add the strings counted in statistics returned by {@link #fork()}.
+     *
+     * @param other Forked statistics.
+     */
+    void join(StringColumnStats other) {
+        sharedCount += other.sharedCount;
+        inlineCount += other.inlineCount;
+    }
+
+    /**
+     * Get the column.
+     *
+     * @return Zero-based column number.
+     */
+    public int getColumn() {
+        return column;
+    }
+
+    /**
+     * Get the storage policy of the column.
+     *
+     * @return Storage policy.
+     */
+    public StringStoragePolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Check whether strings of the column are currently written inline.
+     * Adaptive columns start with shared strings, until enough strings are
+     * sampled.
+     *
+     * @return {@code true} if strings are written inline.
+     */
+    public boolean isInlined() {
+        return inline;
+    }
+
+    /**
+     * Get the number of strings stored in the shared string table.
+     *
+     * @return Number of shared strings, including duplicates.
+     */
+    public long getSharedCount() {
+        return sharedCount;
+    }
+
+    /**
+     * Get the number of strings written inline.
+     *
+     * @return Number of inline strings.
+     */
+    public long getInlineCount() {
+        return inlineCount;
+    }
+
+    /**
+     * Get the number of strings of an adaptive column sampled so far.
+     *
+     * @return Number of strings in the sample.
+     */
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * Get the number of strings of an adaptive column which were not in the
+     * shared string table when sampled.
+     *
+     * @return Number of unique strings in the sample.
+     */
+    public int getSampleUniqueCount() {
+        return sampleUniqueCount;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(AddressCodec.getColumnName(column)).append(": ").append(policy)
+                .append(inline ? " -> inline" : " -> shared")
+                .append(", shared=").append(sharedCount)
+                .append(", inline=").append(inlineCount);
+        if (policy == StringStoragePolicy.ADAPTIVE) {
+            sb.append(", sampled unique=").append(sampleUniqueCount).append('/').append(sampleCount);
+        }
+        return sb.toString();
+    }
+}
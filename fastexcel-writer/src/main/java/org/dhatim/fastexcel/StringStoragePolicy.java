@@ -15,44 +15,29 @@
  */
 package org.dhatim.fastexcel;
 
-import java.util.Objects;
-
 /**
- * A cached string is uniquely identified by its index.
+ * How string values are stored in worksheets.
  */
-class CachedString {
-
-    private final String string;
-    private final int index;
+public enum StringStoragePolicy {
 
     /**
-     * Constructor.
-     *
-     * @param string String value.
-     * @param index Index in cache.
+     * Store strings in the shared string table of the workbook. Each unique
+     * string is written once, and kept in memory until the workbook is
+     * finished.
      */
-    CachedString(String string, int index) {
-        Objects.requireNonNull(string);
-        this.string = string;
-        this.index = index;
-    }
+    SHARED,
 
     /**
-     * Get string value.
-     *
-     * @return String value.
+     * Write strings inline in worksheet cells. Nothing is kept in memory
+     * once rows are flushed, but repeated strings are written repeatedly.
      */
-    String getString() {
-        return string;
-    }
+    INLINE,
 
     /**
-     * Get cache index.
-     *
-     * @return Cache index.
+     * Store strings in the shared string table until enough strings of a
+     * column have been sampled, then keep sharing strings of columns with
+     * repeated values and inline strings of columns whose values are mostly
+     * unique.
      */
-    int getIndex() {
-        return index;
-    }
-
+    ADAPTIVE
 }
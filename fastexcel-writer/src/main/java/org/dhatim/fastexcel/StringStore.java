@@ -0,0 +1,283 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.file.StandardOpenOption.DELETE_ON_CLOSE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Append-only storage of UTF-8 encoded strings. Strings are stored in
+ * segments, each prefixed with its length, and identified by their location:
+ * segment number in the upper 32 bits, offset in the segment in the lower 32
+ * bits. Segments are allocated on the heap up to a given threshold, then
+ * mapped from a temporary file, so that the heap does not grow with the total
+ * length of stored strings.
+ */
+class StringStore implements Closeable {
+
+    /**
+     * Default number of bytes of segments allocated on the heap.
+     */
+    static final long DEFAULT_MEMORY_THRESHOLD = 64L * 1024 * 1024;
+
+    /**
+     * Size of the first segment. Each heap segment is twice as large as the
+     * previous one, up to {@link #SEGMENT_SIZE}.
+     */
+    private static final int INITIAL_SEGMENT_SIZE = 4 * 1024;
+
+    /**
+     * Maximum size of heap segments, and size of mapped segments. Strings
+     * longer than that get a segment of their own.
+     */
+    private static final int SEGMENT_SIZE = 1024 * 1024;
+
+    private long memoryThreshold;
+    private final List<ByteBuffer> segments = new ArrayList<>();
+    /**
+     * Segment strings are appended to, its position is the end of data.
+     */
+    private ByteBuffer current;
+    /**
+     * Number of bytes of segments allocated on the heap.
+     */
+    private long memoryBytes;
+    /**
+     * Temporary file backing mapped segments, {@code null} until needed.
+     */
+    private FileChannel file;
+    private long fileLength;
+    /**
+     * Buffer used to decode strings from mapped segments.
+     */
+    private byte[] buffer = new byte[256];
+
+    /**
+     * Constructor.
+     *
+     * @param memoryThreshold Number of bytes of segments allocated on the
+     * heap before segments are mapped from a temporary file.
+     */
+    StringStore(long memoryThreshold) {
+        setMemoryThreshold(memoryThreshold);
+    }
+
+    /**
+     * Set the number of bytes of segments allocated on the heap before
+     * segments are mapped from a temporary file. This applies to segments
+     * allocated afterwards.
+     *
+     * @param memoryThreshold Number of bytes.
+     */
+    void setMemoryThreshold(long memoryThreshold) {
+        if (memoryThreshold < 0) {
+            throw new IllegalArgumentException("Memory threshold must not be negative");
+        }
+        this.memoryThreshold = memoryThreshold;
+    }
+
+    /**
+     * Append a string.
+     *
+     * @param utf8 UTF-8 encoded string.
+     * @return Location of the string.
+     * @throws IOException If a segment could not be mapped.
+     */
+    long append(byte[] utf8) throws IOException {
+        int length = utf8.length + 5;
+        if (current == null || current.remaining() < length) {
+            newSegment(length);
+        }
+        long location = ((long) (segments.size() - 1) << 32) | current.position();
+        int n = utf8.length;
+        while ((n & ~0x7f) != 0) {
+            current.put((byte) ((n & 0x7f) | 0x80));
+            n >>>= 7;
+        }
+        current.put((byte) n);
+        current.put(utf8);
+        return location;
+    }
+
+    private void newSegment(int length) throws IOException {
+        ByteBuffer segment;
+        if (memoryBytes < memoryThreshold) {
+            int size = current == null ? INITIAL_SEGMENT_SIZE : Math.min(SEGMENT_SIZE, 2 * current.capacity());
+            segment = ByteBuffer.allocate(Math.max(size, length));
+            memoryBytes += segment.capacity();
+        } else {
+            if (file == null) {
+                file = FileChannel.open(Files.createTempFile("fastexcel", ".sst"), READ, WRITE, DELETE_ON_CLOSE);
+            }
+            int size = Math.max(SEGMENT_SIZE, length);
+            segment = file.map(FileChannel.MapMode.READ_WRITE, fileLength, size);
+            fileLength += size;
+        }
+        segments.add(segment);
+        current = segment;
+    }
+
+    /**
+     * Check whether the string at the given location is equal to the given
+     * string. Stored bytes are decoded on the fly, so that the given string
+     * does not need to be encoded.
+     *
+     * @param location Location returned by {@link #append(byte[])}.
+     * @param s String.
+     * @return {@code true} if both strings are equal.
+     */
+    boolean equals(long location, String s) {
+        ByteBuffer segment = segments.get((int) (location >>> 32));
+        int offset = (int) location;
+        int length = readLength(segment, offset);
+        offset += lengthSize(length);
+        byte[] bytes;
+        if (segment.hasArray()) {
+            bytes = segment.array();
+        } else {
+            bytes = read(segment, offset, length);
+            offset = 0;
+        }
+        int n = s.length();
+        if (length < n) {
+            // Each char takes at least one byte
+            return false;
+        } else if (length == n) {
+            // Fast path for ASCII strings, where each byte is a char
+            int i = 0;
+            while (i < n && bytes[offset + i] == s.charAt(i)) {
+                ++i;
+            }
+            if (i == n) {
+                return true;
+            } else if (bytes[offset + i] >= 0) {
+                return false;
+            }
+        }
+        int end = offset + length;
+        int i = 0;
+        while (offset < end) {
+            int b = bytes[offset++];
+            if (b >= 0) {
+                if (i >= n || s.charAt(i++) != b) {
+                    return false;
+                }
+                continue;
+            }
+            int cp;
+            if ((b & 0xe0) == 0xc0) {
+                cp = (b & 0x1f) << 6 | (bytes[offset++] & 0x3f);
+            } else if ((b & 0xf0) == 0xe0) {
+                cp = (b & 0x0f) << 12 | (bytes[offset++] & 0x3f) << 6 | (bytes[offset++] & 0x3f);
+            } else {
+                cp = (b & 0x07) << 18 | (bytes[offset++] & 0x3f) << 12 | (bytes[offset++] & 0x3f) << 6 | (bytes[offset++] & 0x3f);
+            }
+            if (cp < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                if (i >= n || s.charAt(i++) != cp) {
+                    return false;
+                }
+            } else if (i + 1 >= n || s.charAt(i++) != Character.highSurrogate(cp) || s.charAt(i++) != Character.lowSurrogate(cp)) {
+                return false;
+            }
+        }
+        return i == n;
+    }
+
+    /**
+     * Read the string at the given location.
+     *
+     * @param location Location returned by {@link #append(byte[])}.
+     * @return Decoded string.
+     */
+    String get(long location) {
+        ByteBuffer segment = segments.get((int) (location >>> 32));
+        int offset = (int) location;
+        int length = readLength(segment, offset);
+        offset += lengthSize(length);
+        if (segment.hasArray()) {
+            return new String(segment.array(), offset, length, StandardCharsets.UTF_8);
+        }
+        return new String(read(segment, offset, length), 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Copy bytes of a mapped segment to {@link #buffer}.
+     */
+    private byte[] read(ByteBuffer segment, int offset, int length) {
+        if (buffer.length < length) {
+            buffer = new byte[Math.max(length, 2 * buffer.length)];
+        }
+        ByteBuffer view = segment.duplicate();
+        view.position(offset);
+        view.get(buffer, 0, length);
+        return buffer;
+    }
+
+    private static int readLength(ByteBuffer segment, int offset) {
+        int length = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = segment.get(offset++);
+            length |= (b & 0x7f) << shift;
+            shift += 7;
+        } while (b < 0);
+        return length;
+    }
+
+    private static int lengthSize(int length) {
+        int size = 1;
+        while ((length & ~0x7f) != 0) {
+            length >>>= 7;
+            ++size;
+        }
+        return size;
+    }
+
+    /**
+     * Get the number of bytes of segments mapped from the temporary file.
+     *
+     * @return Number of bytes, zero if strings are all stored on the heap.
+     */
+    long getMappedBytes() {
+        return fileLength;
+    }
+
+    /**
+     * Release segments and delete the temporary file, if any.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    @Override
+    public void close() throws IOException {
+        segments.clear();
+        current = null;
+        if (file != null) {
+            file.close();
+            file = null;
+        }
+    }
+}
@@ -36,13 +36,23 @@ final class StyleCache {
     private final ConcurrentMap<Fill, Integer> fills = new ConcurrentHashMap<>();
     private final ConcurrentMap<Border, Integer> borders = new ConcurrentHashMap<>();
     private final ConcurrentMap<Style, Integer> styles = new ConcurrentHashMap<>();
+    /**
+     * Cached styles by index, for reverse lookups. Additions to
+     * {@link #styles} are synchronized on this list.
+     */
+    private final List<Style> styleList = new ArrayList<>();
+    /**
+     * Memoized merges: for each style delta, index of the merged style by
+     * index of the current style.
+     */
+    private final ConcurrentMap<StyleDelta, ConcurrentMap<Integer, Integer>> merges = new ConcurrentHashMap<>();
     private final ConcurrentMap<DifferentialFormat, Integer> dxfs = new ConcurrentHashMap<>();
 
     /**
      * Default constructor. Pre-cache Excel-reserved stuff.
      */
     StyleCache() {
-        mergeAndCacheStyle(0, null, Font.DEFAULT, Fill.NONE, Border.NONE, null, null);
+        mergeAndCacheStyle(0, new StyleDelta(null, Font.DEFAULT, Fill.NONE, Border.NONE, null, null));
         cacheFill(Fill.GRAY125);
     }
 
@@ -125,15 +135,65 @@ final class StyleCache {
         return cacheStuff(dxfs, f);
     }
 
-    int mergeAndCacheStyle(int currentStyle, String numberingFormat, Font font, Fill fill, Border border, Alignment alignment, Protection protection) {
-        Style original = styles.entrySet().stream().filter(e -> e.getValue().equals(currentStyle)).map(Entry::getKey).findFirst().orElse(null);
-        Style s = new Style(original, cacheValueFormatting(numberingFormat), cacheFont(font), cacheFill(fill), cacheBorder(border), alignment, protection);
-        return cacheStuff(styles, s);
+    /**
+     * Merge style elements with a cached style. Merges are memoized, so
+     * applying the same elements to cells with the same style only costs a
+     * couple of hash lookups.
+     *
+     * @param currentStyle Index of the current style, 0 if none.
+     * @param delta Style elements overriding those of the current style.
+     * @return Index of the merged style.
+     */
+    int mergeAndCacheStyle(int currentStyle, StyleDelta delta) {
+        ConcurrentMap<Integer, Integer> merged = merges.computeIfAbsent(delta, k -> new ConcurrentHashMap<>());
+        Integer result = merged.get(currentStyle);
+        if (result == null) {
+            Style original = getStyle(currentStyle);
+            Style s = new Style(original, cacheValueFormatting(delta.numberingFormat), cacheFont(delta.font), cacheFill(delta.fill), cacheBorder(delta.border), delta.alignment, delta.protection);
+            result = cacheStyle(s);
+            merged.put(currentStyle, result);
+        }
+        return result;
+    }
+
+    /**
+     * Cache the given style.
+     *
+     * @param s Style.
+     * @return Index of the cached style.
+     */
+    private int cacheStyle(Style s) {
+        Integer index = styles.get(s);
+        if (index == null) {
+            synchronized (styleList) {
+                index = styles.get(s);
+                if (index == null) {
+                    index = styleList.size();
+                    styleList.add(s);
+                    styles.put(s, index);
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Get a cached style by index.
+     *
+     * @param index Style index.
+     * @return Cached style, {@code null} if there is none at this index.
+     */
+    private Style getStyle(int index) {
+        synchronized (styleList) {
+            return index >= 0 && index < styleList.size() ? styleList.get(index) : null;
+        }
     }
 
     void replaceDefaultFont(Font font) {
         fonts.entrySet().removeIf(entry->entry.getValue()==0);
         fonts.putIfAbsent(font,0);
+        // Merges with the former default font are no longer valid
+        merges.clear();
     }
 
     /**
@@ -169,7 +229,13 @@ final class StyleCache {
         writeCache(w, fills, "fills", e -> e.getKey().write(w));
         writeCache(w, borders, "borders", e -> e.getKey().write(w));
         w.append("<cellStyleXfs count=\"1\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\" borderId=\"0\"/></cellStyleXfs>");
-        writeCache(w, styles, "cellXfs", e -> e.getKey().write(w));
+        synchronized (styleList) {
+            w.append("<cellXfs count=\"").append(styleList.size()).append("\">");
+            for (Style s : styleList) {
+                s.write(w);
+            }
+            w.append("</cellXfs>");
+        }
         writeCache(w, dxfs, "dxfs", e -> {
             e.getKey().write(w);
         });
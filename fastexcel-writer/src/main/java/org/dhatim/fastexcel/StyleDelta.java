@@ -0,0 +1,77 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import java.util.Objects;
+
+/**
+ * Style elements set by a {@link StyleSetter}, to be merged with the current
+ * style of cells. Deltas are compared by value, so that merges of a given
+ * style with a given delta can be memoized.
+ */
+final class StyleDelta {
+
+    final String numberingFormat;
+    final Font font;
+    final Fill fill;
+    final Border border;
+    final Alignment alignment;
+    final Protection protection;
+    private final int hash;
+
+    /**
+     * Constructor.
+     *
+     * @param numberingFormat Numbering format, {@code null} if not set.
+     * @param font Font, {@link Font#DEFAULT} if not set.
+     * @param fill Fill pattern, {@link Fill#NONE} if not set.
+     * @param border Border, {@link Border#NONE} if not set.
+     * @param alignment Alignment, {@code null} if not set.
+     * @param protection Protection, {@code null} if not set.
+     */
+    StyleDelta(String numberingFormat, Font font, Fill fill, Border border, Alignment alignment, Protection protection) {
+        this.numberingFormat = numberingFormat;
+        this.font = font;
+        this.fill = fill;
+        this.border = border;
+        this.alignment = alignment;
+        this.protection = protection;
+        this.hash = Objects.hash(numberingFormat, font, fill, border, alignment, protection);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        boolean result;
+        if (obj != null && obj.getClass() == this.getClass()) {
+            StyleDelta other = (StyleDelta) obj;
+            result = hash == other.hash
+                    && Objects.equals(numberingFormat, other.numberingFormat)
+                    && Objects.equals(font, other.font)
+                    && Objects.equals(fill, other.fill)
+                    && Objects.equals(border, other.border)
+                    && Objects.equals(alignment, other.alignment)
+                    && Objects.equals(protection, other.protection);
+        } else {
+            result = false;
+        }
+        return result;
+    }
+}
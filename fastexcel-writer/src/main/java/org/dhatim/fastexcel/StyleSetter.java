@@ -20,6 +20,7 @@ import java.util.EnumMap;
 import java.util.EnumSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -35,9 +36,20 @@ import java.util.stream.Collectors;
 public class StyleSetter {
 
     /**
-     * Range of cells where the style is applied.
+     * Range of cells where the style is applied, {@code null} for a style
+     * created with {@link Workbook#newStyle()} or for a row or column default
+     * style.
      */
     private final Range range;
+    /**
+     * Receiver of style elements for a row or column default style,
+     * {@code null} otherwise.
+     */
+    private final Consumer<StyleDelta> target;
+    /**
+     * Workbook where the style is cached.
+     */
+    private final Workbook workbook;
     /**
      * Value formatting.
      */
@@ -115,6 +127,30 @@ public class StyleSetter {
      */
     StyleSetter(Range range) {
         this.range = range;
+        this.target = null;
+        this.workbook = range.getWorksheet().getWorkbook();
+    }
+
+    /**
+     * Constructor for a style which is not bound to a range of cells.
+     *
+     * @param workbook Workbook where the style is cached.
+     */
+    StyleSetter(Workbook workbook) {
+        this(workbook, null);
+    }
+
+    /**
+     * Constructor for a row or column default style.
+     *
+     * @param workbook Workbook where the style is cached.
+     * @param target Receiver of style elements when {@link #set()} is
+     * called.
+     */
+    StyleSetter(Workbook workbook, Consumer<StyleDelta> target) {
+        this.range = null;
+        this.target = target;
+        this.workbook = workbook;
     }
 
     /**
@@ -404,6 +440,7 @@ public class StyleSetter {
      * @return This style setter.
      */
     public StyleSetter merge() {
+        checkRange();
         range.merge();
         return this;
     }
@@ -413,6 +450,53 @@ public class StyleSetter {
      * done otherwise style changes are lost!</b>
      */
     public void set() {
+        if (target != null) {
+            target.accept(delta());
+            return;
+        }
+        checkRange();
+
+        // Compute a map giving new styles for current styles
+        Set<Integer> currentStyles = range.getStyles();
+        StyleDelta delta = delta();
+        Map<Integer, Integer> newStyles = currentStyles.stream().collect(Collectors.toMap(Function.identity(), s -> workbook.mergeAndCacheStyle(s, delta)));
+
+        // Apply styles to range
+        range.applyStyle(newStyles);
+
+        // Shading color for alternate rows is cached separately
+        if (alternateShadingFillColor != null) {
+            range.shadeAlternateRows(Fill.fromColor(alternateShadingFillColor, false));
+        }
+
+        if (shadingFillColor != null) {
+            range.shadeRows(Fill.fromColor(shadingFillColor, false), eachNRows);
+        }
+    }
+
+    /**
+     * Cache style elements and get the resulting style index, to be passed
+     * to {@link RowWriter} methods. Shading settings are ignored.
+     *
+     * @return Cached style index.
+     */
+    public int id() {
+        return workbook.mergeAndCacheStyle(0, delta());
+    }
+
+    private void checkRange() {
+        if (range == null) {
+            throw new IllegalStateException("This style is not bound to a range of cells");
+        }
+    }
+
+    /**
+     * Build the style elements set on this style setter, to be merged with
+     * cached styles.
+     *
+     * @return Style elements.
+     */
+    private StyleDelta delta() {
         Alignment alignment;
         if (horizontalAlignment != null || verticalAlignment != null || wrapText || rotation != 0) {
             alignment = new Alignment(horizontalAlignment, verticalAlignment, wrapText, rotation);
@@ -442,21 +526,7 @@ public class StyleSetter {
             protection = null;
         }
 
-        // Compute a map giving new styles for current styles
-        Set<Integer> currentStyles = range.getStyles();
-        Map<Integer, Integer> newStyles = currentStyles.stream().collect(Collectors.toMap(Function.identity(), s -> range.getWorksheet().getWorkbook().mergeAndCacheStyle(s, valueFormatting, font, fill, border, alignment, protection)));
-
-        // Apply styles to range
-        range.applyStyle(newStyles);
-
-        // Shading color for alternate rows is cached separately
-        if (alternateShadingFillColor != null) {
-            range.shadeAlternateRows(Fill.fromColor(alternateShadingFillColor, false));
-        }
-
-        if (shadingFillColor != null) {
-            range.shadeRows(Fill.fromColor(shadingFillColor, false), eachNRows);
-        }
+        return new StyleDelta(valueFormatting, font, fill, border, alignment, protection);
     }
 
     /**
@@ -464,6 +534,7 @@ public class StyleSetter {
      * @param conditionalFormattingRule Conditional formatting rule to apply
      */
     public void set(ConditionalFormattingRule conditionalFormattingRule) {
+        checkRange();
         Alignment alignment = null;
         if (horizontalAlignment != null || verticalAlignment != null || wrapText || rotation != 0) {
             alignment = new Alignment(horizontalAlignment, verticalAlignment, wrapText, rotation);
@@ -481,7 +552,7 @@ public class StyleSetter {
             protection = new Protection(protectionOptions);
         }
 
-        int dxfId = range.getWorksheet().getWorkbook().cacheDifferentialFormat(new DifferentialFormat(valueFormatting, font, fill, border, alignment, protection));
+        int dxfId = workbook.cacheDifferentialFormat(new DifferentialFormat(valueFormatting, font, fill, border, alignment, protection));
         conditionalFormattingRule.setDxfId(dxfId);
         ConditionalFormatting conditionalFormatting = new ConditionalFormatting(range, conditionalFormattingRule);
         range.getWorksheet().addConditionalFormatting(conditionalFormatting);
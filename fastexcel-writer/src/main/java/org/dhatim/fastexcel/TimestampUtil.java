@@ -17,10 +17,9 @@ package org.dhatim.fastexcel;
 
 import java.time.*;
 import java.time.chrono.ChronoZonedDateTime;
-import java.time.temporal.ChronoUnit;
-import java.util.Calendar;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
 import java.util.Date;
-import java.util.TimeZone;
 
 /**
  * Excel timestamp utility methods. For more information, check
@@ -36,6 +35,33 @@ public final class TimestampUtil {
     public static final int SECONDS_PER_DAY = (HOURS_PER_DAY * MINUTES_PER_HOUR * SECONDS_PER_MINUTE);
     public static final long DAY_MILLISECONDS = SECONDS_PER_DAY * 1000L;
 
+    /**
+     * Day number of 1970-01-01 counted from 1899-12-31, before adding the
+     * nonexistent 1900-02-29 Excel inherited from Lotus 1-2-3.
+     */
+    private static final int EPOCH_SERIAL = 25568;
+    private static final int FIRST_YEAR = 1900;
+    private static final int LAST_YEAR = 9999;
+    /**
+     * Days in the years preceding each year of the range Excel supports, so
+     * local date-times map to a serial number with a single lookup.
+     */
+    private static final int[] DAYS_IN_PRIOR_YEARS = new int[LAST_YEAR - FIRST_YEAR + 1];
+
+    static {
+        for (int yr = FIRST_YEAR; yr <= LAST_YEAR; ++yr) {
+            DAYS_IN_PRIOR_YEARS[yr - FIRST_YEAR] = computeDaysInPriorYears(yr);
+        }
+    }
+
+    /**
+     * Offset of the zone last used by each thread to convert an instant,
+     * together with the interval it remains valid for. Threads converting
+     * different zones or time ranges do not evict each other's offset.
+     */
+    private static final ThreadLocal<ZoneOffsetWindow> LAST_OFFSET =
+            ThreadLocal.withInitial(() -> new ZoneOffsetWindow(ZoneOffset.UTC, 0, Long.MIN_VALUE, Long.MAX_VALUE));
+
     /**
      * Convert a {@link Date} to a serial number. Note Excel timestamps do not
      * carry any timezone information; this method uses the system timezone to
@@ -47,25 +73,11 @@ public final class TimestampUtil {
      * @return Serial number value.
      */
     public static Double convertDate(Date date) {
-        Calendar calStart = Calendar.getInstance();
-        calStart.setTime(date);
-        int year = calStart.get(Calendar.YEAR);
-        int dayOfYear = calStart.get(Calendar.DAY_OF_YEAR);
-        int hour = calStart.get(Calendar.HOUR_OF_DAY);
-        int minute = calStart.get(Calendar.MINUTE);
-        int second = calStart.get(Calendar.SECOND);
-        int milliSecond = calStart.get(Calendar.MILLISECOND);
-        return internalGetExcelDate(year, dayOfYear, hour, minute, second, milliSecond);
+        return toSerial(date);
     }
 
     public static Double convertDate(LocalDateTime date) {
-        int year = date.getYear();
-        int dayOfYear = date.getDayOfYear();
-        int hour = date.getHour();
-        int minute = date.getMinute();
-        int second = date.getSecond();
-        int milliSecond = date.getNano() / 1_000_000;
-        return internalGetExcelDate(year, dayOfYear, hour, minute, second, milliSecond);
+        return toSerial(date);
     }
 
     /**
@@ -75,13 +87,7 @@ public final class TimestampUtil {
      * @return Serial number value.
      */
     public static Double convertDate(LocalDate date) {
-        int year = date.getYear();
-        int dayOfYear = date.getDayOfYear();
-        int hour = 0;
-        int minute = 0;
-        int second = 0;
-        int milliSecond = 0;
-        return internalGetExcelDate(year, dayOfYear, hour, minute, second, milliSecond);
+        return toSerial(date);
     }
 
     /**
@@ -91,14 +97,88 @@ public final class TimestampUtil {
      * @return Serial number value.
      */
     public static Double convertZonedDateTime(ZonedDateTime zdt) {
-        return convertDate(zdt.toLocalDateTime());
+        return toSerial(zdt.toLocalDateTime());
+    }
+
+    /**
+     * Convert a {@link Date} to a serial number in the system timezone,
+     * without boxing the result. The system timezone is looked up on each
+     * call: to convert many values, prefer
+     * {@link #toSerial(long, ZoneId)} with a timezone resolved once.
+     *
+     * @param date Date value.
+     * @return Serial number value.
+     * @see #convertDate(Date)
+     */
+    public static double toSerial(Date date) {
+        return toSerial(date.getTime(), ZoneId.systemDefault());
+    }
+
+    /**
+     * Convert a {@link LocalDateTime} to a serial number, without boxing the
+     * result. Sub-millisecond precision is dropped.
+     *
+     * @param date Local date and time value.
+     * @return Serial number value.
+     */
+    public static double toSerial(LocalDateTime date) {
+        int msOfDay = ((date.getHour() * MINUTES_PER_HOUR + date.getMinute()) * SECONDS_PER_MINUTE + date.getSecond()) * 1000
+                + date.getNano() / 1_000_000;
+        return toSerial(date.getYear(), date.getDayOfYear(), msOfDay);
     }
 
-    private static double internalGetExcelDate(int year, int dayOfYear, int hour, int minute, int second, int milliSecond) {
-        if (year < 1900) {
+    /**
+     * Convert a {@link LocalDate} to a serial number, without boxing the
+     * result.
+     *
+     * @param date Local date value.
+     * @return Serial number value.
+     */
+    public static double toSerial(LocalDate date) {
+        return toSerial(date.getYear(), date.getDayOfYear(), 0);
+    }
+
+    /**
+     * Convert an {@link Instant} to a serial number, as seen from the given
+     * timezone. Sub-millisecond precision is dropped.
+     *
+     * @param instant Instant value.
+     * @param zone Timezone the serial number is expressed in.
+     * @return Serial number value.
+     */
+    public static double toSerial(Instant instant, ZoneId zone) {
+        return toSerial(instant.toEpochMilli(), zone);
+    }
+
+    /**
+     * Convert a number of milliseconds since the epoch to a serial number, as
+     * seen from the given timezone. Successive values close in time, as when
+     * exporting a time series, reuse the zone offset found for the previous
+     * one in the same thread as long as no transition separates them.
+     *
+     * @param epochMilli Milliseconds since 1970-01-01T00:00:00Z.
+     * @param zone Timezone the serial number is expressed in.
+     * @return Serial number value.
+     */
+    public static double toSerial(long epochMilli, ZoneId zone) {
+        long epochSecond = Math.floorDiv(epochMilli, 1000L);
+        ZoneOffsetWindow window = LAST_OFFSET.get();
+        if (!window.contains(zone, epochSecond)) {
+            window = ZoneOffsetWindow.of(zone, epochSecond);
+            LAST_OFFSET.set(window);
+        }
+        long localMilli = epochMilli + window.offsetSeconds * 1000L;
+        long epochDay = Math.floorDiv(localMilli, DAY_MILLISECONDS);
+        if (epochDay + EPOCH_SERIAL < 1) {
             return BAD_DATE;
         }
+        return toSerial(epochDay + EPOCH_SERIAL, Math.floorMod(localMilli, DAY_MILLISECONDS) / (double) DAY_MILLISECONDS);
+    }
 
+    private static double toSerial(int year, int dayOfYear, int msOfDay) {
+        if (year < FIRST_YEAR) {
+            return BAD_DATE;
+        }
         // Because of daylight time saving we cannot use
         //     date.getTime() - calStart.getTimeInMillis()
         // as the difference in milliseconds between 00:00 and 04:00
@@ -106,25 +186,25 @@ public final class TimestampUtil {
         // be 4 hours.
         // E.g. 2004-03-28 04:00 CEST - 2004-03-28 00:00 CET is 3 hours
         // and 2004-10-31 04:00 CET - 2004-10-31 00:00 CEST is 5 hours
-        double fraction = (((hour * 60.0 + minute) * 60.0 + second) * 1000.0 + milliSecond) / DAY_MILLISECONDS;
-
-        double value = fraction + absoluteDay(year, dayOfYear);
+        return toSerial(dayOfYear + daysInPriorYears(year), msOfDay / (double) DAY_MILLISECONDS);
+    }
 
+    private static double toSerial(long day, double fraction) {
+        double value = day + fraction;
         if (value >= 60) {
             value++;
         }
-
         return value;
     }
 
-    private static int absoluteDay(int year, int dayOfYear) {
-        return dayOfYear + daysInPriorYears(year);
-    }
-
     static int daysInPriorYears(int yr) {
-        if (yr < 1900) {
+        if (yr < FIRST_YEAR) {
             throw new IllegalArgumentException("'year' must be 1900 or greater");
         }
+        return yr <= LAST_YEAR ? DAYS_IN_PRIOR_YEARS[yr - FIRST_YEAR] : computeDaysInPriorYears(yr);
+    }
+
+    private static int computeDaysInPriorYears(int yr) {
         int yr1 = yr - 1;
         int leapDays = yr1 / 4   // plus julian leap days in prior years
                 - yr1 / 100 // minus prior century years
@@ -134,4 +214,47 @@ public final class TimestampUtil {
         return 365 * (yr - 1900) + leapDays;
     }
 
+    /**
+     * Offset of a timezone between two of its transitions.
+     */
+    private static final class ZoneOffsetWindow {
+
+        final ZoneId zone;
+        final int offsetSeconds;
+        /**
+         * First epoch second the offset applies to.
+         */
+        final long start;
+        /**
+         * First epoch second the offset no longer applies to.
+         */
+        final long end;
+
+        ZoneOffsetWindow(ZoneId zone, int offsetSeconds, long start, long end) {
+            this.zone = zone;
+            this.offsetSeconds = offsetSeconds;
+            this.start = start;
+            this.end = end;
+        }
+
+        boolean contains(ZoneId zone, long epochSecond) {
+            return epochSecond >= start && epochSecond < end && (this.zone == zone || this.zone.equals(zone));
+        }
+
+        static ZoneOffsetWindow of(ZoneId zone, long epochSecond) {
+            ZoneRules rules = zone.getRules();
+            Instant instant = Instant.ofEpochSecond(epochSecond);
+            int offset = rules.getOffset(instant).getTotalSeconds();
+            if (rules.isFixedOffset()) {
+                return new ZoneOffsetWindow(zone, offset, Long.MIN_VALUE, Long.MAX_VALUE);
+            }
+            // previousTransition() excludes a transition happening exactly at the given instant
+            ZoneOffsetTransition previous = rules.previousTransition(instant.plusSeconds(1));
+            ZoneOffsetTransition next = rules.nextTransition(instant);
+            return new ZoneOffsetWindow(zone, offset,
+                    previous == null ? Long.MIN_VALUE : previous.toEpochSecond(),
+                    next == null ? Long.MAX_VALUE : next.toEpochSecond());
+        }
+    }
+
 }
@@ -15,7 +15,6 @@
  */
 package org.dhatim.fastexcel;
 
-import com.github.rzymek.opczip.OpcOutputStream;
 import java.io.Closeable;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -24,10 +23,10 @@ import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
-import java.util.zip.ZipEntry;
 
 
 /**
@@ -39,11 +38,42 @@ public class Workbook implements Closeable{
     private final String applicationName;
     private final String applicationVersion;
     private final List<Worksheet> worksheets = new ArrayList<>();
-    private final StringCache stringCache = new StringCache();
+    /**
+     * Names of the worksheets, to keep them unique.
+     */
+    private final Set<String> worksheetNames = new HashSet<>();
+    /**
+     * Next number appended to a worksheet name requested more than once, so
+     * that finding a free name does not go through all previous numbers.
+     */
+    private final Map<String, Integer> worksheetNameSuffixes = new HashMap<>();
+    private final StringCache stringCache = new StringCache(StringStore.DEFAULT_MEMORY_THRESHOLD);
     private final StyleCache styleCache = new StyleCache();
     private final Properties properties = new Properties();
-    private final OpcOutputStream os;
+    private final ZipOutput os;
     private final Writer writer;
+    private int compressionLevel;
+    /**
+     * Maximum number of compressed bytes of a worksheet kept in memory when
+     * worksheets are compressed in parallel, negative if they are not.
+     */
+    private int worksheetMemoryThreshold = -1;
+    /**
+     * Pool compressing blocks of entries in parallel, {@code null} if
+     * entries are compressed on the writing thread.
+     */
+    private ForkJoinPool compressionPool;
+    private int compressionBlockSize;
+    /**
+     * Auto flush limits applied to new worksheets, see
+     * {@link Worksheet#setAutoFlush(long)}.
+     */
+    private long autoFlushBytes;
+    private int autoFlushRows;
+    /**
+     * String storage policy applied to new worksheets.
+     */
+    private StringStoragePolicy stringStoragePolicy = StringStoragePolicy.SHARED;
     private final AtomicInteger maxTableIndex = new AtomicInteger(1);
 
     /**
@@ -58,7 +88,7 @@ public class Workbook implements Closeable{
      * page</a> for details.
      */
     public Workbook(OutputStream os, String applicationName, String applicationVersion) {
-        this.os = new OpcOutputStream(os);
+        this.os = new ZipOutput(os);
         /* Tests showed that:
          * The default (-1) is level 6
          * Level 4 gives best size and very good time
@@ -84,9 +114,194 @@ public class Workbook implements Closeable{
      * @param level the compression level (0-9)
      */
     public void setCompressionLevel(int level) {
+        this.compressionLevel = level;
         this.os.setLevel(level);
     }
 
+    /**
+     * Compress files and write them to the output stream on a dedicated
+     * thread. Threads generating the workbook then hand full buffers to that
+     * thread through a bounded queue, and only wait when the queue is full,
+     * which helps when the output stream is slow, such as an HTTP response.
+     * Buffers are recycled, so each queued buffer holds up to 512 KiB for
+     * the lifetime of the workbook. I/O errors are thrown by the calls
+     * following them, at the latest by {@link #finish()}. The thread stops
+     * when {@link #finish()} or {@link #close()} returns or throws: a
+     * workbook abandoned without calling either keeps its daemon thread,
+     * waiting for output, until the JVM exits.
+     * This must be called before any file is written.
+     *
+     * @param queueDepth Maximum number of buffers waiting to be written.
+     * @see #getAsyncOutputStats()
+     */
+    public void setAsyncOutput(int queueDepth) {
+        synchronized (os) {
+            os.setAsync(queueDepth);
+        }
+    }
+
+    /**
+     * Get statistics of asynchronous output: queue depth, and how long
+     * producers waited for room in the queue.
+     *
+     * @return Statistics, or {@code null} if asynchronous output is not
+     * enabled.
+     * @see #setAsyncOutput(int)
+     */
+    public AsyncOutputStats getAsyncOutputStats() {
+        return os.getAsyncStats();
+    }
+
+    /**
+     * Enable or disable parallel compression of worksheets.
+     * When enabled, each worksheet deflates its own file independently of
+     * the output stream, so that worksheets populated by different threads
+     * can be flushed at the same time. Compressed worksheets are kept in
+     * memory up to 4 MiB each, then spilled to a temporary file, and copied
+     * to the output stream by {@link #finish()}.
+     * This must be called before any worksheet is flushed.
+     *
+     * @param enabled {@code true} to compress worksheets in parallel.
+     */
+    public void setParallelWorksheetCompression(boolean enabled) {
+        setParallelWorksheetCompression(enabled, SpooledEntry.DEFAULT_MEMORY_THRESHOLD);
+    }
+
+    /**
+     * Enable or disable parallel compression of worksheets.
+     *
+     * @param enabled {@code true} to compress worksheets in parallel.
+     * @param memoryThreshold Maximum number of compressed bytes of a
+     * worksheet kept in memory before spilling to a temporary file.
+     * @see #setParallelWorksheetCompression(boolean)
+     */
+    public void setParallelWorksheetCompression(boolean enabled, int memoryThreshold) {
+        if (memoryThreshold < 0) {
+            throw new IllegalArgumentException("Memory threshold must not be negative");
+        }
+        this.worksheetMemoryThreshold = enabled ? memoryThreshold : -1;
+    }
+
+    /**
+     * Set the number of bytes of shared strings kept on the heap. Beyond
+     * this threshold, shared strings are stored in a memory-mapped temporary
+     * file, so that workbooks with many unique strings do not exhaust the
+     * heap. The default is 64 MiB.
+     *
+     * @param memoryThreshold Number of bytes of UTF-8 encoded strings kept
+     * on the heap.
+     */
+    public void setSharedStringsMemoryThreshold(long memoryThreshold) {
+        stringCache.setMemoryThreshold(memoryThreshold);
+    }
+
+    /**
+     * Set how string values of worksheets are stored: in the shared string
+     * table (the default), inline in cells, or chosen for each column
+     * according to the ratio of unique strings.
+     * This applies to existing and new worksheets.
+     *
+     * @param policy String storage policy.
+     * @see Worksheet#setStringStoragePolicy(StringStoragePolicy)
+     */
+    public void setStringStoragePolicy(StringStoragePolicy policy) {
+        this.stringStoragePolicy = Objects.requireNonNull(policy);
+        synchronized (worksheets) {
+            worksheets.forEach(ws -> ws.setStringStoragePolicy(policy));
+        }
+    }
+
+    /**
+     * Flush rows of worksheets automatically once the estimated size of
+     * their completed rows held in memory reaches the given number of bytes.
+     * This applies to existing and new worksheets.<br>
+     * Worksheets first flushed automatically are compressed independently
+     * of the output stream, as with
+     * {@link #setParallelWorksheetCompression(boolean)}, so that worksheets
+     * filled by different threads can be flushed at the same time. Worksheets
+     * flushed explicitly with {@link Worksheet#flush()} still share the output
+     * stream unless parallel compression is enabled.
+     *
+     * @param maxBufferedBytes Maximum estimated size of rows held in memory
+     * per worksheet, 0 to disable.
+     * @see Worksheet#setAutoFlush(long)
+     */
+    public void setAutoFlush(long maxBufferedBytes) {
+        if (maxBufferedBytes < 0) {
+            throw new IllegalArgumentException("Maximum buffered size must not be negative");
+        }
+        this.autoFlushBytes = maxBufferedBytes;
+        synchronized (worksheets) {
+            worksheets.forEach(ws -> ws.setAutoFlush(maxBufferedBytes));
+        }
+    }
+
+    /**
+     * Flush rows of worksheets automatically once the given number of
+     * completed rows are held in memory. This applies to existing and new
+     * worksheets. Like {@link #setAutoFlush(long)}, worksheets first flushed
+     * automatically are compressed independently of the output stream.
+     *
+     * @param maxBufferedRows Maximum number of rows held in memory per
+     * worksheet, 0 to disable.
+     * @see Worksheet#setAutoFlushRows(int)
+     */
+    public void setAutoFlushRows(int maxBufferedRows) {
+        if (maxBufferedRows < 0) {
+            throw new IllegalArgumentException("Maximum number of buffered rows must not be negative");
+        }
+        this.autoFlushRows = maxBufferedRows;
+        synchronized (worksheets) {
+            worksheets.forEach(ws -> ws.setAutoFlushRows(maxBufferedRows));
+        }
+    }
+
+    /**
+     * Compress files in blocks of 128 KiB deflated concurrently by the given
+     * pool, in the manner of pigz. This speeds up the compression of large
+     * worksheets, even when the workbook has a single one. Compressed files
+     * are regular deflate streams. Memory usage is bounded by the block size
+     * times the parallelism of the pool.
+     * This must be called before any worksheet is flushed.
+     *
+     * @param pool Pool running compression tasks, or {@code null} to
+     * compress files on the writing thread (the default).
+     */
+    public void setParallelCompression(ForkJoinPool pool) {
+        setParallelCompression(pool, ParallelEntryDeflater.DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Compress files in blocks deflated concurrently by the given pool.
+     *
+     * @param pool Pool running compression tasks, or {@code null} to
+     * compress files on the writing thread (the default).
+     * @param blockSize Size of uncompressed blocks, at least 32 KiB.
+     * @see #setParallelCompression(ForkJoinPool)
+     */
+    public void setParallelCompression(ForkJoinPool pool, int blockSize) {
+        if (pool != null && blockSize < 32 * 1024) {
+            throw new IllegalArgumentException("Block size must be at least 32 KiB");
+        }
+        this.compressionPool = pool;
+        this.compressionBlockSize = blockSize;
+        synchronized (os) {
+            os.setDeflater(newEntryDeflater());
+        }
+    }
+
+    /**
+     * Create a compressor for a zip entry, honoring compression settings.
+     *
+     * @return New compressor.
+     */
+    private EntryDeflater newEntryDeflater() {
+        if (compressionPool == null) {
+            return new SerialEntryDeflater(compressionLevel);
+        }
+        return new ParallelEntryDeflater(compressionLevel, compressionPool, compressionBlockSize);
+    }
+
     public void setActiveTab(int tabIndex) {
         this.activeTab = tabIndex;
     }
@@ -107,7 +322,12 @@ public class Workbook implements Closeable{
      * @param comparator The Comparator used to sort the worksheets
      */
     public void sortWorksheets(Comparator<Worksheet> comparator) {
-        worksheets.sort(comparator);
+        synchronized (worksheets) {
+            worksheets.sort(comparator);
+            for (int i = 0; i < worksheets.size(); ++i) {
+                worksheets.get(i).index = i + 1;
+            }
+        }
     }
 
     @Override
@@ -118,10 +338,24 @@ public class Workbook implements Closeable{
     /**
      * Complete workbook generation: this writes worksheets and additional files
      * as zip entries to the output stream.
+     * <p>
+     * If generation fails, the asynchronous output thread is stopped, and the
+     * workbook cannot be finished anymore.
      *
      * @throws IOException In case of I/O error.
+     * @see #setAsyncOutput(int)
      */
     public void finish() throws IOException {
+        try {
+            writeFiles();
+            os.finish();
+        } catch (IOException | RuntimeException | Error e) {
+            os.abort();
+            throw e;
+        }
+    }
+
+    private void writeFiles() throws IOException {
         if (worksheets.isEmpty()) {
             throw new IllegalArgumentException("A workbook must contain at least one worksheet.");
         }
@@ -129,6 +363,7 @@ public class Workbook implements Closeable{
         for (Worksheet ws : worksheets) {
             ws.close();
         }
+        writeSpooledWorksheets();
 
         writeFile("[Content_Types].xml", w -> {
             w.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?><Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\"><Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/><Default Extension=\"xml\" ContentType=\"application/xml\"/>");
@@ -184,8 +419,8 @@ public class Workbook implements Closeable{
             w.append("</Relationships>");
         });
         writeFile("xl/sharedStrings.xml", stringCache::write);
+        stringCache.close();
         writeFile("xl/styles.xml", styleCache::write);
-        this.os.finish();
     }
 
     private void writeProperties() throws IOException {
@@ -335,7 +570,7 @@ public class Workbook implements Closeable{
     }
 
     Writer beginFile(String name) throws IOException {
-        os.putNextEntry(new ZipEntry(name));
+        os.putNextEntry(name);
         return writer;
     }
     void endFile() throws IOException {
@@ -344,28 +579,95 @@ public class Workbook implements Closeable{
     }
 
     /**
-     * Cache the given string.
+     * Create a zip entry compressed independently of the output stream, if
+     * worksheets are compressed in parallel.
+     *
+     * @return New spooled entry, or {@code null} if worksheets are written
+     * directly to the output stream.
+     */
+    SpooledEntry newSpooledEntry() {
+        return newSpooledEntry(false);
+    }
+
+    /**
+     * Create a zip entry compressed independently of the output stream.
      *
-     * @param s String to cache.
-     * @return Cached string.
+     * @param force Whether to create an entry even if worksheets are not
+     * compressed in parallel, such as for worksheets flushed automatically.
+     * @return New spooled entry, or {@code null} if worksheets are written
+     * directly to the output stream and the entry is not forced.
      */
-    CachedString cacheString(String s) {
-        return stringCache.cacheString(s);
+    SpooledEntry newSpooledEntry(boolean force) {
+        if (worksheetMemoryThreshold >= 0) {
+            return new SpooledEntry(newEntryDeflater(), worksheetMemoryThreshold);
+        }
+        return force ? new SpooledEntry(newEntryDeflater(), SpooledEntry.DEFAULT_MEMORY_THRESHOLD) : null;
+    }
+
+    /**
+     * Copy worksheets compressed in parallel to the output stream, in
+     * worksheet order.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    private void writeSpooledWorksheets() throws IOException {
+        synchronized (os) {
+            for (Worksheet ws : worksheets) {
+                SpooledEntry entry = ws.spooledEntry;
+                if (entry != null) {
+                    try {
+                        os.writeEntry("xl/worksheets/sheet" + getIndex(ws) + ".xml", entry);
+                    } finally {
+                        entry.close();
+                        ws.spooledEntry = null;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Add a string to the shared string table, telling whether it was already
+     * present.
+     *
+     * @param s String.
+     * @return Index of the string, or its complement ({@code ~index}) if it
+     * was added.
+     */
+    int internString(String s) {
+        return stringCache.intern(s);
+    }
+
+    /**
+     * Get a string of the shared string table.
+     *
+     * @param index Index of the string.
+     * @return String.
+     */
+    String getSharedString(int index) {
+        return stringCache.get(index);
     }
 
     /**
      * Merge given style attributes with cached style.
      *
      * @param currentStyle Current (cached) style index, 0 if none.
-     * @param numberingFormat Numbering format.
-     * @param font Font attributes.
-     * @param fill Fill attributes.
-     * @param border Border attributes.
-     * @param alignment Alignment attributes.
+     * @param delta Style attributes.
      * @return Cached style index.
      */
-    int mergeAndCacheStyle(int currentStyle, String numberingFormat, Font font, Fill fill, Border border, Alignment alignment, Protection protection) {
-        return styleCache.mergeAndCacheStyle(currentStyle, numberingFormat, font, fill, border, alignment, protection);
+    int mergeAndCacheStyle(int currentStyle, StyleDelta delta) {
+        return styleCache.mergeAndCacheStyle(currentStyle, delta);
+    }
+
+    /**
+     * Create a new style which is not bound to a range of cells. Call
+     * {@link StyleSetter#id()} to get the index of the style, to be passed to
+     * {@link RowWriter} methods.
+     *
+     * @return Newly created style setter.
+     */
+    public StyleSetter newStyle() {
+        return new StyleSetter(this);
     }
 
     /**
@@ -388,9 +690,7 @@ public class Workbook implements Closeable{
      * @return Worksheet index.
      */
     int getIndex(Worksheet ws) {
-        synchronized (worksheets) {
-            return worksheets.indexOf(ws) + 1;
-        }
+        return ws.index;
     }
 
     /**
@@ -410,19 +710,26 @@ public class Workbook implements Closeable{
 
         synchronized (worksheets) {
             // If the worksheet name already exists, append a number
-            int number = 1;
-            Set<String> names = worksheets.stream().map(Worksheet::getName).collect(Collectors.toSet());
-            while (names.contains(sheetName)) {
-                String suffix = String.format(Locale.ROOT, "_%d", number);
-                if (sheetName.length() + suffix.length() > 31) {
-                    sheetName = sheetName.substring(0, 31 - suffix.length()) + suffix;
+            String requestedName = sheetName;
+            int number = worksheetNameSuffixes.getOrDefault(requestedName, 1);
+            while (!worksheetNames.add(sheetName)) {
+                String suffix = "_" + number;
+                if (requestedName.length() + suffix.length() > 31) {
+                    sheetName = requestedName.substring(0, 31 - suffix.length()) + suffix;
                 } else {
-                    sheetName += suffix;
+                    sheetName = requestedName + suffix;
                 }
                 ++number;
             }
+            if (number > 1) {
+                worksheetNameSuffixes.put(requestedName, number);
+            }
             Worksheet worksheet = new Worksheet(this, sheetName);
+            worksheet.setAutoFlush(autoFlushBytes);
+            worksheet.setAutoFlushRows(autoFlushRows);
+            worksheet.setStringStoragePolicy(stringStoragePolicy);
             worksheets.add(worksheet);
+            worksheet.index = worksheets.size();
             return worksheet;
         }
     }
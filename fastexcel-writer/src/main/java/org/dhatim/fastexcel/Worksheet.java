@@ -17,8 +17,10 @@ package org.dhatim.fastexcel;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.*;
 import java.util.stream.IntStream;
@@ -51,18 +53,23 @@ public class Worksheet implements Closeable {
     private final Workbook workbook;
     private final String name;
     /**
-     * List of rows. A row is an array of cells.
+     * One-based position of this worksheet in its workbook, maintained by the
+     * workbook.
+     */
+    int index;
+    /**
+     * List of rows, holding cell data.
      * Flushed rows are null.
      */
-    private final List<Cell[]> rows = new ArrayList<>();
+    private final ArrayList<Row> rows = new ArrayList<>();
     /**
      * Ranges of merged cells.
      */
     private final Set<Range> mergedRanges = new HashSet<>();
     /**
-     * Matrix of merged cells.
+     * Index of merged cells.
      */
-    private final DynamicBitMatrix mergedMatrix = new DynamicBitMatrix(MAX_COLS, MAX_ROWS);
+    private final RangeIndex mergedIndex = new RangeIndex();
     /**
      * List of conditional formattings for this worksheet
      */
@@ -79,10 +86,6 @@ public class Worksheet implements Closeable {
      * List of ranges where shading to Nth rows is defined.
      */
     private final List<Shading> shadingRanges = new ArrayList<>();
-    /**
-     * List of rows to hide
-     */
-    private final Set<Integer> hiddenRows = new HashSet<>();
 
     /**
      * List of columns to hide
@@ -93,9 +96,9 @@ public class Worksheet implements Closeable {
      */
     private final DynamicByteArray groupColums = new DynamicByteArray(MAX_COLS);
     /**
-     * Array of rows's group level
+     * Hidden flag, group level, height and default style of rows
      */
-    private final DynamicByteArray groupRows = new DynamicByteArray(MAX_ROWS);
+    private final RowMetadata rowMetadata = new RowMetadata();
 
     /**
      * Map of columns and their widths
@@ -103,15 +106,40 @@ public class Worksheet implements Closeable {
     private final Map<Integer, Double> colWidths = new HashMap<>();
 
     /**
-     * Map of rows and their heights
+     * Longest display length of values in each column, zero if none
      */
-    private final Map<Integer, Double> rowHeights = new HashMap<>();
+    private int[] autoWidths = new int[0];
+
+    /**
+     * Columns whose longest display length must be computed again from
+     * buffered rows, after rows were hidden or shown or cells were merged
+     */
+    private final BitSet staleWidths = new BitSet();
+
+    /**
+     * Number of rows considered when sizing columns automatically
+     */
+    private int autoSizeRows = MAX_ROWS;
+
+
+    /**
+     * Default style of each column, zero if none
+     */
+    private int[] columnStyles = new int[0];
 
     final Comments comments = new Comments();
+    /**
+     * System timezone when this worksheet was created, used to convert
+     * {@link Date} values.
+     */
+    final ZoneId zone = ZoneId.systemDefault();
 
     final Map<String,Table> tables = new LinkedHashMap<>();
 
-    private final DynamicBitMatrix tablesMatrix = new DynamicBitMatrix(MAX_COLS, MAX_ROWS);
+    /**
+     * Index of cells belonging to tables.
+     */
+    private final RangeIndex tablesIndex = new RangeIndex();
 
     /**
      * Is this worksheet construction completed?
@@ -238,6 +266,11 @@ public class Worksheet implements Closeable {
     private Map<String, Range> namedRanges = new LinkedHashMap<>();
 
     private Map<HyperLink, Ref> hyperlinkRanges = new LinkedHashMap<>();
+    /**
+     * Hyperlinks added since {@link #spillAnnotations()} was called,
+     * {@code null} while hyperlinks are kept in memory.
+     */
+    private AnnotationLog hyperlinkLog;
 
     /**
      * The set of protection options that are applied on the sheet.
@@ -246,6 +279,66 @@ public class Worksheet implements Closeable {
 
     private Writer writer;
 
+    /**
+     * Worksheet file compressed independently of the workbook's output
+     * stream, {@code null} unless parallel worksheet compression is enabled.
+     */
+    SpooledEntry spooledEntry;
+
+    /**
+     * Sequential writer, {@code null} until {@link #rowWriter()} is called.
+     */
+    private RowWriter rowWriter;
+
+    /**
+     * Regions filled by other threads and not copied to {@link #writer}
+     * yet, by first row.
+     */
+    private final TreeMap<Integer, ParallelRegion> regions = new TreeMap<>();
+
+    /**
+     * Index of the last row written to {@link #writer}, -1 if none.
+     */
+    private int lastWrittenRow = -1;
+
+    /**
+     * Maximum estimated size of rows held in memory before they are flushed
+     * automatically, 0 if unlimited.
+     */
+    private long autoFlushBytes;
+
+    /**
+     * Maximum number of rows held in memory before they are flushed
+     * automatically, 0 if unlimited.
+     */
+    private int autoFlushRows;
+
+    /**
+     * Estimated size of completed rows held in memory.
+     */
+    private long bufferedBytes;
+
+    /**
+     * Number of completed rows held in memory.
+     */
+    private int bufferedRows;
+
+    /**
+     * Index of the last row created by {@link #cell(int, int)}, -1 if none.
+     */
+    private int lastRow = -1;
+
+    /**
+     * Storage policy of strings in columns without statistics yet.
+     */
+    private StringStoragePolicy stringStoragePolicy = StringStoragePolicy.SHARED;
+
+    /**
+     * String storage statistics, by column, {@code null} for columns
+     * without string values.
+     */
+    private StringColumnStats[] stringColumns = new StringColumnStats[0];
+
     /**
      * Number of rows written to {@link #writer}.
      * Those rows are set to null in {@link #rows}
@@ -329,32 +422,224 @@ public class Worksheet implements Closeable {
      * @return An existing or newly created cell.
      */
     Cell cell(int r, int c) {
+        return new Cell(this, rowForWrite(r, c), c);
+    }
+
+    /**
+     * Get the row at the given index to set one of its values, completing
+     * previous rows first.
+     *
+     * @param r Zero-based row number.
+     * @param c Zero-based column number.
+     * @return An existing or newly created row.
+     */
+    private Row rowForWrite(int r, int c) {
+        if (!regions.isEmpty()) {
+            checkRegions(r, r + 1);
+        }
+        if (r > lastRow && r < MAX_ROWS) {
+            nextRow(r);
+        }
+        return row(r, c);
+    }
+
+    /**
+     * Account for the completion of the last row when a row with a greater
+     * index is accessed, and flush completed rows if they exceed the auto
+     * flush limits.
+     *
+     * @param r Zero-based index of the new row.
+     */
+    private void nextRow(int r) {
+        if (lastRow >= 0 && lastRow < rows.size() && rows.get(lastRow) != null) {
+            bufferedBytes += rows.get(lastRow).estimatedSize();
+            ++bufferedRows;
+        }
+        lastRow = r;
+        if ((autoFlushBytes > 0 && bufferedBytes >= autoFlushBytes)
+                || (autoFlushRows > 0 && bufferedRows >= autoFlushRows)) {
+            if (rowWriter != null && rowWriter.getRow() >= 0) {
+                // Cannot write rows while the row writer has an open row
+                return;
+            }
+            try {
+                flush(r, true);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            flushedRows = Math.max(flushedRows, r);
+        }
+    }
+
+    /**
+     * Flush rows automatically once the estimated size of completed rows
+     * held in memory reaches the given number of bytes. A row is complete
+     * when a row with a greater index is accessed; completed rows are then
+     * written and can no longer be modified, so rows must be filled in
+     * order. Cell values and styles are counted, shared strings are not, as
+     * they belong to the workbook.<br>
+     * Like {@link #flush()}, column widths are computed from the rows held in
+     * memory at the first flush. A worksheet first flushed automatically is
+     * compressed independently of the output stream, as with
+     * {@link Workbook#setParallelWorksheetCompression(boolean)}, so that
+     * worksheets generated concurrently do not interleave their files.
+     *
+     * @param maxBufferedBytes Maximum estimated size of rows held in memory,
+     * 0 to disable.
+     */
+    public void setAutoFlush(long maxBufferedBytes) {
+        if (maxBufferedBytes < 0) {
+            throw new IllegalArgumentException("Maximum buffered size must not be negative");
+        }
+        this.autoFlushBytes = maxBufferedBytes;
+    }
+
+    /**
+     * Set how string values of all columns are stored: in the shared string
+     * table, inline in cells, or chosen according to the ratio of unique
+     * strings among the first strings of each column. Strings set with
+     * {@link #inlineString(int, int, String)} are always inline.
+     *
+     * @param policy String storage policy.
+     */
+    public void setStringStoragePolicy(StringStoragePolicy policy) {
+        this.stringStoragePolicy = Objects.requireNonNull(policy);
+        for (StringColumnStats stats : stringColumns) {
+            if (stats != null) {
+                stats.setPolicy(policy);
+            }
+        }
+    }
+
+    /**
+     * Set how string values of a column are stored.
+     *
+     * @param c Zero-based column number.
+     * @param policy String storage policy.
+     * @see #setStringStoragePolicy(StringStoragePolicy)
+     */
+    public void setStringStoragePolicy(int c, StringStoragePolicy policy) {
+        stringColumnStats(c).setPolicy(Objects.requireNonNull(policy));
+    }
+
+    /**
+     * Get string storage statistics of columns with string values, telling
+     * which columns use shared or inline strings.
+     *
+     * @return Statistics, by column.
+     */
+    public List<StringColumnStats> getStringColumnStats() {
+        List<StringColumnStats> result = new ArrayList<>();
+        for (StringColumnStats stats : stringColumns) {
+            if (stats != null) {
+                result.add(stats);
+            }
+        }
+        return result;
+    }
+
+    private StringColumnStats stringColumnStats(int c) {
+        if (c < 0 || c >= MAX_COLS) {
+            throw new IllegalArgumentException();
+        }
+        if (c >= stringColumns.length) {
+            stringColumns = Arrays.copyOf(stringColumns, Math.min(MAX_COLS, Math.max(c + 1, 2 * stringColumns.length)));
+        }
+        StringColumnStats stats = stringColumns[c];
+        if (stats == null) {
+            stats = new StringColumnStats(c, stringStoragePolicy);
+            stringColumns[c] = stats;
+        }
+        return stats;
+    }
+
+    /**
+     * Store a string value of the given column, according to its storage
+     * policy.
+     *
+     * @param c Zero-based column number.
+     * @param s String value.
+     * @return Index of the string in the shared string table, or -1 if the
+     * string must be written inline.
+     */
+    int cacheString(int c, String s) {
+        return cacheString(stringColumnStats(c), s);
+    }
+
+    /**
+     * Store a string value according to the given column statistics.
+     *
+     * @param stats Storage statistics of the column.
+     * @param s String value.
+     * @return Index of the string in the shared string table, or -1 if the
+     * string must be written inline.
+     */
+    int cacheString(StringColumnStats stats, String s) {
+        if (stats.isInline()) {
+            stats.inline();
+            return -1;
+        }
+        int index = workbook.internString(s);
+        stats.shared(index < 0);
+        return index < 0 ? ~index : index;
+    }
+
+    /**
+     * Flush rows automatically once the given number of completed rows are
+     * held in memory. See {@link #setAutoFlush(long)}.
+     *
+     * @param maxBufferedRows Maximum number of rows held in memory, 0 to
+     * disable.
+     */
+    public void setAutoFlushRows(int maxBufferedRows) {
+        if (maxBufferedRows < 0) {
+            throw new IllegalArgumentException("Maximum number of buffered rows must not be negative");
+        }
+        this.autoFlushRows = maxBufferedRows;
+    }
+
+    /**
+     * Get the row at the given index, making sure the given column is in use.
+     *
+     * @param r Zero-based row number.
+     * @param c Zero-based column number.
+     * @return An existing or newly created row.
+     */
+    Row row(int r, int c) {
         // Check limits
         if (r < 0 || r >= MAX_ROWS || c < 0 || c >= MAX_COLS) {
             throw new IllegalArgumentException();
         }
         flushedCheck(r);
+        if (!regions.isEmpty()) {
+            checkRegions(r, r + 1);
+        }
 
         // Add null for missing rows.
         while (r >= rows.size()) {
             rows.add(null);
         }
-        Cell[] row = rows.get(r);
+        return existingRow(r, c);
+    }
+
+    /**
+     * Get the row at the given index, once bounds are checked and the list
+     * of rows is large enough, making sure the given column is in use.
+     *
+     * @param r Zero-based row number.
+     * @param c Zero-based column number.
+     * @return An existing or newly created row.
+     */
+    private Row existingRow(int r, int c) {
+        Row row = rows.get(r);
         if (row == null) {
-            int columns = Math.max(c + 1, (r > 0 && rows.get(r - 1) != null) ? rows.get(r - 1).length : (c + 1));
-            row = new Cell[columns];
-            rows.set(r, row);
-        } else if (c >= row.length) {
-            int columns = Math.max(c + 1, (r > 0 && rows.get(r - 1) != null) ? rows.get(r - 1).length : (c + 1));
-            Cell[] tmp = new Cell[columns];
-            System.arraycopy(row, 0, tmp, 0, row.length);
-            row = tmp;
+            // Rows usually have as many columns as the previous one
+            Row previous = r > 0 ? rows.get(r - 1) : null;
+            row = new Row(Math.max(c + 1, previous != null ? previous.length() : 0));
             rows.set(r, row);
         }
-        if (row[c] == null) {
-            row[c] = new Cell();
-        }
-        return row[c];
+        row.ensureColumn(c);
+        return row;
     }
 
     private void flushedCheck(int r) {
@@ -363,15 +648,30 @@ public class Worksheet implements Closeable {
         }
     }
 
+    /**
+     * Check that the given rows do not belong to a region filled by another
+     * thread.
+     *
+     * @param from Zero-based index of the first row.
+     * @param to Zero-based index of the row following the last one.
+     */
+    private void checkRegions(int from, int to) {
+        Map.Entry<Integer, ParallelRegion> entry = regions.lowerEntry(to);
+        if (entry != null && entry.getValue().getToRow() > from) {
+            throw new IllegalStateException("Rows " + from + " to " + (to - 1) + " overlap region " + entry.getValue());
+        }
+    }
+
     /**
      * Merge the cells within the given range.
      *
      * @param range Range of cells.
      */
     void merge(Range range) {
-        if (!mergedMatrix.isConflict(range.getTop(),range.getLeft(),range.getBottom(),range.getRight())){
+        if (!mergedIndex.overlaps(range.getTop(),range.getLeft(),range.getBottom(),range.getRight())){
             if (mergedRanges.add(range)) {
-                mergedMatrix.setRegion(range.getTop(),range.getLeft(),range.getBottom(),range.getRight());
+                mergedIndex.add(range.getTop(),range.getLeft(),range.getBottom(),range.getRight());
+                invalidateWidths(range.getLeft(), range.getRight() + 1);
             }
         }else {
             throw new IllegalArgumentException("Merge conflicted:" +range);
@@ -426,7 +726,9 @@ public class Worksheet implements Closeable {
      * @param row Zero-based row number
      */
     public void hideRow(int row) {
-        hiddenRows.add(row);
+        if (rowMetadata.setHidden(row, true)) {
+            invalidateWidths(row);
+        }
     }
 
     /**
@@ -435,7 +737,9 @@ public class Worksheet implements Closeable {
      * @param row Zero-based row number
      */
     public void showRow(int row) {
-        hiddenRows.remove(row);
+        if (rowMetadata.setHidden(row, false)) {
+            invalidateWidths(row);
+        }
     }
 
     /**
@@ -572,6 +876,125 @@ public class Worksheet implements Closeable {
         colWidths.put(c, width);
     }
 
+    /**
+     * Size columns automatically from the given number of rows only. Values
+     * set in later rows do not affect column widths, and are not tracked.
+     * Use this method to fix widths from a representative sample before
+     * streaming many more rows.<br>
+     * Column widths are computed from values set before the worksheet is
+     * first flushed, and are not updated afterwards. Columns with a width
+     * specified with {@link #width(int, double)} are not sized
+     * automatically. Formulas, hidden rows and merged cells are ignored.
+     *
+     * @param sampleRows Number of rows, starting from the first one,
+     * considered to size columns. Zero disables automatic sizing.
+     */
+    public void autoSizeColumns(int sampleRows) {
+        if (sampleRows < 0) {
+            throw new IllegalArgumentException("Number of sample rows must not be negative");
+        }
+        if (sampleRows != autoSizeRows) {
+            autoSizeRows = sampleRows;
+            invalidateWidths(0, autoWidths.length);
+        }
+    }
+
+    /**
+     * Track the display length of a value just set, to size its column.
+     *
+     * @param r Zero-based row number.
+     * @param c Zero-based column number.
+     */
+    private void updateWidth(int r, int c) {
+        updateWidths(r, c, c + 1);
+    }
+
+    /**
+     * Track the display length of values just set in a row, to size their
+     * columns.
+     *
+     * @param r Zero-based row number.
+     * @param from Zero-based number of the first column set.
+     * @param to Zero-based number of the column after the last one set.
+     */
+    private void updateWidths(int r, int from, int to) {
+        if (r >= autoSizeRows || writer != null) {
+            // Column widths are already written or not sampled from this row
+            return;
+        }
+        if (rowMetadata.isHidden(r)) {
+            return;
+        }
+        Row row = rows.get(r);
+        for (int c = from; c < to; ++c) {
+            if (!mergedRanges.isEmpty() && mergedIndex.contains(r, c)) {
+                continue;
+            }
+            int length = row.getDisplayLength(c);
+            if (c >= autoWidths.length) {
+                if (length == 0) {
+                    continue;
+                }
+                autoWidths = Arrays.copyOf(autoWidths, Math.min(MAX_COLS, Math.max(to, 2 * autoWidths.length)));
+            }
+            if (length > autoWidths[c]) {
+                autoWidths[c] = length;
+            }
+        }
+    }
+
+    /**
+     * Mark the columns of a buffered row as needing to be sized again.
+     *
+     * @param r Zero-based row number.
+     */
+    private void invalidateWidths(int r) {
+        Row row = r < rows.size() ? rows.get(r) : null;
+        if (row != null) {
+            invalidateWidths(0, row.length());
+        }
+    }
+
+    /**
+     * Mark columns as needing to be sized again.
+     *
+     * @param from Zero-based index of the first column.
+     * @param to Zero-based index after the last column.
+     */
+    private void invalidateWidths(int from, int to) {
+        if (writer == null) {
+            staleWidths.set(from, to);
+        }
+    }
+
+    /**
+     * Get the longest display length of the values in a column.
+     *
+     * @param c Zero-based column number.
+     * @return Number of characters, zero if the column has no value.
+     */
+    private int getAutoWidth(int c) {
+        if (staleWidths.get(c)) {
+            int length = 0;
+            int maxRow = Math.min(rows.size(), autoSizeRows);
+            BitSet merged = new BitSet();
+            mergedIndex.coveredRows(c, merged);
+            for (int r = 0; r < maxRow; ++r) {
+                Row row = rows.get(r);
+                // Exclude merged cells && hidden rows
+                if (row != null && !rowMetadata.isHidden(r) && !merged.get(r)) {
+                    length = Math.max(length, row.getDisplayLength(c));
+                }
+            }
+            if (c >= autoWidths.length) {
+                autoWidths = Arrays.copyOf(autoWidths, c + 1);
+            }
+            autoWidths[c] = length;
+            staleWidths.clear(c);
+        }
+        return c < autoWidths.length ? autoWidths[c] : 0;
+    }
+
     /**
      * Specify the custom row height for a row
      * <p> The maximum value for row height is <b>409.5</b> </p>
@@ -582,7 +1005,103 @@ public class Worksheet implements Closeable {
         if (height > MAX_ROW_HEIGHT) {
             throw new IllegalArgumentException();
         }
-        rowHeights.put(r, height);
+        rowMetadata.setHeight(r, height);
+    }
+
+    /**
+     * Get a style setter for the default style of a column. Cells of this
+     * column without a style of their own inherit it, including cells which
+     * are never set: the style is written once in the column definition, so
+     * formatting a whole column does not allocate any cell.<br>
+     * Calling this method again merges new style elements with the current
+     * default style. Shading settings are ignored, and methods requiring a
+     * range of cells, such as {@link StyleSetter#merge()}, are not supported.
+     *
+     * @param c Zero-based column number.
+     * @return Style setter applying to the default style of the column.
+     */
+    public StyleSetter columnStyle(int c) {
+        if (c < 0 || c >= MAX_COLS) {
+            throw new IllegalArgumentException();
+        }
+        return new StyleSetter(workbook, delta -> {
+            if (c >= columnStyles.length) {
+                columnStyles = Arrays.copyOf(columnStyles, Math.min(MAX_COLS, Math.max(c + 1, 2 * columnStyles.length)));
+            }
+            columnStyles[c] = workbook.mergeAndCacheStyle(columnStyles[c], delta);
+        });
+    }
+
+    /**
+     * Get a style setter for the default style of a row. Cells of this row
+     * without a style of their own inherit it, including cells which are
+     * never set. A row style takes precedence over column styles.<br>
+     * Calling this method again merges new style elements with the current
+     * default style. Shading settings are ignored, and methods requiring a
+     * range of cells, such as {@link StyleSetter#merge()}, are not supported.
+     *
+     * @param r Zero-based row number.
+     * @return Style setter applying to the default style of the row.
+     */
+    public StyleSetter rowStyle(int r) {
+        if (r < 0 || r >= MAX_ROWS) {
+            throw new IllegalArgumentException();
+        }
+        flushedCheck(r);
+        return new StyleSetter(workbook, delta -> {
+            flushedCheck(r);
+            rowMetadata.setStyle(r, workbook.mergeAndCacheStyle(rowMetadata.getStyle(r), delta));
+        });
+    }
+
+    /**
+     * Get the default style of a row.
+     *
+     * @param r Zero-based row number.
+     * @return Cached style index, zero if none.
+     */
+    int getRowStyle(int r) {
+        return rowMetadata.getStyle(r);
+    }
+
+    /**
+     * Get the index of the last column with a default style.
+     *
+     * @return Zero-based column number, -1 if no column has a default style.
+     */
+    private int maxColumnStyle() {
+        for (int c = columnStyles.length - 1; c >= 0; --c) {
+            if (columnStyles[c] != 0) {
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get the style inherited by a cell without a style of its own.
+     *
+     * @param rowStyle Default style of the row of the cell.
+     * @param c Zero-based column number.
+     * @return Cached style index, zero if none.
+     */
+    int getDefaultStyle(int rowStyle, int c) {
+        return getDefaultStyle(rowStyle, c, columnStyles);
+    }
+
+    /**
+     * Get the style inherited by a cell without a style of its own.
+     *
+     * @param rowStyle Default style of the row of the cell.
+     * @param c Zero-based column number.
+     * @param columnStyles Default styles of columns.
+     * @return Cached style index, zero if none.
+     */
+    static int getDefaultStyle(int rowStyle, int c, int[] columnStyles) {
+        if (rowStyle != 0) {
+            return rowStyle;
+        }
+        return c < columnStyles.length ? columnStyles[c] : 0;
     }
 
     /**
@@ -593,7 +1112,8 @@ public class Worksheet implements Closeable {
      * @param value Cell value.
      */
     public void value(int r, int c, String value) {
-        cell(r, c).setValue(workbook, value);
+        cell(r, c).setValue(this, value);
+        updateWidth(r, c);
     }
     /**
      * Set the cell value at the given coordinates.
@@ -604,6 +1124,7 @@ public class Worksheet implements Closeable {
      */
     public void value(int r, int c, Number value) {
         cell(r, c).setValue(value);
+        updateWidth(r, c);
     }
     /**
      * Set the cell value at the given coordinates.
@@ -614,6 +1135,77 @@ public class Worksheet implements Closeable {
      */
     public void value(int r, int c, Boolean value) {
         cell(r, c).setValue(value);
+        updateWidth(r, c);
+    }
+    /**
+     * Set the cell value at the given coordinates.
+     *
+     * @param r Zero-based row number.
+     * @param c Zero-based column number.
+     * @param value Cell value.
+     */
+    public void value(int r, int c, int value) {
+        rowForWrite(r, c).setInt(c, value);
+        updateWidth(r, c);
+    }
+    /**
+     * Set the cell value at the given coordinates.
+     *
+     * @param r Zero-based row number.
+     * @param c Zero-based column number.
+     * @param value Cell value.
+     */
+    public void value(int r, int c, double value) {
+        rowForWrite(r, c).setDouble(c, value);
+        updateWidth(r, c);
+    }
+    /**
+     * Set the cell value at the given coordinates. Floats are written with
+     * {@link Float#toString(float)}, e.g. {@code 0.1f} as {@code 0.1}, rather
+     * than widened to double.
+     *
+     * @param r Zero-based row number.
+     * @param c Zero-based column number.
+     * @param value Cell value.
+     */
+    public void value(int r, int c, float value) {
+        cell(r, c).setValue(Float.valueOf(value));
+        updateWidth(r, c);
+    }
+    /**
+     * Set the cell value at the given coordinates. The value is stored as a
+     * {@link Short}, as when passed boxed.
+     *
+     * @param r Zero-based row number.
+     * @param c Zero-based column number.
+     * @param value Cell value.
+     */
+    public void value(int r, int c, short value) {
+        cell(r, c).setValue(Short.valueOf(value));
+        updateWidth(r, c);
+    }
+    /**
+     * Set the cell value at the given coordinates. The value is stored as a
+     * {@link Byte}, as when passed boxed.
+     *
+     * @param r Zero-based row number.
+     * @param c Zero-based column number.
+     * @param value Cell value.
+     */
+    public void value(int r, int c, byte value) {
+        cell(r, c).setValue(Byte.valueOf(value));
+        updateWidth(r, c);
+    }
+    /**
+     * Set the cell value at the given coordinates.
+     *
+     * @param r Zero-based row number.
+     * @param c Zero-based column number.
+     * @param value Cell value.
+     */
+    public void value(int r, int c, long value) {
+        rowForWrite(r, c).setLong(c, value);
+        updateWidth(r, c);
     }
     /**
      * Set the cell value at the given coordinates.
@@ -622,11 +1214,13 @@ public class Worksheet implements Closeable {
      * @param c Zero-based column number.
      * @param value Cell value. Note Excel timestamps do not carry
      * any timezone information; {@link Date} values are converted to an Excel
-     * serial number with the system timezone. If you need a specific timezone,
-     * prefer passing a {@link ZonedDateTime}.
+     * serial number with the system timezone at the time this worksheet was
+     * created. If you need a specific timezone, prefer passing a
+     * {@link ZonedDateTime}.
      */
     public void value(int r, int c, Date value) {
         cell(r, c).setValue(value);
+        updateWidth(r, c);
     }
     /**
      * Set the cell value at the given coordinates.
@@ -640,6 +1234,7 @@ public class Worksheet implements Closeable {
      */
     public void value(int r, int c, LocalDateTime value) {
         cell(r, c).setValue(value);
+        updateWidth(r, c);
     }
     /**
      * Set the cell value at the given coordinates.
@@ -653,6 +1248,7 @@ public class Worksheet implements Closeable {
      */
     public void value(int r, int c, LocalDate value) {
         cell(r, c).setValue(value);
+        updateWidth(r, c);
     }
     /**
      * Set the cell value at the given coordinates.
@@ -663,6 +1259,162 @@ public class Worksheet implements Closeable {
      */
     public void value(int r, int c, ZonedDateTime value) {
         cell(r, c).setValue(value);
+        updateWidth(r, c);
+    }
+
+    /**
+     * Set consecutive values of a row, starting from the given column. The
+     * row is looked up and grown once for all values.
+     *
+     * @param r Zero-based row number.
+     * @param startCol Zero-based column number of the first value.
+     * @param values Cell values.
+     */
+    public void writeRow(int r, int startCol, double[] values) {
+        if (values.length == 0) {
+            return;
+        }
+        Row row = rowForWrite(r, lastColumn(startCol, values.length));
+        for (int i = 0; i < values.length; ++i) {
+            row.setDouble(startCol + i, values[i]);
+        }
+        updateWidths(r, startCol, startCol + values.length);
+    }
+
+    /**
+     * Set consecutive values of a row, starting from the given column. The
+     * row is looked up and grown once for all values.
+     *
+     * @param r Zero-based row number.
+     * @param startCol Zero-based column number of the first value.
+     * @param values Cell values.
+     */
+    public void writeRow(int r, int startCol, long[] values) {
+        if (values.length == 0) {
+            return;
+        }
+        Row row = rowForWrite(r, lastColumn(startCol, values.length));
+        for (int i = 0; i < values.length; ++i) {
+            row.setLong(startCol + i, values[i]);
+        }
+        updateWidths(r, startCol, startCol + values.length);
+    }
+
+    /**
+     * Set the values of a row, starting from the first column. Values are
+     * stored as with the typed {@code value()} setters; {@code null} values
+     * leave cells empty.
+     *
+     * @param r Zero-based row number.
+     * @param values Cell values: strings, numbers, booleans or timestamps.
+     * @throws IllegalArgumentException If a value has another type.
+     */
+    public void writeRow(int r, Object... values) {
+        if (values.length == 0) {
+            return;
+        }
+        Row row = rowForWrite(r, lastColumn(0, values.length));
+        for (int c = 0; c < values.length; ++c) {
+            new Cell(this, row, c).setValue(this, values[c]);
+        }
+        updateWidths(r, 0, values.length);
+    }
+
+    /**
+     * Set consecutive values of a column, starting from the given row.
+     * Bounds and flushed rows are checked once for all values.
+     *
+     * @param c Zero-based column number.
+     * @param startRow Zero-based row number of the first value.
+     * @param values Cell values.
+     * @param style Style index applied to the cells, as returned by
+     * {@link StyleSetter#id()}, or zero to keep their current style.
+     */
+    public void writeColumn(int c, int startRow, double[] values, int style) {
+        int endRow = startColumnWrite(c, startRow, values.length);
+        for (int r = startRow; r < endRow; ++r) {
+            Row row = columnRow(r, c);
+            row.setDouble(c, values[r - startRow]);
+            if (style != 0) {
+                row.setStyle(c, style);
+            }
+            updateWidth(r, c);
+        }
+    }
+
+    /**
+     * Set consecutive values of a column, starting from the given row.
+     * Bounds and flushed rows are checked once for all values.
+     *
+     * @param c Zero-based column number.
+     * @param startRow Zero-based row number of the first value.
+     * @param values Cell values.
+     * @param style Style index applied to the cells, as returned by
+     * {@link StyleSetter#id()}, or zero to keep their current style.
+     */
+    public void writeColumn(int c, int startRow, long[] values, int style) {
+        int endRow = startColumnWrite(c, startRow, values.length);
+        for (int r = startRow; r < endRow; ++r) {
+            Row row = columnRow(r, c);
+            row.setLong(c, values[r - startRow]);
+            if (style != 0) {
+                row.setStyle(c, style);
+            }
+            updateWidth(r, c);
+        }
+    }
+
+    /**
+     * Get the last column of a batch of values set in a row.
+     *
+     * @param startCol Zero-based column number of the first value.
+     * @param count Number of values.
+     * @return Zero-based column number of the last value.
+     */
+    private static int lastColumn(int startCol, int count) {
+        if (startCol < 0 || startCol > MAX_COLS - count) {
+            throw new IllegalArgumentException("Columns " + startCol + " to " + ((long) startCol + count - 1) + " out of range");
+        }
+        return startCol + count - 1;
+    }
+
+    /**
+     * Check a batch of values set in a column and make room for its rows.
+     *
+     * @param c Zero-based column number.
+     * @param startRow Zero-based row number of the first value.
+     * @param count Number of values.
+     * @return Zero-based row number after the last value.
+     */
+    private int startColumnWrite(int c, int startRow, int count) {
+        if (c < 0 || c >= MAX_COLS || startRow < 0 || startRow > MAX_ROWS - count) {
+            throw new IllegalArgumentException("Column " + c + ", rows " + startRow + " to " + ((long) startRow + count - 1) + " out of range");
+        }
+        // Later rows of the batch cannot be flushed before they are set
+        flushedCheck(startRow);
+        int endRow = startRow + count;
+        if (!regions.isEmpty()) {
+            checkRegions(startRow, endRow);
+        }
+        while (rows.size() < endRow) {
+            rows.add(null);
+        }
+        return endRow;
+    }
+
+    /**
+     * Get a row of a batch of values set in a column, completing previous
+     * rows first.
+     *
+     * @param r Zero-based row number.
+     * @param c Zero-based column number.
+     * @return An existing or newly created row.
+     */
+    private Row columnRow(int r, int c) {
+        if (r > lastRow) {
+            nextRow(r);
+        }
+        return existingRow(r, c);
     }
 
     /**
@@ -674,9 +1426,8 @@ public class Worksheet implements Closeable {
      */
     public Object value(int r, int c) {
         flushedCheck(r);
-        Cell[] row = r < rows.size() ? rows.get(r) : null;
-        Cell cell = row == null || c >= row.length ? null : row[c];
-        return cell == null ? null : cell.getValue();
+        Row row = r < rows.size() ? rows.get(r) : null;
+        return row == null ? null : row.getValue(c, workbook);
     }
 
     public void hyperlink(int r, int c,HyperLink hyperLink) {
@@ -704,6 +1455,7 @@ public class Worksheet implements Closeable {
      */
     public void inlineString(int r, int c, String value) {
         cell(r, c).setInlineString(value);
+        updateWidth(r, c);
     }
 
     /**
@@ -749,24 +1501,21 @@ public class Worksheet implements Closeable {
                 bestFit = false;
                 maxWidth = colWidths.get(c);
             } else {
-                for (int r = 0; r < rows.size(); ++r) {
-                    boolean isCellInMergedRanges = mergedMatrix.get(r,c);
-                    // Exclude merged cells from computation && hidden rows
-                    Object o = hiddenRows.contains(r) || isCellInMergedRanges ? null : value(r, c);
-                    if (o != null && !(o instanceof Formula)) {
-                        int length = o.toString().length();
-                        maxWidth = Math.max(maxWidth, (int) ((length * 7 + 10) / 7.0 * 256) / 256.0);
-                    }
+                int length = getAutoWidth(c);
+                if (length > 0) {
+                    maxWidth = (int) ((length * 7 + 10) / 7.0 * 256) / 256.0;
                 }
             }
             boolean isHidden = hiddenColumns.contains(c);
             int groupLevel = groupColums.get(c);
-            if (maxWidth > 0 || isHidden||groupLevel!=0) {
+            int style = c < columnStyles.length ? columnStyles[c] : 0;
+            boolean customWidth = maxWidth > 0 || isHidden || groupLevel != 0;
+            if (customWidth || style != 0) {
                 if (!started) {
                     w.append("<cols>");
                     started = true;
                 }
-                writeCol(w, c, maxWidth, bestFit, isHidden,groupLevel);
+                writeCol(w, c, customWidth, maxWidth, bestFit, isHidden, groupLevel, style);
             }
         }
         if (started) {
@@ -780,18 +1529,27 @@ public class Worksheet implements Closeable {
      *
      * @param w Output writer.
      * @param columnIndex Zero-based column number.
+     * @param customWidth Whether or not width and outline level are written
      * @param maxWidth The maximum width
      * @param bestFit Whether or not this column should be optimized for fit
      * @param isHidden Whether or not this row is hidden
+     * @param groupLevel Group level of column
+     * @param style Default style of column, zero if none
      * @throws IOException If an I/O error occurs.
      */
-    private static void writeCol(Writer w, int columnIndex, double maxWidth, boolean bestFit, boolean isHidden, int groupLevel) throws IOException {
+    private static void writeCol(Writer w, int columnIndex, boolean customWidth, double maxWidth, boolean bestFit,
+                                 boolean isHidden, int groupLevel, int style) throws IOException {
         final int col = columnIndex + 1;
-        w.append("<col min=\"").append(col).append("\" max=\"").append(col).append("\" width=\"")
-                .append(Math.min(MAX_COL_WIDTH, maxWidth));
-        w.append("\" outlineLevel=\"").append(groupLevel);
-        w.append("\" customWidth=\"true\" bestFit=\"")
-                .append(String.valueOf(bestFit));
+        w.append("<col min=\"").append(col).append("\" max=\"").append(col);
+        if (customWidth) {
+            w.append("\" width=\"").append(Math.min(MAX_COL_WIDTH, maxWidth));
+            w.append("\" outlineLevel=\"").append(groupLevel);
+            w.append("\" customWidth=\"true\" bestFit=\"")
+                    .append(String.valueOf(bestFit));
+        }
+        if (style != 0) {
+            w.append("\" style=\"").append(style);
+        }
 
         if (isHidden) {
             w.append("\" hidden=\"true");
@@ -870,7 +1628,14 @@ public class Worksheet implements Closeable {
             }
             writer.append("</dataValidations>");
         }
-        if (!hyperlinkRanges.isEmpty()) {
+        if (hyperlinkLog != null && hyperlinkLog.size() > 0) {
+            writer.append("<hyperlinks>");
+            int[] rId = {relationships.setHyperLinkRels(hyperlinkLog)};
+            hyperlinkLog.forEach((row, col, ref, target) -> {
+                writer.append("<hyperlink ref=\"").append(ref).append("\" r:id=\"rId").append(rId[0]++).append("\" />");
+            });
+            writer.append("</hyperlinks>");
+        } else if (!hyperlinkRanges.isEmpty()) {
             writer.append("<hyperlinks>");
             for (Map.Entry<HyperLink, Ref> hr : hyperlinkRanges.entrySet()) {
                 HyperLink hyperLink = hr.getKey();
@@ -931,7 +1696,12 @@ public class Worksheet implements Closeable {
         }
 
         writer.append("</worksheet>");
-        workbook.endFile();
+        if (spooledEntry != null) {
+            writer.flush();
+            spooledEntry.finish();
+        } else {
+            workbook.endFile();
+        }
 
         /* write comment files */
         if (!comments.isEmpty()) {
@@ -950,8 +1720,31 @@ public class Worksheet implements Closeable {
         if (!relationships.isEmpty()) {
             workbook.writeFile("xl/worksheets/_rels/sheet"+index+".xml.rels",relationships::write);
         }
-        // Free memory; we no longer need this data
+        // Free memory; we no longer need this data. Names, tables and ranges
+        // referenced by the workbook file are kept.
         rows.clear();
+        rows.trimToSize();
+        comments.close();
+        if (hyperlinkLog != null) {
+            hyperlinkLog.close();
+        }
+        hyperlinkRanges.clear();
+        relationships.clear();
+        mergedRanges.clear();
+        mergedIndex.clear();
+        tablesIndex.clear();
+        conditionalFormattings.clear();
+        dataValidations.clear();
+        alternateShadingRanges.clear();
+        shadingRanges.clear();
+        hiddenColumns.clear();
+        colWidths.clear();
+        rowMetadata.clear();
+        autoWidths = new int[0];
+        staleWidths.clear();
+        columnStyles = new int[0];
+        stringColumns = new StringColumnStats[0];
+        rowWriter = null;
         finished = true;
     }
 
@@ -963,15 +1756,34 @@ public class Worksheet implements Closeable {
      * <ul>
      * <li>All columns must be defined before calling this method:
      * do not add or merge columns after calling {@link #flush()}.</li>
-     * <li>When a {@link Worksheet} is flushed, no other worksheet can be flushed until {@link #close()} (or  the old fashion way {@link #finish()}) is called.</li>
+     * <li>When a {@link Worksheet} is flushed, no other worksheet can be flushed until {@link #close()} (or  the old fashion way {@link #finish()}) is called,
+     * unless {@link Workbook#setParallelWorksheetCompression(boolean)} is enabled.</li>
      * </ul>
      *
      * @throws IOException If an I/O error occurs.
      */
     public void flush() throws IOException {
+        flush(Integer.MAX_VALUE, false);
+    }
+
+    /**
+     * Write rows up to the given row to the output stream.
+     *
+     * @param limit Index of the row where writing stops (exclusive).
+     * @param automatic Whether rows are flushed automatically, in which case
+     * the worksheet file is always compressed independently of the output
+     * stream.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void flush(int limit, boolean automatic) throws IOException {
         if (writer == null) {
-            int index = workbook.getIndex(this);
-            writer = workbook.beginFile("xl/worksheets/sheet" + index + ".xml");
+            spooledEntry = workbook.newSpooledEntry(automatic);
+            if (spooledEntry != null) {
+                writer = new Writer(spooledEntry);
+            } else {
+                int index = workbook.getIndex(this);
+                writer = workbook.beginFile("xl/worksheets/sheet" + index + ".xml");
+            }
             writer.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
             writer.append("<worksheet xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\" xmlns:r=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships\">");
             writer.append("<sheetPr filterMode=\"" + "false" + "\"><pageSetUpPr fitToPage=\"" + fitToPage + "\" autoPageBreaks=\"" + autoPageBreaks + "\"/></sheetPr>");
@@ -989,36 +1801,209 @@ public class Worksheet implements Closeable {
             }
             writer.append("</sheetView>");
             writer.append("</sheetViews><sheetFormatPr defaultRowHeight=\"15.0\"/>");
-            final int nbCols = rows.stream().filter(Objects::nonNull).mapToInt(r -> r.length).max().orElse(0);
+            final int nbCols = rows.stream().filter(Objects::nonNull).mapToInt(Row::length).max().orElse(0);
             final int maxHideCol = hiddenColumns.stream().mapToInt(a -> a).max().orElse(0);
-            final int maxNoZeroIndex = groupColums.getMaxNoZeroIndex();
+            final int maxNoZeroIndex = Math.max(groupColums.getMaxNoZeroIndex(), maxColumnStyle());
             if (nbCols > 0 || !hiddenColumns.isEmpty()||maxNoZeroIndex!=-1) {
                 int maxCol = Math.max(nbCols, Math.max(maxHideCol,maxNoZeroIndex) + 1) ;
                 writeCols(writer, maxCol);
             }
             writer.append("<sheetData>");
         }
+        if (rowWriter != null) {
+            rowWriter.endRow();
+        }
+        final int maxRow = writeRows(limit);
+        flushedRows = Math.max(flushedRows, maxRow - 1);
+        bufferedBytes = 0;
+        bufferedRows = 0;
+
+
+        writer.flush();
+    }
+
+    /**
+     * Write rows held in memory, and rows with only hidden, outline level,
+     * height or style attributes, up to the given row. Regions starting
+     * before that row are copied in row order, once they are closed.
+     *
+     * @param limit Index of the row where writing stops (exclusive).
+     * @return Index after the last row which was considered.
+     * @throws IOException If an I/O error occurs.
+     */
+    private int writeRows(int limit) throws IOException {
+        while (!regions.isEmpty() && regions.firstKey() < limit) {
+            ParallelRegion region = regions.pollFirstEntry().getValue();
+            writeRowRange(region.getFromRow());
+            lastWrittenRow = Math.max(lastWrittenRow, region.copyTo(writer));
+            flushedRows = Math.max(flushedRows, region.getToRow());
+            StringColumnStats[] regionStats = region.getStringColumnStats();
+            for (int c = 0; c < regionStats.length; ++c) {
+                if (regionStats[c] != null) {
+                    stringColumnStats(c).join(regionStats[c]);
+                }
+            }
+        }
+        return writeRowRange(limit);
+    }
+
+    /**
+     * Write rows held in memory, and rows with only hidden, outline level,
+     * height or style attributes, up to the given row, ignoring regions.
+     *
+     * @param limit Index of the row where writing stops (exclusive).
+     * @return Index after the last row which was considered.
+     * @throws IOException If an I/O error occurs.
+     */
+    private int writeRowRange(int limit) throws IOException {
         final int nbRows = rows.size();
-        final int maxHideRow = hiddenRows.stream().mapToInt(a -> a).max().orElse(0);
-        final int maxGroupRow = groupRows.getMaxNoZeroIndex();
-        final int maxRow = Math.max(nbRows, Math.max(maxGroupRow,maxHideRow) + 1);
+        final int maxRow = Math.min(limit, Math.max(nbRows, rowMetadata.getLastRow() + 1));
         for (int r = flushedRows; r < maxRow; ++r) {
-            boolean notEmptyRow = r < rows.size();
-            Cell[] row = notEmptyRow ? rows.get(r) : null;
-            boolean isHidden = hiddenRows.contains(r);
-            byte groupLevel = groupRows.get(r);
-            if (row != null || isHidden || groupLevel != 0) {
-                writeRow(writer, r, isHidden,groupLevel,
-                        rowHeights.get(r), row);
+            if (r >= nbRows) {
+                // Only rows with attributes are left
+                r = rowMetadata.nextWrittenRow(r);
+                if (r < 0 || r >= maxRow) {
+                    break;
+                }
+            }
+            boolean notEmptyRow = r < nbRows;
+            Row row = notEmptyRow ? rows.get(r) : null;
+            if (row != null || rowMetadata.isWritten(r)) {
+                writeRow(writer, r, rowMetadata.isHidden(r), rowMetadata.getLevel(r),
+                        rowMetadata.getHeight(r), rowMetadata.getStyle(r), row);
+                lastWrittenRow = r;
             }
             if (notEmptyRow) {
                 rows.set(r, null); // free flushed row data
             }
         }
-        flushedRows = maxRow - 1;
+        return maxRow;
+    }
 
+    /**
+     * Get a writer appending rows to this worksheet. Each call to a cell
+     * method of this writer directly serializes the cell to the output, which
+     * is much faster than setting values at given coordinates. Rows and cells
+     * set previously are flushed first, and the random-access API remains
+     * available for rows after the current row of the writer.<br>
+     * Note column widths are computed from the rows held in memory when this
+     * method is called; set widths explicitly with {@link #width(int, double)}
+     * otherwise.
+     *
+     * @return Row writer of this worksheet.
+     * @throws IOException If an I/O error occurs.
+     */
+    public RowWriter rowWriter() throws IOException {
+        if (finished) {
+            throw new IllegalStateException("Worksheet is finished");
+        }
+        if (rowWriter == null) {
+            // Rows with attributes only are left to the row writer
+            flush(rows.size(), false);
+            rowWriter = new RowWriter(this, writer);
+        }
+        return rowWriter;
+    }
 
-        writer.flush();
+    /**
+     * Write records after the last row written, one row per record, with
+     * the {@link #rowWriter() row writer} of this worksheet. A header row is
+     * written first unless the schema has none.
+     *
+     * @param schema Mapping of records to cells.
+     * @param records Records to write.
+     * @param <T> Type of records.
+     * @throws IOException If an I/O error occurs.
+     */
+    public <T> void writeRecords(RowSchema<T> schema, Iterable<? extends T> records) throws IOException {
+        schema.write(this, rowWriter(), records);
+    }
+
+    /**
+     * Reserve a band of rows to be filled by another thread, with the
+     * {@link ParallelRegion#rowWriter() row writer} of the returned region.
+     * Each region serializes its rows to a private buffer; bands are copied
+     * to the worksheet in row order once their region is closed, so several
+     * threads can fill disjoint bands of one worksheet concurrently.<br>
+     * Regions must be created by the thread owning the worksheet, after the
+     * rows already set or written and before the rows set afterwards. Rows
+     * of a region cannot be set by coordinates, and the row writer of the
+     * worksheet skips them. Row and column default styles and row
+     * attributes of the band are copied when calling this method: later
+     * changes do not apply to rows of the region.<br>
+     * Flushing or finishing the worksheet, or writing rows after the band,
+     * waits for the region to be closed: close every region, even when
+     * filling it fails.
+     *
+     * @param fromRow Zero-based index of the first row of the band.
+     * @param toRow Zero-based index of the row following the band
+     * (exclusive).
+     * @return Newly created region.
+     */
+    public ParallelRegion parallelRegion(int fromRow, int toRow) {
+        if (finished) {
+            throw new IllegalStateException("Worksheet is finished");
+        }
+        if (fromRow < 0 || toRow <= fromRow || toRow > MAX_ROWS) {
+            throw new IllegalArgumentException("Invalid region rows " + fromRow + " to " + toRow);
+        }
+        if (fromRow <= Math.max(lastWrittenRow, lastRow)) {
+            throw new IllegalStateException("Region must start after row " + Math.max(lastWrittenRow, lastRow));
+        }
+        for (int r = fromRow; r < Math.min(toRow, rows.size()); ++r) {
+            if (rows.get(r) != null) {
+                throw new IllegalStateException("Row " + r + " already has cells set by coordinates");
+            }
+        }
+        checkRegions(fromRow, toRow);
+        ParallelRegion region = new ParallelRegion(this, fromRow, toRow, stringColumns, stringStoragePolicy,
+                rowMetadata.copy(fromRow, toRow), columnStyles.clone());
+        regions.put(fromRow, region);
+        return region;
+    }
+
+    /**
+     * Start a row written by the row writer: write the opening row element.
+     * Rows held in memory before this row are written first.
+     *
+     * @param r Zero-based index of the requested row. If rows after it have
+     * already been written, the row after the last written row is started
+     * instead, and rows of regions are skipped.
+     * @return Zero-based index of the started row.
+     * @throws IOException If an I/O error occurs.
+     */
+    int startRow(int r) throws IOException {
+        if (finished) {
+            throw new IllegalStateException("Worksheet is finished");
+        }
+        r = Math.max(r, lastWrittenRow + 1);
+        Map.Entry<Integer, ParallelRegion> region;
+        while ((region = regions.floorEntry(r)) != null && r < region.getValue().getToRow()) {
+            r = region.getValue().getToRow();
+        }
+        writeRows(r);
+        if (r >= MAX_ROWS) {
+            throw new IllegalArgumentException("Too many rows");
+        }
+        if (r < rows.size() && rows.get(r) != null) {
+            throw new IllegalStateException("Row " + r + " already has cells set by coordinates");
+        }
+        writeRowStart(writer, r, rowMetadata);
+        lastWrittenRow = r;
+        flushedRows = Math.max(flushedRows, r + 1);
+        return r;
+    }
+
+    /**
+     * Write the opening element of a row, with its attributes.
+     *
+     * @param w Output writer.
+     * @param r Zero-based row number.
+     * @param metadata Row attributes.
+     * @throws IOException If an I/O error occurs.
+     */
+    static void writeRowStart(Writer w, int r, RowMetadata metadata) throws IOException {
+        writeRowStart(w, r, metadata.isHidden(r), metadata.getLevel(r), metadata.getHeight(r), metadata.getStyle(r));
     }
 
     /**
@@ -1066,17 +2051,41 @@ public class Worksheet implements Closeable {
      * @param r Zero-based row number.
      * @param isHidden Whether or not this row is hidden
      * @param groupLevel Group level of row
-     * @param rowHeight Row height value in points to be set if customHeight is true
-     * @param row Cells in the row.
+     * @param rowHeight Row height value in points, {@link Double#NaN} for the default height
+     * @param rowStyle Default style of row, zero if none
+     * @param row Cells in the row, or {@code null}.
      * @throws IOException If an I/O error occurs.
      */
-    private static void writeRow(Writer w, int r, boolean isHidden,byte groupLevel,
-                                 Double rowHeight, Cell... row) throws IOException {
+    private void writeRow(Writer w, int r, boolean isHidden,byte groupLevel,
+                          double rowHeight, int rowStyle, Row row) throws IOException {
+        writeRowStart(w, r, isHidden, groupLevel, rowHeight, rowStyle);
+        if (null!=row) {
+            row.write(w, r, this, rowStyle);
+        }
+        w.append("</row>");
+    }
+
+    /**
+     * Write the opening element of a row.
+     *
+     * @param w Output writer.
+     * @param r Zero-based row number.
+     * @param isHidden Whether or not this row is hidden
+     * @param groupLevel Group level of row
+     * @param rowHeight Row height value in points, {@link Double#NaN} for the default height
+     * @param rowStyle Default style of row, zero if none
+     * @throws IOException If an I/O error occurs.
+     */
+    private static void writeRowStart(Writer w, int r, boolean isHidden, byte groupLevel,
+                                      double rowHeight, int rowStyle) throws IOException {
         w.append("<row r=\"").append(r + 1).append("\"");
         if (isHidden) {
             w.append(" hidden=\"true\"");
         }
-        if(rowHeight != null) {
+        if (rowStyle != 0) {
+            w.append(" s=\"").append(rowStyle).append("\" customFormat=\"1\"");
+        }
+        if (!Double.isNaN(rowHeight)) {
             w.append(" ht=\"")
              .append(rowHeight)
              .append("\"")
@@ -1088,14 +2097,6 @@ public class Worksheet implements Closeable {
                     .append("\"");
         }
         w.append(">");
-        if (null!=row) {
-            for (int c = 0; c < row.length; ++c) {
-                if (row[c] != null) {
-                    row[c].write(w, r, c);
-                }
-            }
-        }
-        w.append("</row>");
     }
 
     /**
@@ -1103,6 +2104,7 @@ public class Worksheet implements Closeable {
      * The comment popup will be twice the size of the cell and will be initially hidden.
      * <p>
      * Comments are stored in memory till call to {@link #close()} (or  the old fashion way {@link #finish()}) - calling {@link #flush()} does not write them to output stream.
+     * Call {@link #spillAnnotations()} to keep them in a temporary file instead.
      * @param r Zero-based row number.
      * @param c Zero-based column number.
      * @param comment Note text
@@ -1347,17 +2349,43 @@ public class Worksheet implements Closeable {
     }
 
     void addHyperlink(Ref ref, HyperLink hyperLink) {
-        this.hyperlinkRanges.put(hyperLink, ref);
+        if (hyperlinkLog != null) {
+            // The position is part of the reference
+            hyperlinkLog.add(0, 0, ref.toString(), hyperLink.getLinkStr());
+        } else {
+            this.hyperlinkRanges.put(hyperLink, ref);
+        }
+    }
+
+    /**
+     * Append comments and hyperlinks to temporary files as they are added,
+     * rather than keeping them in memory until this worksheet is finished.
+     * Heap usage then remains constant however many cells are annotated,
+     * which matters for large worksheets written with {@link #flush()}.
+     * Comments and hyperlinks added before calling this method are moved to
+     * the temporary files as well.<br>
+     * Comments are written in the order they were added instead of being
+     * sorted, and a cell must not be given more than one comment.
+     */
+    public void spillAnnotations() {
+        if (hyperlinkLog == null) {
+            comments.spill();
+            hyperlinkLog = new AnnotationLog();
+            for (Map.Entry<HyperLink, Ref> hr : hyperlinkRanges.entrySet()) {
+                hyperlinkLog.add(0, 0, hr.getValue().toString(), hr.getKey().getLinkStr());
+            }
+            hyperlinkRanges.clear();
+        }
     }
 
 
     Table addTable(Range range, String... headers) {
-        if (!tablesMatrix.isConflict(range.getTop(), range.getLeft(), range.getBottom(), range.getRight())) {
+        if (!tablesIndex.overlaps(range.getTop(), range.getLeft(), range.getBottom(), range.getRight())) {
             int tableIndex = getWorkbook().nextTableIndex();
             String rId = relationships.setTableRels(tableIndex);
             Table table = new Table(tableIndex, range, headers);
             tables.put(rId, table);
-            tablesMatrix.setRegion(range.getTop(), range.getLeft(), range.getBottom(), range.getRight());
+            tablesIndex.add(range.getTop(), range.getLeft(), range.getBottom(), range.getRight());
             return table;
         } else {
             throw new IllegalArgumentException("Table conflicted:" + range);
@@ -1369,6 +2397,6 @@ public class Worksheet implements Closeable {
     }
 
     public void groupRows(int from , int to) {
-        IntStream.rangeClosed(Math.min(from,to),Math.max(from,to)).forEach(groupRows::increase);
+        IntStream.rangeClosed(Math.min(from,to),Math.max(from,to)).forEach(rowMetadata::increaseLevel);
     }
 }
@@ -20,18 +20,52 @@ import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 
 /**
- * Writer for XML files.
+ * Writer for XML files. Characters are encoded to UTF-8 straight into a
+ * reusable byte buffer, which is handed as is to the target output stream
+ * when it gets full or when this writer is flushed.
  */
 class Writer {
 
+    /**
+     * Default size of the byte buffer.
+     */
+    static final int DEFAULT_BUFFER_SIZE = 512 * 1024;
+
+    /**
+     * Maximum number of bytes needed to encode a single UTF-16 char.
+     */
+    private static final int MAX_BYTES_PER_CHAR = 3;
+
+    /**
+     * Digits of numbers between 0 and 99, tens and units.
+     */
+    static final byte[] DIGIT_TENS = new byte[100];
+    static final byte[] DIGIT_ONES = new byte[100];
+
+    static {
+        for (int i = 0; i < 100; ++i) {
+            DIGIT_TENS[i] = (byte) ('0' + i / 10);
+            DIGIT_ONES[i] = (byte) ('0' + i % 10);
+        }
+    }
+
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] MIN_LONG = Long.toString(Long.MIN_VALUE).getBytes(StandardCharsets.US_ASCII);
+
     /**
      * Target output stream.
      */
     private final OutputStream os;
     /**
-     * Char buffer.
+     * Byte buffer, exchanged for another one when it is handed to a zip
+     * output writing asynchronously.
      */
-    private final StringBuilder sb;
+    private byte[] buffer;
+    /**
+     * Number of bytes currently held in {@link #buffer}.
+     */
+    private int position;
 
     /**
      * Constructor.
@@ -39,59 +73,161 @@ class Writer {
      * @param os Output stream.
      */
     Writer(OutputStream os) {
+        this(os, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param os Output stream.
+     * @param bufferSize Size of the byte buffer.
+     */
+    Writer(OutputStream os, int bufferSize) {
+        if (bufferSize < 64) {
+            throw new IllegalArgumentException("Buffer size must be at least 64 bytes");
+        }
         this.os = os;
-        this.sb = new StringBuilder(512 * 1024);
+        this.buffer = new byte[bufferSize];
     }
 
     /**
-     * Append a string without escaping.
+     * Append a string with XML escaping. Runs of characters which do not need
+     * escaping are encoded in bulk, and escape sequences are written straight
+     * into the buffer. Invalid characters in XML 1.0 are ignored.
      *
      * @param s String.
      * @return This writer.
      * @throws IOException If an I/O error occurs.
      */
-    Writer append(String s) throws IOException {
-        return append(s, false);
+    Writer appendEscaped(String s) throws IOException {
+        int start = 0;
+        int i = XmlEscapeHelper.indexOfCharToEscape(s, 0);
+        while (i >= 0) {
+            encode(s, start, i);
+            int codePoint = s.codePointAt(i);
+            appendEscaped(codePoint);
+            start = i + Character.charCount(codePoint);
+            i = XmlEscapeHelper.indexOfCharToEscape(s, start);
+        }
+        encode(s, start, s.length());
+        return this;
     }
 
     /**
-     * Append a string with XML escaping.
+     * Append the escaped form of a single code point.
      *
-     * @param s String.
-     * @return This writer.
+     * @param c Character code point.
      * @throws IOException If an I/O error occurs.
      */
-    Writer appendEscaped(String s) throws IOException {
-        return append(s, true);
+    private void appendEscaped(int c) throws IOException {
+        if (!XmlEscapeHelper.isValid(c)) {
+            return;
+        }
+        String entity = XmlEscapeHelper.entity(c);
+        if (entity != null) {
+            encode(entity, 0, entity.length());
+        } else if (c > 0x7e || c < 0x20) {
+            // "&#x" + at most 6 hex digits + ';'
+            ensureCapacity(10);
+            byte[] b = buffer;
+            b[position++] = '&';
+            b[position++] = '#';
+            b[position++] = 'x';
+            int shift = (31 - Integer.numberOfLeadingZeros(c)) & ~3;
+            for (; shift >= 0; shift -= 4) {
+                b[position++] = HEX_DIGITS[(c >> shift) & 0xf];
+            }
+            b[position++] = ';';
+        } else {
+            ensureCapacity(1);
+            buffer[position++] = (byte) c;
+        }
     }
 
     /**
-     * Append a string with or without escaping.
+     * Append a string without escaping.
      *
      * @param s String.
-     * @param escape Whether the string should be escaped or not
      * @return This writer.
      * @throws IOException If an I/O error occurs.
      */
-    private Writer append(String s, boolean escape) throws IOException {
-        if (escape) {
-            XmlEscapeHelper xmlEscapeHelper = new XmlEscapeHelper();
-            sb.append(xmlEscapeHelper.escape(s));
+    Writer append(String s) throws IOException {
+        if (s == null) {
+            // Same as StringBuilder.append((String) null)
+            encode("null", 0, 4);
         } else {
-            sb.append(s);
+            encode(s, 0, s.length());
         }
-        check();
         return this;
     }
 
     /**
-     * Check if the buffer gets full. In this case, flush bytes to the output
-     * stream.
+     * Encode chars of a string to UTF-8 into the buffer.
+     *
+     * @param s String.
+     * @param from Index of the first char to encode.
+     * @param to Index after the last char to encode.
+     * @throws IOException If an I/O error occurs.
+     */
+    private void encode(String s, int from, int to) throws IOException {
+        int i = from;
+        while (i < to) {
+            // Number of chars we can safely encode without checking the
+            // remaining space: keep one slot for a trailing surrogate pair.
+            int room = (buffer.length - position) / MAX_BYTES_PER_CHAR - 1;
+            if (room <= 0) {
+                flush();
+                continue;
+            }
+            int end = Math.min(to, i + room);
+            byte[] b = buffer;
+            int p = position;
+            // ASCII fast path
+            while (i < end) {
+                char c = s.charAt(i);
+                if (c >= 0x80) {
+                    break;
+                }
+                b[p++] = (byte) c;
+                ++i;
+            }
+            while (i < end) {
+                char c = s.charAt(i++);
+                if (c < 0x80) {
+                    b[p++] = (byte) c;
+                } else if (c < 0x800) {
+                    b[p++] = (byte) (0xc0 | (c >> 6));
+                    b[p++] = (byte) (0x80 | (c & 0x3f));
+                } else if (Character.isSurrogate(c)) {
+                    if (Character.isHighSurrogate(c) && i < to && Character.isLowSurrogate(s.charAt(i))) {
+                        int cp = Character.toCodePoint(c, s.charAt(i++));
+                        b[p++] = (byte) (0xf0 | (cp >> 18));
+                        b[p++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                        b[p++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                        b[p++] = (byte) (0x80 | (cp & 0x3f));
+                    } else {
+                        // Unpaired surrogate, same replacement as String.getBytes()
+                        b[p++] = '?';
+                    }
+                } else {
+                    b[p++] = (byte) (0xe0 | (c >> 12));
+                    b[p++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                    b[p++] = (byte) (0x80 | (c & 0x3f));
+                }
+            }
+            position = p;
+        }
+    }
+
+    /**
+     * Make sure the buffer can hold the given number of bytes, flushing it
+     * to the output stream if necessary.
      *
+     * @param length Number of bytes.
      * @throws IOException If an I/O error occurs.
      */
-    private void check() throws IOException {
-        if (sb.capacity() - sb.length() < 1024) {
+    private void ensureCapacity(int length) throws IOException {
+        if (buffer.length - position < length) {
             flush();
         }
     }
@@ -104,8 +240,50 @@ class Writer {
      * @throws IOException If an I/O error occurs.
      */
     Writer append(char c) throws IOException {
-        sb.append(c);
-        check();
+        if (c < 0x80) {
+            ensureCapacity(1);
+            buffer[position++] = (byte) c;
+        } else {
+            encode(String.valueOf(c), 0, 1);
+        }
+        return this;
+    }
+
+    /**
+     * Append bytes which were already encoded, without escaping.
+     *
+     * @param bytes Byte array.
+     * @param offset Index of the first byte.
+     * @param length Number of bytes.
+     * @return This writer.
+     * @throws IOException If an I/O error occurs.
+     */
+    Writer append(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (position == buffer.length) {
+                flush();
+            }
+            int n = Math.min(length, buffer.length - position);
+            System.arraycopy(bytes, offset, buffer, position, n);
+            position += n;
+            offset += n;
+            length -= n;
+        }
+        return this;
+    }
+
+    /**
+     * Append a cell reference, such as {@code B12}.
+     *
+     * @param c Zero-based column number.
+     * @param row Row encoded with {@link AddressCodec#encodeRow(int)}.
+     * @return This writer.
+     * @throws IOException If an I/O error occurs.
+     */
+    Writer appendCellReference(int c, byte[] row) throws IOException {
+        // Column letters and row digits
+        ensureCapacity(3 + row.length);
+        position = AddressCodec.writeReference(buffer, position, c, row);
         return this;
     }
 
@@ -117,9 +295,7 @@ class Writer {
      * @throws IOException If an I/O error occurs.
      */
     Writer append(int n) throws IOException {
-        sb.append(n);
-        check();
-        return this;
+        return append((long) n);
     }
 
     /**
@@ -130,31 +306,80 @@ class Writer {
      * @throws IOException If an I/O error occurs.
      */
     Writer append(long n) throws IOException {
-        sb.append(n);
-        check();
+        if (n == Long.MIN_VALUE) {
+            ensureCapacity(MIN_LONG.length);
+            System.arraycopy(MIN_LONG, 0, buffer, position, MIN_LONG.length);
+            position += MIN_LONG.length;
+            return this;
+        }
+        // Sign and at most 19 digits
+        ensureCapacity(20);
+        if (n < 0) {
+            buffer[position++] = '-';
+            n = -n;
+        }
+        int end = position + digitCount(n);
+        int p = end;
+        byte[] b = buffer;
+        while (n >= 100) {
+            int q = (int) (n % 100);
+            n /= 100;
+            b[--p] = DIGIT_ONES[q];
+            b[--p] = DIGIT_TENS[q];
+        }
+        int q = (int) n;
+        b[--p] = DIGIT_ONES[q];
+        if (q >= 10) {
+            b[--p] = DIGIT_TENS[q];
+        }
+        position = end;
         return this;
     }
 
     /**
-     * Append a double.
+     * Count decimal digits of a non-negative long.
+     *
+     * @param n Non-negative long.
+     * @return Number of digits.
+     */
+    static int digitCount(long n) {
+        long p = 10;
+        for (int i = 1; i < 19; ++i) {
+            if (n < p) {
+                return i;
+            }
+            p *= 10;
+        }
+        return 19;
+    }
+
+    /**
+     * Append a double, with the shortest representation which parses back to
+     * the same value, see {@link DoubleFormatter}.
      *
      * @param n Double.
      * @return This writer.
      * @throws IOException If an I/O error occurs.
      */
     Writer append(double n) throws IOException {
-        sb.append(n);
-        check();
+        ensureCapacity(DoubleFormatter.MAX_LENGTH);
+        position = DoubleFormatter.format(buffer, position, n);
         return this;
     }
 
     /**
-     * Flush this writer.
+     * Flush this writer: buffered bytes are written to the output stream.
      *
      * @throws IOException If an I/O error occurs.
      */
     void flush() throws IOException {
-        os.write(sb.toString().getBytes(StandardCharsets.UTF_8));
-        sb.setLength(0);
+        if (position > 0) {
+            if (os instanceof ZipOutput) {
+                buffer = ((ZipOutput) os).writeBuffer(buffer, position);
+            } else {
+                os.write(buffer, 0, position);
+            }
+            position = 0;
+        }
     }
 }
@@ -5,6 +5,22 @@ package org.dhatim.fastexcel;
  */
 public class XmlEscapeHelper {
 
+	/**
+	 * Printable ASCII characters which are written as is.
+	 */
+	private static final boolean[] UNESCAPED = new boolean[0x80];
+
+	static {
+		for (int c = 0x20; c <= 0x7e; ++c) {
+			UNESCAPED[c] = true;
+		}
+		UNESCAPED['<'] = false;
+		UNESCAPED['>'] = false;
+		UNESCAPED['&'] = false;
+		UNESCAPED['\''] = false;
+		UNESCAPED['"'] = false;
+	}
+
 	/**
 	 * Apply XML escaping to a String.
 	 * Invalid characters in XML 1.0 are ignored.
@@ -13,29 +29,61 @@ public class XmlEscapeHelper {
 	 * @return escaped text
 	 */
 	public String escape(final String text) {
-		int offset = 0;
-		StringBuilder sb = new StringBuilder();
+		int offset = indexOfCharToEscape(text, 0);
+		if (offset < 0) {
+			return text;
+		}
+		StringBuilder sb = new StringBuilder(text.length() + 16);
+		sb.append(text, 0, offset);
 		while (offset < text.length()) {
 			int codePoint = text.codePointAt(offset);
-			sb.append(escape(codePoint));
+			escape(sb, codePoint);
 			offset += Character.charCount(codePoint);
+			int next = indexOfCharToEscape(text, offset);
+			int end = next < 0 ? text.length() : next;
+			sb.append(text, offset, end);
+			offset = end;
 		}
 		return sb.toString();
 	}
 
 	/**
-	 * Escape char with XML escaping.
-	 * Invalid characters in XML 1.0 are ignored.
+	 * Find the first character which must be escaped.
+	 *
+	 * @param text Text to scan.
+	 * @param from Index where scanning starts.
+	 * @return Index of the first character to escape, or -1 if none.
+	 */
+	static int indexOfCharToEscape(String text, int from) {
+		for (int i = from; i < text.length(); ++i) {
+			char c = text.charAt(i);
+			if (c >= 0x80 || !UNESCAPED[c]) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Check if the given code point is allowed in XML 1.0.
 	 *
 	 * @param c Character code point.
+	 * @return {@code true} if the code point is valid.
 	 */
-	private String escape(int c) {
-		if (!(c == 0x9 || c == 0xa || c == 0xD
+	static boolean isValid(int c) {
+		return c == 0x9 || c == 0xa || c == 0xD
 				|| (c >= 0x20 && c <= 0xd7ff)
 				|| (c >= 0xe000 && c <= 0xfffd)
-				|| (c >= 0x10000 && c <= 0x10ffff))) {
-			return "";
-		}
+				|| (c >= 0x10000 && c <= 0x10ffff);
+	}
+
+	/**
+	 * Get the entity replacing a markup character.
+	 *
+	 * @param c Character code point.
+	 * @return Entity, or {@code null} if this is not a markup character.
+	 */
+	static String entity(int c) {
 		switch (c) {
 			case '<':
 				return "&lt;";
@@ -48,11 +96,28 @@ public class XmlEscapeHelper {
 			case '"':
 				return "&quot;";
 			default:
-				if (c > 0x7e || c < 0x20) {
-					return "&#x".concat(Integer.toHexString(c)).concat(";");
-				} else {
-					return String.valueOf((char) c);
-				}
+				return null;
+		}
+	}
+
+	/**
+	 * Escape char with XML escaping.
+	 * Invalid characters in XML 1.0 are ignored.
+	 *
+	 * @param sb Target string builder.
+	 * @param c Character code point.
+	 */
+	private static void escape(StringBuilder sb, int c) {
+		if (!isValid(c)) {
+			return;
+		}
+		String entity = entity(c);
+		if (entity != null) {
+			sb.append(entity);
+		} else if (c > 0x7e || c < 0x20) {
+			sb.append("&#x").append(Integer.toHexString(c)).append(';');
+		} else {
+			sb.append((char) c);
 		}
 	}
 }
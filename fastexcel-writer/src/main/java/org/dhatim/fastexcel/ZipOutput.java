@@ -0,0 +1,431 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * ZIP64 output stream compatible with MS Excel. Entries are either deflated
+ * while they are written ({@link #putNextEntry(String)}, {@link #closeEntry()}),
+ * or copied from a {@link SpooledEntry} compressed beforehand.
+ * <p>
+ * Every entry is stored the same way: a local file header without CRC and
+ * sizes, the deflated data, then a data descriptor holding CRC and sizes.
+ * <p>
+ * With {@link #setAsync(int)}, compression and writes to the target stream
+ * run on a dedicated thread, in the order of calls.
+ */
+class ZipOutput extends OutputStream {
+
+    private static final int PK0102 = 0x02014b50;
+    private static final int PK0304 = 0x04034b50;
+    private static final int PK0506 = 0x06054b50;
+    private static final int PK0708 = 0x08074b50;
+
+    private static final int VERSION_20 = 20;
+    private static final int VERSION_45 = 45;
+    private static final int DATA_DESCRIPTOR_USED = 0x08;
+    private static final int ZIP64_FIELD = 0x0001;
+    private static final long MAX32 = 0xffffffffL;
+
+    /**
+     * Entry recorded for the central directory.
+     */
+    private static class Entry {
+        final byte[] name;
+        final long offset;
+        long crc;
+        long size;
+        long compressedSize;
+
+        Entry(byte[] name, long offset) {
+            this.name = name;
+            this.offset = offset;
+        }
+    }
+
+    private final OutputStream out;
+    private EntryDeflater deflater;
+    private final List<Entry> entries = new ArrayList<>();
+    /**
+     * Buffer for headers, flushed to {@link #out} in a single write.
+     */
+    private final byte[] header = new byte[1024];
+    private int headerLength;
+    private Entry current;
+    /**
+     * Number of bytes written to {@link #out}.
+     */
+    private long written;
+    private boolean finished;
+    /**
+     * Thread running compression and writes, {@code null} if they run on
+     * the calling thread.
+     */
+    private AsyncOutput async;
+
+    /**
+     * Constructor.
+     *
+     * @param out Target stream.
+     */
+    ZipOutput(OutputStream out) {
+        this.out = out;
+        this.deflater = new SerialEntryDeflater(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Replace the compressor of entries deflated by this stream.
+     *
+     * @param deflater New compressor.
+     */
+    void setDeflater(EntryDeflater deflater) {
+        if (async != null) {
+            callAsync(() -> replaceDeflater(deflater));
+        } else {
+            replaceDeflater(deflater);
+        }
+    }
+
+    private void replaceDeflater(EntryDeflater deflater) {
+        if (current != null) {
+            throw new IllegalStateException("Cannot change compressor while an entry is being written");
+        }
+        this.deflater.close();
+        this.deflater = deflater;
+    }
+
+    /**
+     * Set the compression level of entries deflated by this stream.
+     *
+     * @param level Compression level (0-9).
+     */
+    void setLevel(int level) {
+        if (async != null) {
+            callAsync(() -> deflater.setLevel(level));
+        } else {
+            deflater.setLevel(level);
+        }
+    }
+
+    /**
+     * Compress and write entries on a dedicated thread from now on. Calls
+     * then only queue buffers and operations, and wait if the queue is full.
+     * Failures are thrown by the calls following them.
+     *
+     * @param queueDepth Maximum number of queued buffers and operations.
+     */
+    void setAsync(int queueDepth) {
+        if (async != null || current != null || !entries.isEmpty()) {
+            throw new IllegalStateException("Asynchronous output must be enabled before any file is written");
+        }
+        async = new AsyncOutput(queueDepth, (b, off, len) -> deflater.write(b, off, len));
+    }
+
+    /**
+     * Get statistics of asynchronous output.
+     *
+     * @return Statistics, {@code null} if output is synchronous.
+     */
+    AsyncOutputStats getAsyncStats() {
+        return async == null ? null : async.getStats();
+    }
+
+    /**
+     * Write a full buffer of the content of the current entry.
+     *
+     * @param buffer Bytes to write.
+     * @param length Number of bytes.
+     * @return Buffer to fill next: the given one unless output is
+     * asynchronous, in which case it must not be modified anymore.
+     * @throws IOException If an I/O error occurs.
+     */
+    byte[] writeBuffer(byte[] buffer, int length) throws IOException {
+        if (async != null) {
+            return async.swap(buffer, length);
+        }
+        deflater.write(buffer, 0, length);
+        return buffer;
+    }
+
+    private void callAsync(AsyncOutput.Operation operation) {
+        try {
+            async.call(operation);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Begin a new entry. Subsequent writes make up the content of this entry.
+     *
+     * @param name Entry name.
+     * @throws IOException If an I/O error occurs.
+     */
+    void putNextEntry(String name) throws IOException {
+        if (async != null) {
+            async.execute(() -> beginEntry(name));
+        } else {
+            beginEntry(name);
+        }
+    }
+
+    private void beginEntry(String name) throws IOException {
+        if (current != null) {
+            endEntry();
+        }
+        current = writeLocalFileHeader(name);
+        deflater.begin(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (async != null) {
+            async.write(b, off, len);
+        } else {
+            deflater.write(b, off, len);
+        }
+    }
+
+    /**
+     * Complete the current entry.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    void closeEntry() throws IOException {
+        if (async != null) {
+            async.execute(this::endEntry);
+        } else {
+            endEntry();
+        }
+    }
+
+    private void endEntry() throws IOException {
+        if (current == null) {
+            throw new IllegalStateException("No current entry");
+        }
+        deflater.finish();
+        current.crc = deflater.getCrc();
+        current.size = deflater.getSize();
+        current.compressedSize = deflater.getCompressedSize();
+        written += current.compressedSize;
+        writeDataDescriptor(current);
+        current = null;
+    }
+
+    /**
+     * Add an entry compressed beforehand. The current entry, if any, is
+     * closed first.
+     *
+     * @param name Entry name.
+     * @param entry Finished entry.
+     * @throws IOException If an I/O error occurs.
+     */
+    void writeEntry(String name, SpooledEntry entry) throws IOException {
+        if (async != null) {
+            // The entry is released by the caller, so it is copied now
+            async.call(() -> copyEntry(name, entry));
+        } else {
+            copyEntry(name, entry);
+        }
+    }
+
+    private void copyEntry(String name, SpooledEntry entry) throws IOException {
+        if (current != null) {
+            endEntry();
+        }
+        Entry e = writeLocalFileHeader(name);
+        e.crc = entry.getCrc();
+        e.size = entry.getSize();
+        e.compressedSize = entry.getCompressedSize();
+        entry.writeCompressedTo(out);
+        written += e.compressedSize;
+        writeDataDescriptor(e);
+    }
+
+    /**
+     * Write the central directory. The target stream is not closed.
+     *
+     * @throws IOException If an I/O error occurs.
+     */
+    void finish() throws IOException {
+        if (async != null) {
+            try {
+                if (!finished) {
+                    async.call(this::writeCentralDirectory);
+                }
+            } finally {
+                async.shutdown();
+            }
+        } else {
+            writeCentralDirectory();
+        }
+    }
+
+    /**
+     * Stop asynchronous output, if enabled, without writing the central
+     * directory. Failures of queued operations are ignored.
+     */
+    void abort() {
+        if (async != null) {
+            async.abort();
+        }
+    }
+
+    private void writeCentralDirectory() throws IOException {
+        if (finished) {
+            return;
+        }
+        if (current != null) {
+            endEntry();
+        }
+        long offset = written;
+        for (Entry entry : entries) {
+            writeCentralDirectoryHeader(entry);
+        }
+        long length = written + headerLength - offset;
+        writeSignature(PK0506);         // "PK\005\006"
+        writeShort(0);                  // number of this disk
+        writeShort(0);                  // central directory start disk
+        writeShort(entries.size());     // number of directory entries on disk
+        writeShort(entries.size());     // total number of directory entries
+        writeInt(length);               // length of central directory
+        writeInt(offset);               // offset of central directory
+        writeShort(0);                  // comment length
+        flushHeader();
+        finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+        deflater.close();
+        out.close();
+    }
+
+    private Entry writeLocalFileHeader(String name) throws IOException {
+        Entry entry = new Entry(name.getBytes(StandardCharsets.UTF_8), written);
+        writeSignature(PK0304);         // "PK\003\004"
+        writeShort(VERSION_45);         // version required: 4.5
+        writeShort(DATA_DESCRIPTOR_USED); // flags: 8 = data descriptor used
+        writeShort(ZipEntry.DEFLATED);  // compression method: 8 = deflate
+        writeInt(0);                    // file modification time & date
+        writeInt(0);                    // CRC-32
+        writeInt(0);                    // compressed file size
+        writeInt(0);                    // uncompressed file size
+        writeShort(entry.name.length);  // filename length
+        writeShort(0);                  // extra field length
+        writeBytes(entry.name);
+        flushHeader();
+        entries.add(entry);
+        return entry;
+    }
+
+    private void writeDataDescriptor(Entry entry) throws IOException {
+        writeSignature(PK0708);         // "PK\007\008"
+        writeInt(entry.crc);            // CRC-32
+        writeLong(entry.compressedSize); // compressed size (zip64)
+        writeLong(entry.size);          // uncompressed size (zip64)
+        flushHeader();
+    }
+
+    private void writeCentralDirectoryHeader(Entry entry) throws IOException {
+        boolean useZip64 = entry.size > MAX32;
+        writeSignature(PK0102);         // "PK\001\002"
+        writeShort(VERSION_45);         // version made by: 4.5
+        writeShort(useZip64 ? VERSION_45 : VERSION_20); // version required
+        writeShort(DATA_DESCRIPTOR_USED); // flags: 8 = data descriptor used
+        writeShort(ZipEntry.DEFLATED);  // compression method: 8 = deflate
+        writeInt(0);                    // file modification time & date
+        writeInt(entry.crc);            // CRC-32
+        writeInt(entry.compressedSize); // compressed size
+        writeInt(useZip64 ? MAX32 : entry.size); // uncompressed size
+        writeShort(entry.name.length);  // filename length
+        writeShort(useZip64 ? 2 + 2 + 8 : 0); // extra field length
+        writeShort(0);                  // comment length
+        writeShort(0);                  // disk number where file starts
+        writeShort(0);                  // internal file attributes
+        writeInt(0);                    // external file attributes
+        writeInt(entry.offset);         // local file header offset
+        writeBytes(entry.name);
+        if (useZip64) {
+            writeShort(ZIP64_FIELD);    // ZIP64 extra field signature
+            writeShort(8);              // size of extra field
+            writeLong(entry.size);      // uncompressed size
+        }
+    }
+
+    private void writeSignature(int signature) throws IOException {
+        writeInt(signature & MAX32);
+    }
+
+    private void writeShort(int v) throws IOException {
+        ensureHeaderCapacity(2);
+        header[headerLength++] = (byte) v;
+        header[headerLength++] = (byte) (v >>> 8);
+    }
+
+    private void writeInt(long v) throws IOException {
+        ensureHeaderCapacity(4);
+        for (int i = 0; i < 4; ++i) {
+            header[headerLength++] = (byte) (v >>> (8 * i));
+        }
+    }
+
+    private void writeLong(long v) throws IOException {
+        ensureHeaderCapacity(8);
+        for (int i = 0; i < 8; ++i) {
+            header[headerLength++] = (byte) (v >>> (8 * i));
+        }
+    }
+
+    private void writeBytes(byte[] b) throws IOException {
+        if (b.length > header.length - headerLength) {
+            flushHeader();
+            out.write(b);
+            written += b.length;
+        } else {
+            System.arraycopy(b, 0, header, headerLength, b.length);
+            headerLength += b.length;
+        }
+    }
+
+    private void ensureHeaderCapacity(int length) throws IOException {
+        if (header.length - headerLength < length) {
+            flushHeader();
+        }
+    }
+
+    private void flushHeader() throws IOException {
+        if (headerLength > 0) {
+            out.write(header, 0, headerLength);
+            written += headerLength;
+            headerLength = 0;
+        }
+    }
+}
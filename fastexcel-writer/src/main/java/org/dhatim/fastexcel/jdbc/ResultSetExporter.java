@@ -0,0 +1,280 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel.jdbc;
+
+import org.dhatim.fastexcel.RowWriter;
+import org.dhatim.fastexcel.TimestampUtil;
+import org.dhatim.fastexcel.Workbook;
+import org.dhatim.fastexcel.Worksheet;
+
+import java.io.IOException;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.OffsetDateTime;
+import java.util.Objects;
+
+/**
+ * Export of JDBC result sets to worksheets. Column types are read from the
+ * {@link ResultSetMetaData} once, and each row is then serialized with the
+ * {@link Worksheet#rowWriter() row writer} as soon as it is read, so memory
+ * usage does not depend on the number of rows.
+ * <p>
+ * SQL types are mapped as follows:
+ * <ul>
+ * <li>{@code BIT} and {@code BOOLEAN} to booleans;</li>
+ * <li>integer types to integers, and {@code REAL}, {@code FLOAT} and
+ * {@code DOUBLE} to doubles;</li>
+ * <li>{@code DECIMAL} and {@code NUMERIC} to numbers written with all their
+ * digits;</li>
+ * <li>{@code DATE}, {@code TIME}, {@code TIMESTAMP} and
+ * {@code TIMESTAMP WITH TIME ZONE} to serial numbers with a date or time
+ * format, timestamps with a time zone being written in their own offset;</li>
+ * <li>other types to strings, stored in the shared string table or inline
+ * according to the {@link org.dhatim.fastexcel.StringStoragePolicy} of the
+ * worksheet.</li>
+ * </ul>
+ * SQL {@code NULL} values leave cells empty. When a worksheet is full, it is
+ * finished and rows continue on a new worksheet, named after the first one
+ * by {@link Workbook#newWorksheet(String)}.
+ * <pre>{@code
+ * try (Statement stmt = connection.createStatement();
+ *      ResultSet rs = stmt.executeQuery("SELECT * FROM trades")) {
+ *     new ResultSetExporter(wb, "Trades").export(rs);
+ * }
+ * }</pre>
+ */
+public class ResultSetExporter {
+
+    private final Workbook workbook;
+    private final String sheetName;
+    private boolean header = true;
+    private int maxRowsPerWorksheet = Worksheet.MAX_ROWS;
+    private String dateFormat = "yyyy-mm-dd";
+    private String timeFormat = "hh:mm:ss";
+    private String timestampFormat = "yyyy-mm-dd hh:mm:ss";
+
+    /**
+     * Writes one cell of the current row.
+     */
+    @FunctionalInterface
+    private interface ColumnWriter {
+        void write(ResultSet rs, RowWriter w) throws SQLException, IOException;
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param workbook Workbook where worksheets are created.
+     * @param sheetName Name of the worksheet receiving rows.
+     */
+    public ResultSetExporter(Workbook workbook, String sheetName) {
+        this.workbook = Objects.requireNonNull(workbook);
+        this.sheetName = Objects.requireNonNull(sheetName);
+    }
+
+    /**
+     * Do not write column labels in the first row of each worksheet.
+     *
+     * @return This exporter.
+     */
+    public ResultSetExporter withoutHeader() {
+        this.header = false;
+        return this;
+    }
+
+    /**
+     * Set the maximum number of rows of each worksheet, including the header
+     * row. Rows continue on a new worksheet beyond this limit.
+     *
+     * @param maxRows Maximum number of rows, between 2 and
+     * {@link Worksheet#MAX_ROWS}.
+     * @return This exporter.
+     */
+    public ResultSetExporter maxRowsPerWorksheet(int maxRows) {
+        if (maxRows < 2 || maxRows > Worksheet.MAX_ROWS) {
+            throw new IllegalArgumentException("Invalid number of rows per worksheet: " + maxRows);
+        }
+        this.maxRowsPerWorksheet = maxRows;
+        return this;
+    }
+
+    /**
+     * Set the numbering formats of date and time columns.
+     *
+     * @param date Format of {@code DATE} columns.
+     * @param time Format of {@code TIME} columns.
+     * @param timestamp Format of {@code TIMESTAMP} columns.
+     * @return This exporter.
+     */
+    public ResultSetExporter dateFormats(String date, String time, String timestamp) {
+        this.dateFormat = Objects.requireNonNull(date);
+        this.timeFormat = Objects.requireNonNull(time);
+        this.timestampFormat = Objects.requireNonNull(timestamp);
+        return this;
+    }
+
+    /**
+     * Write all the remaining rows of a result set. The last worksheet is
+     * left open, so that more rows or cells can be added to it.
+     *
+     * @param rs Result set, positioned before its first row to export.
+     * @return Last worksheet written to.
+     * @throws SQLException If the result set cannot be read.
+     * @throws IOException If an I/O error occurs.
+     */
+    public Worksheet export(ResultSet rs) throws SQLException, IOException {
+        ResultSetMetaData metaData = rs.getMetaData();
+        int nbColumns = metaData.getColumnCount();
+        if (nbColumns > Worksheet.MAX_COLS) {
+            throw new IllegalArgumentException("Too many columns: " + nbColumns);
+        }
+        String[] labels = new String[nbColumns];
+        ColumnWriter[] columns = new ColumnWriter[nbColumns];
+        for (int i = 0; i < nbColumns; ++i) {
+            labels[i] = metaData.getColumnLabel(i + 1);
+            columns[i] = newColumnWriter(i + 1, metaData.getColumnType(i + 1));
+        }
+
+        Worksheet ws = workbook.newWorksheet(sheetName);
+        RowWriter w = startWorksheet(ws, labels);
+        int rows = header ? 1 : 0;
+        while (rs.next()) {
+            if (rows == maxRowsPerWorksheet) {
+                ws.finish();
+                ws = workbook.newWorksheet(sheetName);
+                w = startWorksheet(ws, labels);
+                rows = header ? 1 : 0;
+            }
+            w.nextRow();
+            for (ColumnWriter column : columns) {
+                column.write(rs, w);
+            }
+            ++rows;
+        }
+        return ws;
+    }
+
+    private RowWriter startWorksheet(Worksheet ws, String[] labels) throws IOException {
+        RowWriter w = ws.rowWriter();
+        if (header) {
+            w.nextRow();
+            for (String label : labels) {
+                w.cell(label);
+            }
+        }
+        return w;
+    }
+
+    /**
+     * Create the writer of a column, reading values with the getter matching
+     * its SQL type.
+     *
+     * @param c One-based column index.
+     * @param sqlType SQL type, see {@link Types}.
+     * @return Column writer.
+     */
+    private ColumnWriter newColumnWriter(int c, int sqlType) {
+        switch (sqlType) {
+            case Types.BIT:
+            case Types.BOOLEAN:
+                return (rs, w) -> {
+                    boolean value = rs.getBoolean(c);
+                    if (rs.wasNull()) {
+                        w.skip();
+                    } else {
+                        w.cell(value);
+                    }
+                };
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+                return (rs, w) -> {
+                    long value = rs.getLong(c);
+                    if (rs.wasNull()) {
+                        w.skip();
+                    } else {
+                        w.cell(value);
+                    }
+                };
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return (rs, w) -> {
+                    double value = rs.getDouble(c);
+                    if (rs.wasNull()) {
+                        w.skip();
+                    } else {
+                        w.cell(value);
+                    }
+                };
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return (rs, w) -> w.cell(rs.getBigDecimal(c), 0);
+            case Types.DATE: {
+                int style = workbook.newStyle().format(dateFormat).id();
+                return (rs, w) -> {
+                    Date value = rs.getDate(c);
+                    if (value == null) {
+                        w.skip();
+                    } else {
+                        w.cell(TimestampUtil.toSerial(value.toLocalDate()), style);
+                    }
+                };
+            }
+            case Types.TIME: {
+                int style = workbook.newStyle().format(timeFormat).id();
+                return (rs, w) -> {
+                    Time value = rs.getTime(c);
+                    if (value == null) {
+                        w.skip();
+                    } else {
+                        w.cell(value.toLocalTime().toSecondOfDay() / (double) TimestampUtil.SECONDS_PER_DAY, style);
+                    }
+                };
+            }
+            case Types.TIMESTAMP: {
+                int style = workbook.newStyle().format(timestampFormat).id();
+                return (rs, w) -> {
+                    Timestamp value = rs.getTimestamp(c);
+                    if (value == null) {
+                        w.skip();
+                    } else {
+                        w.cell(TimestampUtil.toSerial(value.toLocalDateTime()), style);
+                    }
+                };
+            }
+            case Types.TIMESTAMP_WITH_TIMEZONE: {
+                int style = workbook.newStyle().format(timestampFormat).id();
+                return (rs, w) -> {
+                    OffsetDateTime value = rs.getObject(c, OffsetDateTime.class);
+                    if (value == null) {
+                        w.skip();
+                    } else {
+                        w.cell(TimestampUtil.toSerial(value.toLocalDateTime()), style);
+                    }
+                };
+            }
+            default:
+                return (rs, w) -> w.cell(rs.getString(c));
+        }
+    }
+}
@@ -15,17 +15,41 @@
  */
 package org.dhatim.fastexcel;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.output.NullOutputStream;
 import org.junit.jupiter.api.Test;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.*;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.*;
@@ -90,6 +114,85 @@ class CorrectnessTest {
             wb.newWorksheet("abc");
             ws = wb.newWorksheet("abc");
             assertThat(ws.getName()).isEqualTo("abc_1");
+            ws = wb.newWorksheet("abc");
+            assertThat(ws.getName()).isEqualTo("abc_2");
+        });
+    }
+
+    public static class Measure {
+        private final float ratio;
+
+        Measure(float ratio) {
+            this.ratio = ratio;
+        }
+
+        public float getRatio() {
+            return ratio;
+        }
+    }
+
+    @Test
+    void rowSchemaWritesFloatsLikeBoxedFloats() throws Exception {
+        RowSchema<Measure> schema = RowSchema.builder(Measure.class).property("ratio").withoutHeader().build();
+        byte[] data = writeWorkbook(wb -> {
+            Worksheet ws = wb.newWorksheet("Sheet 1");
+            try {
+                ws.writeRecords(schema, Collections.singletonList(new Measure(0.1f)));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            ws.value(1, 0, Float.valueOf(0.1f));
+        });
+        String sheet = new String(unzip(data).get("xl/worksheets/sheet1.xml"), StandardCharsets.UTF_8);
+        assertThat(sheet).contains("<c r=\"A1\" t=\"n\"><v>0.1</v></c>", "<c r=\"A2\" t=\"n\"><v>0.1</v></c>");
+    }
+
+    @Test
+    void rowSchemaChecks() throws Exception {
+        assertThrows(IllegalArgumentException.class, () -> RowSchema.builder(Object.class).property("missing"));
+        assertThrows(IllegalArgumentException.class, () -> RowSchema.builder(Object.class).property("class"));
+        assertThrows(IllegalStateException.class, () -> RowSchema.builder(Object.class).build());
+        RowSchema<Object> schema = RowSchema.builder(Object.class)
+                .textColumn("Text", o -> null)
+                .nulls(RowSchema.NullPolicy.REJECT)
+                .build();
+        assertThrows(IllegalArgumentException.class, () -> writeWorkbook(wb -> {
+            try {
+                wb.newWorksheet("Sheet 1").writeRecords(schema, Collections.singletonList(new Object()));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }));
+    }
+
+    @Test
+    void parallelRegionChecks() throws Exception {
+        writeWorkbook(wb -> {
+            Worksheet ws = wb.newWorksheet("Sheet 1");
+            ws.value(5, 0, "Set");
+            assertThrows(IllegalArgumentException.class, () -> ws.parallelRegion(10, 10));
+            assertThrows(IllegalArgumentException.class, () -> ws.parallelRegion(10, Worksheet.MAX_ROWS + 1));
+            assertThrows(IllegalStateException.class, () -> ws.parallelRegion(5, 10));
+            ParallelRegion region = ws.parallelRegion(10, 20);
+            assertThrows(IllegalStateException.class, () -> ws.parallelRegion(15, 25));
+            assertThrows(IllegalStateException.class, () -> ws.value(12, 0, "Inside"));
+            assertThrows(IllegalStateException.class, () -> ws.writeColumn(0, 8, new double[5], 0));
+            try {
+                RowWriter w = region.rowWriter();
+                for (int r = 10; r < 20; ++r) {
+                    w.nextRow().cell(r);
+                }
+                assertThrows(IllegalArgumentException.class, w::nextRow);
+                region.close();
+                assertThrows(IllegalStateException.class, region::rowWriter);
+                // The row writer of the worksheet skips the region
+                RowWriter main = ws.rowWriter();
+                assertThat(main.nextRow().getRow()).isEqualTo(6);
+                main.nextRow().nextRow().nextRow();
+                assertThat(main.nextRow().getRow()).isEqualTo(20);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
         });
     }
 
@@ -263,6 +366,34 @@ class CorrectnessTest {
         // }
     }
 
+    @Test
+    void loneSurrogatesAreDroppedFromSharedStrings() throws IOException {
+        byte[] data = writeWorkbook(wb -> {
+            Worksheet ws = wb.newWorksheet("Sheet 1");
+            for (int r = 0; r < 100; ++r) {
+                ws.value(r, 0, "a\uD800b");
+                ws.value(r, 1, "c\uDE00");
+                ws.value(r, 2, "\uD83D\uDE00");
+            }
+        });
+        String sst = new String(unzip(data).get("xl/sharedStrings.xml"), StandardCharsets.UTF_8);
+        assertThat(sst).contains("uniqueCount=\"3\"");
+        assertThat(sst).contains("<si><t>ab</t></si>", "<si><t>c</t></si>", "<si><t>&#x1f600;</t></si>");
+    }
+
+    @Test
+    void sharedStringCellsResolveValues() throws IOException {
+        writeWorkbook(wb -> {
+            Worksheet ws = wb.newWorksheet("Sheet 1");
+            for (int r = 0; r < 1000; ++r) {
+                ws.value(r, 0, "Value " + (r % 300));
+            }
+            for (int r = 0; r < 1000; ++r) {
+                assertThat(ws.value(r, 0)).isEqualTo("Value " + (r % 300));
+            }
+        });
+    }
+
     @Test
     void shouldBeAbleToNullifyCell() throws IOException {
         writeWorkbook(wb -> {
@@ -572,4 +703,503 @@ class CorrectnessTest {
         assertEquals(25569.083, TimestampUtil.convertZonedDateTime(two), 0.001);
     }
 
+    @Test
+    void concurrentConversionsInSeveralZones() throws Exception {
+        String[] zones = {"Europe/Paris", "America/New_York", "Australia/Sydney", "+05:30"};
+        long summer = Instant.parse("2023-07-01T12:00:00Z").toEpochMilli();
+        long winter = Instant.parse("2023-01-01T12:00:00Z").toEpochMilli();
+        ExecutorService executor = Executors.newFixedThreadPool(zones.length);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (String id : zones) {
+                ZoneId zone = ZoneId.of(id);
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 100_000; ++i) {
+                        long m = (i % 2 == 0 ? summer : winter) + i * 1000L;
+                        assertThat(TimestampUtil.toSerial(m, zone))
+                                .isEqualTo(TimestampUtil.toSerial(Instant.ofEpochMilli(m).atZone(zone).toLocalDateTime()));
+                    }
+                }));
+            }
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void worksheetConvertsDatesInZoneAtCreation() throws Exception {
+        TimeZone defaultZone = TimeZone.getDefault();
+        Date date = Date.from(Instant.parse("2023-07-01T12:00:00Z"));
+        byte[] data;
+        try {
+            TimeZone.setDefault(TimeZone.getTimeZone("Europe/Paris"));
+            data = writeWorkbook(wb -> {
+                Worksheet ws = wb.newWorksheet("Sheet 1");
+                TimeZone.setDefault(TimeZone.getTimeZone("UTC"));
+                ws.value(0, 0, date);
+            });
+        } finally {
+            TimeZone.setDefault(defaultZone);
+        }
+        String sheet = new String(unzip(data).get("xl/worksheets/sheet1.xml"), StandardCharsets.UTF_8);
+        // 14:00 in Paris
+        assertThat(sheet).contains("<v>45108.58333");
+    }
+
+    @Test
+    void serialNumbersMatchCalendarFields() {
+        LocalDate excelEpoch = LocalDate.of(1899, Month.DECEMBER, 31);
+        Random random = new Random(42);
+        long from = LocalDate.of(1900, Month.JANUARY, 2).toEpochDay() * TimestampUtil.DAY_MILLISECONDS;
+        long to = LocalDate.of(2200, Month.JANUARY, 1).toEpochDay() * TimestampUtil.DAY_MILLISECONDS;
+        for (String id : new String[]{"UTC", "+05:30", "Europe/Paris", "America/New_York", "Australia/Lord_Howe"}) {
+            ZoneId zone = ZoneId.of(id);
+            Calendar cal = Calendar.getInstance(TimeZone.getTimeZone(zone));
+            List<Long> millis = new ArrayList<>();
+            for (int i = 0; i < 20_000; ++i) {
+                millis.add(from + (long) (random.nextDouble() * (to - from)));
+            }
+            // Around each transition, and in an order that keeps switching between offsets
+            zone.getRules().getTransitions().forEach(t -> {
+                long at = t.toEpochSecond() * 1000;
+                millis.addAll(Arrays.asList(at - 1, at, at + 1, at - 3_600_000, at + 3_600_000));
+            });
+            for (long m : millis) {
+                cal.setTimeInMillis(m);
+                LocalDateTime local = LocalDateTime.of(cal.get(Calendar.YEAR), cal.get(Calendar.MONTH) + 1,
+                        cal.get(Calendar.DAY_OF_MONTH), cal.get(Calendar.HOUR_OF_DAY), cal.get(Calendar.MINUTE),
+                        cal.get(Calendar.SECOND), cal.get(Calendar.MILLISECOND) * 1_000_000);
+                long day = excelEpoch.until(local.toLocalDate(), java.time.temporal.ChronoUnit.DAYS);
+                double expected = day + local.toLocalTime().toNanoOfDay() / 1_000_000 / (double) TimestampUtil.DAY_MILLISECONDS;
+                if (local.getYear() < 1900) {
+                    expected = -1;
+                } else if (expected >= 60) {
+                    expected++;
+                }
+                assertThat(TimestampUtil.toSerial(m, zone)).as("%s at %d", id, m).isEqualTo(expected);
+                assertThat(TimestampUtil.toSerial(Instant.ofEpochMilli(m), zone)).isEqualTo(expected);
+                assertThat(TimestampUtil.toSerial(local)).isEqualTo(expected);
+                assertThat(TimestampUtil.toSerial(local.toLocalDate())).isEqualTo(expected < 0 ? expected : Math.floor(expected));
+            }
+        }
+        assertThat(TimestampUtil.toSerial(LocalDate.of(1899, Month.DECEMBER, 31))).isEqualTo(-1);
+        assertThat(TimestampUtil.toSerial(-2208988800001L, ZoneOffset.UTC)).isEqualTo(-1);
+        assertThat(TimestampUtil.toSerial(-2208988800000L, ZoneOffset.UTC)).isEqualTo(1);
+        assertThat(TimestampUtil.toSerial(LocalDate.of(1900, Month.MARCH, 1))).isEqualTo(61);
+        assertThat(TimestampUtil.toSerial(LocalDate.of(9999, Month.DECEMBER, 31))).isEqualTo(2958465);
+        assertThat(TimestampUtil.toSerial(new Date(0))).isEqualTo(TimestampUtil.toSerial(0, ZoneId.systemDefault()));
+    }
+
+    @Test
+    void combineCrc() {
+        byte[] data = new byte[100_000];
+        new Random(42).nextBytes(data);
+        CRC32 whole = new CRC32();
+        whole.update(data);
+        for (int split : new int[]{0, 1, 32_768, 99_999, 100_000}) {
+            CRC32 first = new CRC32();
+            first.update(data, 0, split);
+            CRC32 second = new CRC32();
+            second.update(data, split, data.length - split);
+            assertThat(ParallelEntryDeflater.combineCrc(first.getValue(), second.getValue(), data.length - split))
+                    .isEqualTo(whole.getValue());
+        }
+    }
+
+    @Test
+    void parallelCompressionProducesSameContent() throws Exception {
+        Consumer<Workbook> content = wb -> {
+            Worksheet ws = wb.newWorksheet("Sheet 1");
+            for (int r = 0; r < 50_000; ++r) {
+                ws.value(r, 0, "Row " + r);
+                ws.value(r, 1, r * 1.5);
+            }
+            // Empty worksheet: a single, last block with no input
+            wb.newWorksheet("Sheet 2");
+        };
+        byte[] serial = writeWorkbook(content);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            byte[] parallel = writeWorkbook(wb -> {
+                wb.setParallelCompression(pool, 32 * 1024);
+                content.accept(wb);
+            });
+            byte[] parallelSpooled = writeWorkbook(wb -> {
+                wb.setParallelCompression(pool, 32 * 1024);
+                wb.setParallelWorksheetCompression(true, 8 * 1024);
+                content.accept(wb);
+            });
+            Map<String, byte[]> expected = unzip(serial);
+            assertThat(unzip(parallel)).containsOnlyKeys(expected.keySet());
+            assertThat(unzip(parallelSpooled)).containsOnlyKeys(expected.keySet());
+            for (Map.Entry<String, byte[]> e : expected.entrySet()) {
+                if (!e.getKey().equals("docProps/core.xml")) {
+                    assertThat(unzip(parallel).get(e.getKey())).as(e.getKey()).isEqualTo(e.getValue());
+                    assertThat(unzip(parallelSpooled).get(e.getKey())).as(e.getKey()).isEqualTo(e.getValue());
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void asyncOutputProducesSameContent() throws Exception {
+        Consumer<Workbook> content = wb -> {
+            Worksheet ws = wb.newWorksheet("Sheet 1");
+            for (int r = 0; r < 50_000; ++r) {
+                ws.value(r, 0, "Row " + r);
+                ws.value(r, 1, r * 1.5);
+            }
+            ws.comment(0, 0, "Comment");
+            wb.newWorksheet("Sheet 2").value(0, 0, "Second");
+        };
+        Map<String, byte[]> expected = unzip(writeWorkbook(content));
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            AsyncOutputStats[] stats = new AsyncOutputStats[1];
+            byte[] async = writeWorkbook(wb -> {
+                wb.setAsyncOutput(2);
+                content.accept(wb);
+                stats[0] = wb.getAsyncOutputStats();
+            });
+            byte[] asyncParallel = writeWorkbook(wb -> {
+                wb.setAsyncOutput(4);
+                wb.setParallelCompression(pool, 32 * 1024);
+                wb.setParallelWorksheetCompression(true, 8 * 1024);
+                content.accept(wb);
+            });
+            assertThat(stats[0].getMaxQueueDepth()).isBetween(0, 2);
+            for (byte[] data : new byte[][]{async, asyncParallel}) {
+                Map<String, byte[]> actual = unzip(data);
+                assertThat(actual).containsOnlyKeys(expected.keySet());
+                for (Map.Entry<String, byte[]> e : expected.entrySet()) {
+                    if (!e.getKey().equals("docProps/core.xml")) {
+                        assertThat(actual.get(e.getKey())).as(e.getKey()).isEqualTo(e.getValue());
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void asyncOutputStallsOnSlowStream() throws Exception {
+        OutputStream slow = new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        Workbook wb = new Workbook(slow, "Test", "1.0");
+        wb.setCompressionLevel(0);
+        wb.setAsyncOutput(1);
+        assertThrows(IllegalStateException.class, () -> wb.setAsyncOutput(1));
+        Worksheet ws = wb.newWorksheet("Sheet 1");
+        for (int r = 0; r < 200_000; ++r) {
+            ws.value(r, 0, r);
+        }
+        wb.finish();
+        AsyncOutputStats stats = wb.getAsyncOutputStats();
+        assertThat(stats.getQueueDepth()).isZero();
+        assertThat(stats.getMaxQueueDepth()).isEqualTo(1);
+        assertThat(stats.getBuffersWritten()).isGreaterThan(1);
+        assertThat(stats.getStallCount()).isPositive();
+        assertThat(stats.getStallNanos()).isPositive();
+    }
+
+    @Test
+    void asyncOutputThrowsStreamFailure() {
+        OutputStream failing = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+        };
+        Workbook wb = new Workbook(failing, "Test", "1.0");
+        wb.setAsyncOutput(2);
+        wb.newWorksheet("Sheet 1").value(0, 0, "Value");
+        IOException e = assertThrows(IOException.class, wb::finish);
+        assertThat(e).hasMessage("Broken pipe");
+    }
+
+    @Test
+    void asyncOutputThreadStopsWhenFinishFails() throws Exception {
+        Set<Thread> before = outputThreads();
+        Workbook wb = new Workbook(new ByteArrayOutputStream(), "Test", "1.0");
+        wb.setAsyncOutput(2);
+        Set<Thread> started = outputThreads();
+        started.removeAll(before);
+        assertThat(started).hasSize(1);
+        // No worksheet
+        assertThrows(IllegalArgumentException.class, wb::finish);
+        Thread thread = started.iterator().next();
+        thread.join(10_000);
+        assertThat(thread.isAlive()).isFalse();
+        wb.newWorksheet("Sheet 1").value(0, 0, "Value");
+        assertThrows(IllegalStateException.class, wb::finish);
+    }
+
+    @Test
+    void asyncOutputFailsWhenOutputThreadIsInterrupted() throws Exception {
+        Set<Thread> before = outputThreads();
+        AsyncOutput output = new AsyncOutput(1, (b, off, len) -> {
+        });
+        Set<Thread> started = outputThreads();
+        started.removeAll(before);
+        Thread thread = started.iterator().next();
+        thread.interrupt();
+        thread.join(10_000);
+        // Waiting for the dead thread would block forever
+        IOException e = assertTimeoutPreemptively(Duration.ofSeconds(10), () -> assertThrows(IOException.class, output::shutdown));
+        assertThat(e).hasMessage("Output thread interrupted");
+        assertThrows(IOException.class, () -> output.write(new byte[1], 0, 1));
+    }
+
+    private static Set<Thread> outputThreads() {
+        Set<Thread> threads = new HashSet<>();
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if (t.getName().equals("fastexcel-output") && t.isAlive()) {
+                threads.add(t);
+            }
+        }
+        return threads;
+    }
+
+    @Test
+    void styleMergesAreMemoized() throws Exception {
+        StyleCache cache = new StyleCache();
+        StyleDelta bold = new StyleDelta(null, Font.build(true, false, false, null, null, null), Fill.NONE, Border.NONE, null, null);
+        StyleDelta fill = new StyleDelta(null, Font.DEFAULT, Fill.fromColor("ff0000"), Border.NONE, null, null);
+        int boldStyle = cache.mergeAndCacheStyle(0, bold);
+        assertThat(boldStyle).isEqualTo(1);
+        // Equal deltas give the same style
+        assertThat(cache.mergeAndCacheStyle(0, new StyleDelta(null, Font.build(true, false, false, null, null, null), Fill.NONE, Border.NONE, null, null))).isEqualTo(boldStyle);
+        int boldFillStyle = cache.mergeAndCacheStyle(boldStyle, fill);
+        int fillStyle = cache.mergeAndCacheStyle(0, fill);
+        assertThat(boldFillStyle).isEqualTo(2);
+        assertThat(fillStyle).isEqualTo(3);
+        assertThat(cache.mergeAndCacheStyle(boldStyle, fill)).isEqualTo(boldFillStyle);
+        // Merging bold into the fill style gives the existing bold and fill style
+        assertThat(cache.mergeAndCacheStyle(fillStyle, bold)).isEqualTo(boldFillStyle);
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        Writer w = new Writer(os);
+        cache.write(w);
+        w.flush();
+        assertThat(new String(os.toByteArray(), StandardCharsets.UTF_8)).contains("<cellXfs count=\"4\"><xf numFmtId=\"0\" fontId=\"0\" fillId=\"0\"");
+    }
+
+    @Test
+    void cellReferences() throws Exception {
+        StringBuilder expected = new StringBuilder();
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        Writer w = new Writer(os, 64);
+        byte[] row = AddressCodec.encodeRow(Worksheet.MAX_ROWS - 1);
+        for (int c = 0; c < Worksheet.MAX_COLS; ++c) {
+            expected.setLength(0);
+            for (int n = c; n >= 0; n = n / 26 - 1) {
+                expected.insert(0, (char) ('A' + n % 26));
+            }
+            assertThat(AddressCodec.getColumnName(c)).isEqualTo(expected.toString());
+            assertThat(AddressCodec.getColumnLength(c)).isEqualTo(expected.length());
+            os.reset();
+            w.appendCellReference(c, row);
+            w.flush();
+            assertThat(new String(os.toByteArray(), StandardCharsets.US_ASCII)).isEqualTo(expected + "1048576");
+        }
+        assertThat(new Location(0, 0).toString()).isEqualTo("A1");
+    }
+
+    @Test
+    void displayLengthMatchesStringRepresentation() {
+        long[] longs = {0, 1, -1, 9, 10, -10, 99, 100, 123456789, Integer.MAX_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE};
+        double[] doubles = {0.0, -0.0, 1.0, -1.0, 0.5, 43000.0, 9_999_999.0, 10_000_000.0, -9_999_999.0, 1e20, 0.1, 1.0 / 3,
+            -123.456, 1e-5, Double.MAX_VALUE, Double.MIN_VALUE, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+            0.001, 0.000999, 1234567.5, 12345678.5, -2.5e10, 1.5e-10, 19.99, 0.30000000000000004, 1e21, 123e-20};
+        Row row = new Row(4);
+        row.ensureColumn(3);
+        for (long v : longs) {
+            row.setLong(0, v);
+            assertThat(row.getDisplayLength(0)).as("%d", v).isEqualTo(Long.toString(v).length());
+            if (v == (int) v) {
+                row.setInt(1, (int) v);
+                assertThat(row.getDisplayLength(1)).as("%d", v).isEqualTo(Integer.toString((int) v).length());
+            }
+        }
+        for (double v : doubles) {
+            row.setDouble(2, v);
+            assertThat(row.getDisplayLength(2)).as("%s", v).isEqualTo(Double.toString(v).length());
+        }
+        row.setBoolean(3, false);
+        assertThat(row.getDisplayLength(3)).isEqualTo(5);
+        row.setFormula(3, new Formula("A1+1"));
+        assertThat(row.getDisplayLength(3)).isEqualTo(0);
+    }
+
+    @Test
+    void primitiveFloatsAreWrittenLikeBoxedFloats() throws Exception {
+        byte[] data = writeWorkbook(wb -> {
+            Worksheet ws = wb.newWorksheet("Sheet 1");
+            ws.value(0, 0, 0.1f);
+            ws.value(0, 1, Float.valueOf(0.1f));
+            ws.value(0, 2, (short) 7);
+            ws.value(0, 3, (byte) 8);
+            assertThat(ws.value(0, 0)).isEqualTo(0.1f);
+            assertThat(ws.value(0, 2)).isEqualTo((short) 7);
+            assertThat(ws.value(0, 3)).isEqualTo((byte) 8);
+        });
+        String sheet = new String(unzip(data).get("xl/worksheets/sheet1.xml"), StandardCharsets.UTF_8);
+        assertThat(sheet).contains("<c r=\"A1\" t=\"n\"><v>0.1</v></c>", "<c r=\"B1\" t=\"n\"><v>0.1</v></c>");
+    }
+
+    @Test
+    void stringCacheAssignsDenseIndexes() throws Exception {
+        try (StringCache cache = new StringCache(0)) {
+            for (int i = 0; i < 10_000; ++i) {
+                assertThat(cache.intern("s" + i)).isEqualTo(~i);
+            }
+            for (int i = 0; i < 10_000; i += 7) {
+                assertThat(cache.intern("s" + i)).isEqualTo(i);
+                assertThat(cache.get(i)).isEqualTo("s" + i);
+            }
+            // Strings longer than a segment
+            char[] chars = new char[3 * 1024 * 1024];
+            Arrays.fill(chars, '\u00e9');
+            String longString = new String(chars);
+            assertThat(cache.intern(longString)).isEqualTo(~10_000);
+            assertThat(cache.intern("")).isEqualTo(~10_001);
+            assertThat(cache.intern(new String(chars))).isEqualTo(10_000);
+            assertThat(cache.intern("")).isEqualTo(10_001);
+            assertThat(cache.get(10_000)).isEqualTo(longString);
+            assertThat(cache.get(10_001)).isEmpty();
+            // Multi-byte characters, compared without encoding
+            String[] unicode = {"\u00e9t\u00e9", "\u20ac", "\ud83d\ude00", "\u00e9t\u00e8", "\ud83d\ude01!"};
+            for (int i = 0; i < unicode.length; ++i) {
+                assertThat(cache.intern(unicode[i])).isEqualTo(~(10_002 + i));
+            }
+            for (int i = 0; i < unicode.length; ++i) {
+                assertThat(cache.intern(new String(unicode[i].toCharArray()))).isEqualTo(10_002 + i);
+                assertThat(cache.get(10_002 + i)).isEqualTo(unicode[i]);
+            }
+        }
+    }
+
+    @Test
+    void stringCacheIsConsistentAcrossThreads() throws Exception {
+        int numThreads = 8;
+        int numStrings = 20_000;
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        try (StringCache cache = new StringCache(StringStore.DEFAULT_MEMORY_THRESHOLD)) {
+            List<Future<int[]>> futures = new ArrayList<>();
+            for (int t = 0; t < numThreads; ++t) {
+                int offset = t * 1000;
+                futures.add(executor.submit(() -> {
+                    // Each thread caches all strings, starting from a different one
+                    int[] indexes = new int[numStrings];
+                    for (int i = 0; i < numStrings; ++i) {
+                        int n = (i + offset) % numStrings;
+                        int index = cache.intern("s" + n);
+                        indexes[n] = index < 0 ? ~index : index;
+                    }
+                    return indexes;
+                }));
+            }
+            int[] expected = futures.get(0).get();
+            for (Future<int[]> future : futures) {
+                assertThat(future.get()).isEqualTo(expected);
+            }
+            // Indexes are dense
+            assertThat(Arrays.stream(expected).sorted().toArray()).isEqualTo(IntStream.range(0, numStrings).toArray());
+            for (int i = 0; i < numStrings; i += 997) {
+                assertThat(cache.get(expected[i])).isEqualTo("s" + i);
+            }
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            Writer w = new Writer(os);
+            cache.write(w);
+            w.flush();
+            String sst = new String(os.toByteArray(), StandardCharsets.UTF_8);
+            assertThat(sst).contains("count=\"" + (numThreads * numStrings) + "\" uniqueCount=\"" + numStrings + "\"");
+            int n = IntStream.range(0, numStrings).filter(i -> expected[i] == 0).findFirst().getAsInt();
+            assertThat(sst).contains("<si><t>s" + n + "</t></si>");
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void sharedStringsSpilledToDisk() throws Exception {
+        int numRows = 20_000;
+        byte[] data = writeWorkbook(wb -> {
+            wb.setSharedStringsMemoryThreshold(16 * 1024);
+            Worksheet ws = wb.newWorksheet("Sheet 1");
+            for (int r = 0; r < numRows; ++r) {
+                ws.value(r, 0, "Unique \u20ac " + r);
+                ws.value(r, 1, "Dup <" + (r % 10) + ">");
+            }
+        });
+        String sst = new String(unzip(data).get("xl/sharedStrings.xml"), StandardCharsets.UTF_8);
+        assertThat(sst).contains("count=\"" + (2 * numRows) + "\" uniqueCount=\"" + (numRows + 10) + "\"");
+        assertThat(sst).contains("<si><t>Unique &#x20ac; 0</t></si><si><t>Dup &lt;0&gt;</t></si><si><t>Unique &#x20ac; 1</t></si>");
+        assertThat(sst).endsWith("<si><t>Unique &#x20ac; " + (numRows - 1) + "</t></si></sst>");
+    }
+
+    @Test
+    void zipFileReadsWorkbook() throws Exception {
+        Consumer<Workbook> content = wb -> {
+            Worksheet ws = wb.newWorksheet("Sheet 1");
+            for (int r = 0; r < 1000; ++r) {
+                ws.value(r, 0, "Row " + r);
+                ws.value(r, 1, r);
+            }
+            wb.newWorksheet("Sheet 2").value(0, 0, "Value");
+        };
+        Map<String, byte[]> serial = unzip(writeWorkbook(content));
+        Map<String, byte[]> spooled = unzip(writeWorkbook(wb -> {
+            wb.setParallelWorksheetCompression(true);
+            content.accept(wb);
+        }));
+        assertThat(serial).containsKeys("xl/worksheets/sheet1.xml", "xl/worksheets/sheet2.xml");
+        assertThat(spooled).containsOnlyKeys(serial.keySet());
+        assertThat(spooled.get("xl/worksheets/sheet1.xml")).isEqualTo(serial.get("xl/worksheets/sheet1.xml"));
+        assertThat(spooled.get("xl/worksheets/sheet2.xml")).isEqualTo(serial.get("xl/worksheets/sheet2.xml"));
+    }
+
+    /**
+     * Read entries of a zip archive, checking their CRC.
+     */
+    private static Map<String, byte[]> unzip(byte[] data) throws IOException {
+        Map<String, byte[]> entries = new HashMap<>();
+        Path file = Files.createTempFile("fastexcel", ".xlsx");
+        try {
+            Files.write(file, data);
+            try (ZipFile zip = new ZipFile(file.toFile())) {
+                for (ZipEntry entry : Collections.list(zip.entries())) {
+                    try (InputStream in = zip.getInputStream(entry)) {
+                        byte[] content = IOUtils.toByteArray(in);
+                        CRC32 crc = new CRC32();
+                        crc.update(content);
+                        assertThat(crc.getValue()).as(entry.getName()).isEqualTo(entry.getCrc());
+                        assertThat((long) content.length).as(entry.getName()).isEqualTo(entry.getSize());
+                        entries.put(entry.getName(), content);
+                    }
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+        return entries;
+    }
 }
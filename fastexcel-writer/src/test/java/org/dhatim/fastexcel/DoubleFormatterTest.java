@@ -0,0 +1,104 @@
+/*
+ * Copyright 2018 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DoubleFormatterTest {
+
+    private final byte[] buffer = new byte[DoubleFormatter.MAX_LENGTH + 8];
+
+    @Test
+    void notations() {
+        assertFormat(0.25, "0.25");
+        assertFormat(-1234.5678, "-1234.5678");
+        assertFormat(1e-7, "1E-7");
+        assertFormat(1.5e-7, "1.5E-7");
+        assertFormat(0.000123, "1.23E-4");
+        assertFormat(0.0123, "0.0123");
+        assertFormat(123e20, "1.23E22");
+        assertFormat(1e22, "1E22");
+        assertFormat(9007199254740991.0, "9007199254740991");
+        assertFormat(0.1 + 0.2, "0.30000000000000004");
+        assertFormat(1.0 / 3, "0.3333333333333333");
+        assertFormat(Double.MIN_NORMAL, "2.2250738585072014E-308");
+        assertFormat(2 * Double.MIN_VALUE, "9.9E-324");
+        assertFormat(-Double.MAX_VALUE, "-1.7976931348623157E308");
+        assertFormat(Double.NEGATIVE_INFINITY, "-Infinity");
+        assertFormat(Double.longBitsToDouble(0xfff8000000000001L), "NaN");
+    }
+
+    @Test
+    void extremeSignificandsRoundTrip() {
+        for (long e = 0; e < 0x7ff; ++e) {
+            for (long m = 0; m < 256; ++m) {
+                assertRoundTrip(Double.longBitsToDouble(e << 52 | m));
+                assertRoundTrip(Double.longBitsToDouble(e << 52 | ((1L << 52) - 1 - m)));
+                assertRoundTrip(-Double.longBitsToDouble(e << 52 | (1L << 51) + m));
+            }
+        }
+    }
+
+    @Test
+    void randomDoublesRoundTrip() {
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < 1_000_000; ++i) {
+            long bits = random.nextLong();
+            if ((bits >>> 52 & 0x7ff) != 0x7ff) {
+                assertRoundTrip(Double.longBitsToDouble(bits));
+            }
+            assertRoundTrip(random.nextDouble() * 1e6);
+        }
+    }
+
+    @Test
+    void shortDecimalsAreKept() {
+        // Typical spreadsheet values, e.g. prices, are written as typed
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < 200_000; ++i) {
+            BigDecimal d = BigDecimal.valueOf(random.nextLong(1_000_000_000_000L), random.nextInt(-5, 15));
+            double v = d.doubleValue();
+            String s = format(v);
+            assertThat(new BigDecimal(s).compareTo(d)).as(d.toString()).isEqualTo(0);
+        }
+    }
+
+    private void assertFormat(double v, String expected) {
+        assertThat(format(v)).isEqualTo(expected);
+    }
+
+    private void assertRoundTrip(double v) {
+        String s = format(v);
+        assertThat(Double.doubleToRawLongBits(Double.parseDouble(s))).as(s).isEqualTo(Double.doubleToRawLongBits(v));
+        if (v != 0) {
+            // Never more digits than Double.toString(), which gives at least two
+            assertThat(new BigDecimal(s).stripTrailingZeros().precision())
+                    .as(s).isLessThanOrEqualTo(Math.max(2, new BigDecimal(Double.toString(v)).stripTrailingZeros().precision()));
+        }
+    }
+
+    private String format(double v) {
+        int end = DoubleFormatter.format(buffer, 4, v);
+        assertThat(end - 4).isLessThanOrEqualTo(DoubleFormatter.MAX_LENGTH);
+        return new String(buffer, 4, end - 4, StandardCharsets.US_ASCII);
+    }
+}
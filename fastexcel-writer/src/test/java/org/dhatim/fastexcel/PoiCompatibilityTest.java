@@ -2,6 +2,7 @@ package org.dhatim.fastexcel;
 
 import org.apache.poi.ss.usermodel.DataValidation.ErrorStyle;
 import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.ss.util.CellAddress;
 import org.apache.poi.ss.util.CellRangeAddress;
 import org.apache.poi.xssf.usermodel.*;
 import org.junit.jupiter.api.Test;
@@ -9,6 +10,8 @@ import org.openxmlformats.schemas.spreadsheetml.x2006.main.CTAutoFilter;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
 import java.math.BigDecimal;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -16,7 +19,9 @@ import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
@@ -179,6 +184,610 @@ class PoiCompatibilityTest {
         }
     }
 
+    @Test
+    void parallelWorksheetCompression() throws Exception {
+        int numWs = 4;
+        int numRows = 20000;
+        byte[] data = writeWorkbook(wb -> {
+            // Small memory threshold so that some worksheets are spilled to disk
+            wb.setParallelWorksheetCompression(true, 16 * 1024);
+            @SuppressWarnings("unchecked")
+            CompletableFuture<Void>[] cfs = new CompletableFuture[numWs];
+            for (int i = 0; i < cfs.length; ++i) {
+                Worksheet ws = wb.newWorksheet("Sheet " + i);
+                int rows = i == 0 ? 10 : numRows;
+                cfs[i] = CompletableFuture.runAsync(() -> {
+                    try {
+                        for (int r = 0; r < rows; ++r) {
+                            ws.value(r, 0, "Row " + r);
+                            ws.value(r, 1, r);
+                            if (r % 1000 == 999) {
+                                ws.flush();
+                            }
+                        }
+                        ws.comment(0, 0, "Comment");
+                        ws.close();
+                    } catch (IOException ex) {
+                        throw new RuntimeException(ex);
+                    }
+                });
+            }
+            try {
+                CompletableFuture.allOf(cfs).get();
+            } catch (InterruptedException | ExecutionException ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+
+        // Check generated workbook with Apache POI
+        XSSFWorkbook xwb = new XSSFWorkbook(new ByteArrayInputStream(data));
+        assertThat(xwb.getNumberOfSheets()).isEqualTo(numWs);
+        for (int i = 0; i < numWs; ++i) {
+            assertThat(xwb.getSheetName(i)).isEqualTo("Sheet " + i);
+            XSSFSheet xws = xwb.getSheetAt(i);
+            int rows = i == 0 ? 10 : numRows;
+            assertThat(xws.getLastRowNum()).isEqualTo(rows - 1);
+            for (int r = 0; r < rows; ++r) {
+                assertThat(xws.getRow(r).getCell(0).getStringCellValue()).isEqualTo("Row " + r);
+                assertThat(xws.getRow(r).getCell(1).getNumericCellValue()).isEqualTo(r);
+            }
+            assertThat(xws.getCellComments()).hasSize(1);
+        }
+    }
+
+    @Test
+    void rowWriter() throws Exception {
+        int numRows = 5000;
+        byte[] data = writeWorkbook(wb -> {
+            Worksheet ws = wb.newWorksheet("Sheet 1");
+            try {
+                ws.value(0, 0, "Id");
+                ws.value(0, 1, "Name");
+                ws.value(0, 2, "Amount");
+                ws.style(0, 0).bold().set();
+                ws.hideRow(2);
+                ws.rowHeight(3, 30);
+                int idStyle = wb.newStyle().format("0000").id();
+                RowWriter rw = ws.rowWriter();
+                for (int r = 1; r <= numRows; ++r) {
+                    rw.nextRow().cell(r, idStyle);
+                    if (r % 10 == 0) {
+                        rw.skip();
+                    } else {
+                        rw.cell("Name " + (r % 100));
+                    }
+                    rw.cell(r * 0.5).cell(r % 2 == 0).formula("A" + (r + 1) + "*2").inlineString("<" + r + ">");
+                }
+                // Rows after the current row remain randomly accessible
+                ws.value(numRows + 2, 0, "Footer");
+                rw.nextRow().cell("Total");
+                ws.close();
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+
+        XSSFWorkbook xwb = new XSSFWorkbook(new ByteArrayInputStream(data));
+        XSSFSheet xws = xwb.getSheetAt(0);
+        assertThat(xws.getRow(0).getCell(0).getStringCellValue()).isEqualTo("Id");
+        assertThat(xws.getRow(0).getCell(0).getCellStyle().getFont().getBold()).isTrue();
+        assertThat(xws.getRow(2).getZeroHeight()).isTrue();
+        assertThat(xws.getRow(3).getHeightInPoints()).isEqualTo(30f);
+        for (int r = 1; r <= numRows; ++r) {
+            XSSFRow row = xws.getRow(r);
+            assertThat(row.getCell(0).getNumericCellValue()).isEqualTo(r);
+            assertThat(row.getCell(0).getCellStyle().getDataFormatString()).isEqualTo("0000");
+            if (r % 10 == 0) {
+                assertThat(row.getCell(1)).isNull();
+            } else {
+                assertThat(row.getCell(1).getStringCellValue()).isEqualTo("Name " + (r % 100));
+            }
+            assertThat(row.getCell(2).getNumericCellValue()).isEqualTo(r * 0.5);
+            assertThat(row.getCell(3).getBooleanCellValue()).isEqualTo(r % 2 == 0);
+            assertThat(row.getCell(4).getCellFormula()).isEqualTo("A" + (r + 1) + "*2");
+            assertThat(row.getCell(5).getStringCellValue()).isEqualTo("<" + r + ">");
+        }
+        assertThat(xws.getRow(numRows + 1).getCell(0).getStringCellValue()).isEqualTo("Total");
+        assertThat(xws.getRow(numRows + 2).getCell(0).getStringCellValue()).isEqualTo("Footer");
+        assertNull(xws.getRow(numRows + 3));
+    }
+
+    public static class Trade {
+        private final long id;
+        private final String name;
+        private final double price;
+        private final Integer quantity;
+        private final boolean active;
+        private final LocalDate tradeDate;
+
+        Trade(long id, String name, double price, Integer quantity, boolean active, LocalDate tradeDate) {
+            this.id = id;
+            this.name = name;
+            this.price = price;
+            this.quantity = quantity;
+            this.active = active;
+            this.tradeDate = tradeDate;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public double getPrice() {
+            return price;
+        }
+
+        public Integer getQuantity() {
+            return quantity;
+        }
+
+        public boolean isActive() {
+            return active;
+        }
+
+        public LocalDate tradeDate() {
+            return tradeDate;
+        }
+    }
+
+    @Test
+    void autoFlushConcurrentWorksheets() throws Exception {
+        int numRows = 20_000;
+        byte[] data = writeWorkbook(wb -> {
+            wb.setAutoFlushRows(100);
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (int s = 0; s < 4; ++s) {
+                Worksheet ws = wb.newWorksheet("Sheet " + s);
+                int sheet = s;
+                futures.add(CompletableFuture.runAsync(() -> {
+                    for (int r = 0; r < numRows; ++r) {
+                        ws.value(r, 0, sheet);
+                        ws.value(r, 1, "Row " + r);
+                    }
+                    // Flushed automatically, apart from the output stream
+                    assertThat(ws.spooledEntry).isNotNull();
+                }));
+            }
+            try {
+                CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get();
+            } catch (InterruptedException | ExecutionException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        XSSFWorkbook xwb = new XSSFWorkbook(new ByteArrayInputStream(data));
+        for (int s = 0; s < 4; ++s) {
+            XSSFSheet xws = xwb.getSheet("Sheet " + s);
+            assertThat(xws.getLastRowNum()).isEqualTo(numRows - 1);
+            for (int r = 0; r < numRows; r += 997) {
+                assertThat(xws.getRow(r).getCell(0).getNumericCellValue()).isEqualTo(s);
+                assertThat(xws.getRow(r).getCell(1).getStringCellValue()).isEqualTo("Row " + r);
+            }
+        }
+    }
+
+    @Test
+    void parallelRegions() throws Exception {
+        int bands = 4;
+        int bandRows = 5000;
+        byte[] data = writeWorkbook(wb -> {
+            try {
+                Worksheet ws = wb.newWorksheet("Bands");
+                ws.value(0, 0, "Header");
+                ws.rowStyle(3).bold().set();
+                int bold = wb.newStyle().bold().id();
+                List<ParallelRegion> regions = new ArrayList<>();
+                for (int b = 0; b < bands; ++b) {
+                    regions.add(ws.parallelRegion(1 + b * bandRows, 1 + (b + 1) * bandRows));
+                }
+                // Default styles set afterwards do not apply to rows of the regions
+                ws.rowStyle(5).italic().set();
+                ws.columnStyle(1).italic().set();
+                // Rows after the bands are set before the bands are filled
+                ws.value(1 + bands * bandRows, 0, "Footer");
+                // Bands are filled in reverse order
+                List<CompletableFuture<Void>> futures = new ArrayList<>();
+                for (int b = bands - 1; b >= 0; --b) {
+                    ParallelRegion region = regions.get(b);
+                    futures.add(CompletableFuture.runAsync(() -> {
+                        try (ParallelRegion r = region) {
+                            RowWriter w = r.rowWriter();
+                            for (int i = r.getFromRow(); i < r.getToRow(); ++i) {
+                                w.nextRow().cell(i).cell("Value " + (i % 100)).cell(i % 3 == 0, bold);
+                            }
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }));
+                }
+                CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get();
+                ws.finish();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (InterruptedException | ExecutionException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        XSSFWorkbook xwb = new XSSFWorkbook(new ByteArrayInputStream(data));
+        XSSFSheet xws = xwb.getSheetAt(0);
+        assertThat(xws.getRow(0).getCell(0).getStringCellValue()).isEqualTo("Header");
+        for (int i = 1; i <= bands * bandRows; ++i) {
+            XSSFRow row = xws.getRow(i);
+            assertThat(row.getRowNum()).isEqualTo(i);
+            assertThat(row.getCell(0).getNumericCellValue()).isEqualTo(i);
+            assertThat(row.getCell(1).getStringCellValue()).isEqualTo("Value " + (i % 100));
+            assertThat(row.getCell(2).getBooleanCellValue()).isEqualTo(i % 3 == 0);
+            assertThat(row.getCell(2).getCellStyle().getFont().getBold()).isEqualTo(true);
+        }
+        // Row style set before the region was created
+        assertThat(xws.getRow(3).getCell(0).getCellStyle().getFont().getBold()).isTrue();
+        assertThat(xws.getRow(4).getCell(0).getCellStyle().getFont().getBold()).isFalse();
+        assertThat(xws.getRow(5).getCell(0).getCellStyle().getFont().getItalic()).isFalse();
+        // No style of its own: POI reports the default style of the column
+        assertThat(xws.getRow(6).getCell(1).getCTCell().isSetS()).isFalse();
+        assertThat(xws.getRow(1 + bands * bandRows).getCell(0).getStringCellValue()).isEqualTo("Footer");
+        // Shared strings were interned once across regions
+        assertThat(xwb.getSharedStringSource().getUniqueCount()).isEqualTo(102);
+    }
+
+    @Test
+    void writeRecords() throws Exception {
+        int numRows = 1000;
+        LocalDate start = LocalDate.of(2024, 1, 1);
+        List<Trade> trades = IntStream.range(0, numRows)
+                .mapToObj(i -> new Trade(i, i % 7 == 0 ? null : "Trade " + i, i * 0.25, i % 5 == 0 ? null : i, i % 2 == 0, start.plusDays(i)))
+                .collect(Collectors.toList());
+        byte[] data = writeWorkbook(wb -> {
+            try {
+                RowSchema<Trade> schema = RowSchema.builder(Trade.class)
+                        .property("id", "Trade ID").format("0000")
+                        .property("name")
+                        .property("price").format("#,##0.00")
+                        .property("quantity")
+                        .property("active")
+                        .property("tradeDate")
+                        .numberColumn("Amount", t -> t.getPrice() * 2)
+                        .build();
+                Worksheet ws = wb.newWorksheet("Trades");
+                ws.value(0, 0, "Title");
+                ws.writeRecords(schema, trades);
+                ws.close();
+                // Getters invoked through method handles rather than generated classes
+                RowSchema<Trade> handles = RowSchema.builder(Trade.class, MethodHandles.publicLookup())
+                        .property("name")
+                        .property("quantity")
+                        .withoutHeader()
+                        .build();
+                wb.newWorksheet("Handles").writeRecords(handles, trades);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        XSSFWorkbook xwb = new XSSFWorkbook(new ByteArrayInputStream(data));
+        XSSFSheet xws = xwb.getSheet("Trades");
+        assertThat(xws.getRow(0).getCell(0).getStringCellValue()).isEqualTo("Title");
+        assertThat(IntStream.range(0, 7).mapToObj(c -> xws.getRow(1).getCell(c).getStringCellValue()))
+                .containsExactly("Trade ID", "name", "price", "quantity", "active", "tradeDate", "Amount");
+        for (int i = 0; i < numRows; ++i) {
+            XSSFRow row = xws.getRow(i + 2);
+            assertThat(row.getCell(0).getNumericCellValue()).isEqualTo(i);
+            assertThat(row.getCell(0).getCellStyle().getDataFormatString()).isEqualTo("0000");
+            if (i % 7 == 0) {
+                assertThat(row.getCell(1)).isNull();
+            } else {
+                assertThat(row.getCell(1).getStringCellValue()).isEqualTo("Trade " + i);
+            }
+            assertThat(row.getCell(2).getNumericCellValue()).isEqualTo(i * 0.25);
+            assertThat(row.getCell(2).getCellStyle().getDataFormatString()).isEqualTo("#,##0.00");
+            if (i % 5 == 0) {
+                assertThat(row.getCell(3)).isNull();
+            } else {
+                assertThat(row.getCell(3).getNumericCellValue()).isEqualTo(i);
+            }
+            assertThat(row.getCell(4).getBooleanCellValue()).isEqualTo(i % 2 == 0);
+            assertThat(row.getCell(5).getLocalDateTimeCellValue().toLocalDate()).isEqualTo(start.plusDays(i));
+            assertThat(row.getCell(5).getCellStyle().getDataFormatString()).isEqualTo("yyyy-mm-dd");
+            assertThat(row.getCell(6).getNumericCellValue()).isEqualTo(i * 0.5);
+        }
+        XSSFSheet handles = xwb.getSheet("Handles");
+        for (int i = 0; i < numRows; ++i) {
+            XSSFRow row = handles.getRow(i);
+            if (i % 7 == 0) {
+                assertThat(row.getCell(0)).isNull();
+            } else {
+                assertThat(row.getCell(0).getStringCellValue()).isEqualTo("Trade " + i);
+            }
+            if (i % 5 != 0) {
+                assertThat(row.getCell(1).getNumericCellValue()).isEqualTo(i);
+            }
+        }
+    }
+
+    @Test
+    void autoFlush() throws Exception {
+        int numRows = 3000;
+        byte[] data = writeWorkbook(wb -> {
+            wb.setAutoFlushRows(100);
+            Worksheet ws1 = wb.newWorksheet("Rows");
+            for (int r = 0; r < numRows; ++r) {
+                ws1.value(r, 0, "Row " + r);
+                ws1.inlineString(r, 1, "Inline " + r);
+            }
+            // Rows flushed automatically can no longer be modified
+            assertThrows(IllegalStateException.class, () -> ws1.value(0, 0, "Too late"));
+            try {
+                ws1.close();
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+            Worksheet ws2 = wb.newWorksheet("Bytes");
+            ws2.setAutoFlush(64 * 1024);
+            for (int r = 0; r < numRows; ++r) {
+                ws2.value(r, 0, r);
+                ws2.formula(r, 1, "A" + (r + 1) + "+1");
+            }
+            assertThrows(IllegalStateException.class, () -> ws2.value(numRows / 2, 0, -1));
+        });
+
+        XSSFWorkbook xwb = new XSSFWorkbook(new ByteArrayInputStream(data));
+        XSSFSheet xws1 = xwb.getSheetAt(0);
+        XSSFSheet xws2 = xwb.getSheetAt(1);
+        assertThat(xws1.getLastRowNum()).isEqualTo(numRows - 1);
+        assertThat(xws2.getLastRowNum()).isEqualTo(numRows - 1);
+        for (int r = 0; r < numRows; ++r) {
+            assertThat(xws1.getRow(r).getCell(0).getStringCellValue()).isEqualTo("Row " + r);
+            assertThat(xws1.getRow(r).getCell(1).getStringCellValue()).isEqualTo("Inline " + r);
+            assertThat(xws2.getRow(r).getCell(0).getNumericCellValue()).isEqualTo(r);
+            assertThat(xws2.getRow(r).getCell(1).getCellFormula()).isEqualTo("A" + (r + 1) + "+1");
+        }
+    }
+
+    @Test
+    void adaptiveStringStorage() throws Exception {
+        int numRows = 5000;
+        List<StringColumnStats> stats = new ArrayList<>();
+        byte[] data = writeWorkbook(wb -> {
+            wb.setStringStoragePolicy(StringStoragePolicy.ADAPTIVE);
+            Worksheet ws = wb.newWorksheet("Sheet 1");
+            ws.setStringStoragePolicy(3, StringStoragePolicy.INLINE);
+            for (int r = 0; r < numRows; ++r) {
+                ws.value(r, 0, "Status " + (r % 5));
+                ws.value(r, 1, "Unique " + r);
+            }
+            try {
+                RowWriter rw = ws.rowWriter();
+                for (int r = numRows; r < 2 * numRows; ++r) {
+                    rw.nextRow().cell("Status " + (r % 5)).cell("Unique " + r).skip().cell("Note");
+                }
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+            stats.addAll(ws.getStringColumnStats());
+        });
+
+        assertThat(stats).hasSize(3);
+        assertThat(stats.get(0).getColumn()).isEqualTo(0);
+        assertThat(stats.get(0).isInlined()).isFalse();
+        assertThat(stats.get(0).getSharedCount()).isEqualTo(2 * numRows);
+        assertThat(stats.get(0).getSampleUniqueCount()).isEqualTo(5);
+        assertThat(stats.get(1).isInlined()).isTrue();
+        assertThat(stats.get(1).getSharedCount()).isEqualTo(StringColumnStats.SAMPLE_SIZE);
+        assertThat(stats.get(1).getInlineCount()).isEqualTo(2 * numRows - StringColumnStats.SAMPLE_SIZE);
+        assertThat(stats.get(1).toString()).isEqualTo("B: ADAPTIVE -> inline, shared=1000, inline=9000, sampled unique=1000/1000");
+        assertThat(stats.get(2).getPolicy()).isEqualTo(StringStoragePolicy.INLINE);
+        assertThat(stats.get(2).getInlineCount()).isEqualTo(numRows);
+
+        XSSFWorkbook xwb = new XSSFWorkbook(new ByteArrayInputStream(data));
+        XSSFSheet xws = xwb.getSheetAt(0);
+        // Status codes and sampled unique strings only
+        assertThat(xwb.getSharedStringSource().getUniqueCount()).isEqualTo(5 + StringColumnStats.SAMPLE_SIZE);
+        for (int r = 0; r < 2 * numRows; ++r) {
+            assertThat(xws.getRow(r).getCell(0).getStringCellValue()).isEqualTo("Status " + (r % 5));
+            assertThat(xws.getRow(r).getCell(1).getStringCellValue()).isEqualTo("Unique " + r);
+        }
+        assertThat(xws.getRow(numRows).getCell(3).getStringCellValue()).isEqualTo("Note");
+    }
+
+    @Test
+    void rowAttributesAcrossFlushes() throws Exception {
+        byte[] data = writeWorkbook(wb -> {
+            Worksheet ws = wb.newWorksheet("Sheet 1");
+            ws.hideRow(2);
+            ws.groupRows(10, 12);
+            ws.rowHeight(11, 30);
+            try {
+                for (int r = 0; r < 5000; ++r) {
+                    ws.value(r, 0, r);
+                    if (r % 100 == 99) {
+                        ws.flush();
+                    }
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            ws.rowHeight(6000, 12.5);
+            ws.value(6000, 1, "tall");
+            ws.rowStyle(500_000).fillColor(Color.GRAY2).set();
+            ws.hideRow(Worksheet.MAX_ROWS - 1);
+        });
+
+        XSSFWorkbook xwb = new XSSFWorkbook(new ByteArrayInputStream(data));
+        XSSFSheet xws = xwb.getSheetAt(0);
+        assertThat(xws.getRow(2).getZeroHeight()).isTrue();
+        assertThat(xws.getRow(3).getZeroHeight()).isFalse();
+        assertThat(xws.getRow(10).getOutlineLevel()).isEqualTo(1);
+        assertThat(xws.getRow(13).getOutlineLevel()).isZero();
+        assertThat(xws.getRow(11).getHeightInPoints()).isEqualTo(30f);
+        assertThat(xws.getRow(6000).getHeightInPoints()).isEqualTo(12.5f);
+        assertThat(xws.getRow(500_000).getRowStyle().getFillForegroundXSSFColor().getARGBHex()).isEqualTo("FF" + Color.GRAY2);
+        assertThat(xws.getRow(Worksheet.MAX_ROWS - 1).getZeroHeight()).isTrue();
+        assertThat(xws.getPhysicalNumberOfRows()).isEqualTo(5003);
+    }
+
+    @Test
+    void rowAndColumnStyles() throws Exception {
+        byte[] data = writeWorkbook(wb -> {
+            Worksheet ws = wb.newWorksheet("Sheet 1");
+            ws.columnStyle(1).format("yyyy-mm-dd").set();
+            ws.columnStyle(1).horizontalAlignment("center").set();
+            ws.columnStyle(3).italic().set();
+            ws.rowStyle(0).bold().set();
+            ws.rowStyle(5).fillColor(Color.GRAY4).set();
+            ws.value(0, 0, "Date");
+            ws.value(0, 1, "Header");
+            ws.value(1, 0, "Value");
+            ws.value(1, 1, 43000);
+            ws.value(2, 1, 43001);
+            ws.style(2, 1).italic().set();
+            try {
+                RowWriter rw = ws.rowWriter();
+                rw.nextRow().cell("Row writer").cell(43002);
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+
+        XSSFWorkbook xwb = new XSSFWorkbook(new ByteArrayInputStream(data));
+        XSSFSheet xws = xwb.getSheetAt(0);
+        // Column default style, without cells
+        assertThat(xws.getColumnStyle(1).getDataFormatString()).isEqualTo("yyyy-mm-dd");
+        assertThat(xws.getColumnStyle(1).getAlignment()).isEqualTo(HorizontalAlignment.CENTER);
+        assertThat(xws.getColumnStyle(0).getIndex()).isEqualTo((short) 0);
+        assertThat(((XSSFCellStyle) xws.getColumnStyle(3)).getFont().getItalic()).isTrue();
+        assertThat(xws.getColumnWidth(3)).isEqualTo(xws.getColumnWidth(100));
+        // Row default styles, including a row without cells
+        assertThat(xws.getRow(0).isFormatted()).isTrue();
+        assertThat(xws.getRow(0).getRowStyle().getFont().getBold()).isTrue();
+        assertThat(xws.getRow(5).isFormatted()).isTrue();
+        assertThat(xws.getRow(5).getRowStyle().getFillPattern()).isEqualTo(FillPatternType.SOLID_FOREGROUND);
+        assertThat(xws.getRow(1).isFormatted()).isFalse();
+        // Cells inherit the default style of their row, then of their column
+        assertThat(xws.getRow(0).getCell(0).getCellStyle().getFont().getBold()).isTrue();
+        assertThat(xws.getRow(0).getCell(1).getCellStyle().getDataFormatString()).isEqualTo("General");
+        assertThat(xws.getRow(1).getCell(0).getCellStyle().getIndex()).isEqualTo((short) 0);
+        assertThat(xws.getRow(1).getCell(1).getCellStyle().getDataFormatString()).isEqualTo("yyyy-mm-dd");
+        assertThat(xws.getRow(3).getCell(1).getCellStyle().getDataFormatString()).isEqualTo("yyyy-mm-dd");
+        // Cell styles are merged with the inherited style
+        XSSFCellStyle merged = xws.getRow(2).getCell(1).getCellStyle();
+        assertThat(merged.getDataFormatString()).isEqualTo("yyyy-mm-dd");
+        assertThat(merged.getAlignment()).isEqualTo(HorizontalAlignment.CENTER);
+        assertThat(merged.getFont().getItalic()).isTrue();
+    }
+
+    @Test
+    void autoSizeColumns() throws Exception {
+        byte[] data = writeWorkbook(wb -> {
+            Worksheet ws = wb.newWorksheet("Sheet 1");
+            ws.value(0, 0, "A long title spanning several columns");
+            ws.range(0, 0, 0, 3).merge();
+            ws.value(1, 0, "Name");
+            ws.value(1, 1, 123456);
+            ws.value(1, 2, 1.5);
+            ws.value(2, 2, true);
+            ws.value(2, 3, "Hidden later, long value");
+            ws.hideRow(2);
+            ws.formula(3, 3, "SUM(B1:B10000000)");
+            ws.width(4, 20);
+            ws.value(1, 4, "Ignored");
+
+            Worksheet sample = wb.newWorksheet("Sheet 2");
+            sample.autoSizeColumns(10);
+            for (int r = 0; r < 100; ++r) {
+                sample.value(r, 0, r < 10 ? "abc" : "a longer value outside the sample");
+            }
+        });
+
+        XSSFWorkbook xwb = new XSSFWorkbook(new ByteArrayInputStream(data));
+        XSSFSheet xws = xwb.getSheetAt(0);
+        assertThat(xws.getColumnWidth(0)).isEqualTo(autoWidth("Name".length()));
+        assertThat(xws.getColumnWidth(1)).isEqualTo(autoWidth("123456".length()));
+        // Values of hidden rows are ignored
+        assertThat(xws.getColumnWidth(2)).isEqualTo(autoWidth("1.5".length()));
+        assertThat(xws.getColumnWidth(3)).isEqualTo(xws.getDefaultColumnWidth() * 256);
+        assertThat(xws.getColumnWidth(4)).isEqualTo(20 * 256);
+        assertThat(xwb.getSheetAt(1).getColumnWidth(0)).isEqualTo(autoWidth("abc".length()));
+    }
+
+    private static int autoWidth(int length) {
+        return (int) ((length * 7 + 10) / 7.0 * 256);
+    }
+
+    @Test
+    void bulkValues() throws Exception {
+        LocalDate date = LocalDate.of(2024, 2, 29);
+        byte[] data = writeWorkbook(wb -> {
+            Worksheet ws = wb.newWorksheet("Sheet 1");
+            int bold = wb.newStyle().bold().id();
+            ws.writeRow(0, "Name", 2.5, 3L, true, date, null, 7);
+            ws.writeRow(1, 1, new double[]{1.25, -2, 1e20});
+            ws.writeRow(2, 2, new long[]{Long.MAX_VALUE, 0});
+            ws.writeColumn(5, 3, new double[]{0.5, 1.5, 2.5}, bold);
+            ws.writeColumn(6, 2, new long[]{10, 20}, 0);
+            ws.value(6, 0, 42);
+            ws.value(6, 1, 4.2);
+            ws.value(6, 2, 42L);
+            assertThat(ws.value(6, 0)).isEqualTo(42);
+            assertThat(ws.value(6, 2)).isEqualTo(42L);
+
+            assertThrows(IllegalArgumentException.class, () -> ws.writeRow(7, Worksheet.MAX_COLS - 1, new double[]{1, 2}));
+            assertThrows(IllegalArgumentException.class, () -> ws.writeRow(7, -1, new long[]{1}));
+            assertThrows(IllegalArgumentException.class, () -> ws.writeColumn(0, Worksheet.MAX_ROWS - 1, new double[]{1, 2}, 0));
+            assertThrows(IllegalArgumentException.class, () -> ws.writeRow(7, new Object()));
+            try {
+                ws.flush();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            assertThrows(IllegalStateException.class, () -> ws.writeColumn(1, 5, new long[]{1}, 0));
+        });
+
+        XSSFWorkbook xwb = new XSSFWorkbook(new ByteArrayInputStream(data));
+        XSSFSheet xws = xwb.getSheetAt(0);
+        XSSFRow row = xws.getRow(0);
+        assertThat(row.getCell(0).getStringCellValue()).isEqualTo("Name");
+        assertThat(row.getCell(1).getNumericCellValue()).isEqualTo(2.5);
+        assertThat(row.getCell(2).getNumericCellValue()).isEqualTo(3);
+        assertThat(row.getCell(3).getBooleanCellValue()).isTrue();
+        assertThat(row.getCell(4).getNumericCellValue()).isEqualTo(TimestampUtil.toSerial(date));
+        assertThat(row.getCell(5)).isNull();
+        assertThat(row.getCell(6).getNumericCellValue()).isEqualTo(7);
+        assertThat(xws.getRow(1).getCell(0)).isNull();
+        assertThat(xws.getRow(1).getCell(3).getNumericCellValue()).isEqualTo(1e20);
+        assertThat(xws.getRow(2).getCell(2).getRawValue()).isEqualTo(Long.toString(Long.MAX_VALUE));
+        for (int r = 3; r < 6; ++r) {
+            XSSFCell cell = xws.getRow(r).getCell(5);
+            assertThat(cell.getNumericCellValue()).isEqualTo(r - 2.5);
+            assertThat(cell.getCellStyle().getFont().getBold()).isTrue();
+        }
+        assertThat(xws.getRow(3).getCell(6).getNumericCellValue()).isEqualTo(20);
+        assertThat(xws.getRow(3).getCell(6).getCellStyle().getFont().getBold()).isFalse();
+        assertThat(xws.getRow(6).getCell(1).getNumericCellValue()).isEqualTo(4.2);
+        assertThat(xws.getColumnWidth(3)).isEqualTo(autoWidth("1.0E20".length()));
+    }
+
+    @Test
+    void rowWriterRequiresCurrentRow() throws Exception {
+        writeWorkbook(wb -> {
+            Worksheet ws = wb.newWorksheet("Sheet 1");
+            try {
+                RowWriter rw = ws.rowWriter();
+                assertThrows(IllegalStateException.class, () -> rw.cell("No row"));
+                rw.nextRow().cell("Value");
+                ws.value(1, 0, "Buffered");
+                assertThrows(IllegalStateException.class, rw::nextRow);
+                ws.close();
+            } catch (IOException ex) {
+                throw new RuntimeException(ex);
+            }
+        });
+    }
+
 
     @Test
     void sortWorksheets() throws Exception {
@@ -199,6 +808,42 @@ class PoiCompatibilityTest {
                 .containsExactly("Sheet 2", "Sheet 1", "Sheet 0");
     }
 
+    @Test
+    void manyFinishedWorksheets() throws Exception {
+        int numWs = 2000;
+        byte[] data = writeWorkbook(wb -> {
+            try {
+                for (int i = 0; i < numWs; ++i) {
+                    Worksheet ws = wb.newWorksheet("Report");
+                    ws.value(0, 0, i);
+                    ws.range(0, 0, 1, 1).merge();
+                    if (i % 100 == 0) {
+                        ws.comment(2, 0, "Comment " + i);
+                        ws.range(3, 0, 4, 1).createTable("A", "B");
+                    }
+                    ws.finish();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        // Check generated workbook with Apache POI
+        XSSFWorkbook xwb = new XSSFWorkbook(new ByteArrayInputStream(data));
+        assertThat(xwb.getNumberOfSheets()).isEqualTo(numWs);
+        assertThat(xwb.getSheetName(0)).isEqualTo("Report");
+        assertThat(xwb.getSheetName(numWs - 1)).isEqualTo("Report_" + (numWs - 1));
+        for (int i = 0; i < numWs; ++i) {
+            XSSFSheet sheet = xwb.getSheetAt(i);
+            assertThat(sheet.getRow(0).getCell(0).getNumericCellValue()).isEqualTo(i);
+            assertThat(sheet.getNumMergedRegions()).isEqualTo(1);
+            if (i % 100 == 0) {
+                assertThat(sheet.getCellComment(new CellAddress(2, 0)).getString().getString()).isEqualTo("Comment " + i);
+                assertThat(sheet.getTables()).hasSize(1);
+            }
+        }
+    }
+
     @Test
     void font() throws Exception {
         String sheetName = "Worksheet 1";
@@ -597,6 +1242,50 @@ class PoiCompatibilityTest {
         );
     }
 
+    @Test
+    void spilledAnnotations() throws IOException {
+        // Longer than 64 KiB in UTF-8, varied enough not to look like a zip bomb
+        StringBuilder longComment = new StringBuilder();
+        for (int i = 0; i < 30_000; ++i) {
+            longComment.append((char) ('\u4e00' + (i * 7919) % 20_000));
+        }
+        byte[] data = writeWorkbook(wb -> {
+            Worksheet ws = wb.newWorksheet("Worksheet 1");
+            ws.comment(0, 1, "kept <&>");
+            ws.hyperlink(0, 0, new HyperLink("https://github.com/dhatim/fastexcel", "Before"));
+            ws.spillAnnotations();
+            ws.range(1, 0, 1, 2).setHyperlink(new HyperLink("https://www.dhatim.com", "Range"));
+            ws.comment(2, 3, longComment.toString());
+            ws.range(5, 0, 6, 1).createTable("A", "B");
+            try {
+                for (int r = 10; r < 2010; ++r) {
+                    ws.comment(r, 0, "Comment " + r);
+                    ws.hyperlink(r, 1, new HyperLink("https://www.dhatim.com/" + r, "Link " + r));
+                    if (r % 100 == 0) {
+                        ws.flush();
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        XSSFWorkbook xwb = new XSSFWorkbook(new ByteArrayInputStream(data));
+        XSSFSheet xws = xwb.getSheetAt(0);
+        assertThat(xws.getCellComments()).hasSize(2002);
+        assertThat(xws.getCellComment(new CellAddress(0, 1)).getString().getString()).isEqualTo("kept <&>");
+        assertThat(xws.getCellComment(new CellAddress(2, 3)).getString().getString()).isEqualTo(longComment.toString());
+        assertThat(xws.getCellComment(new CellAddress(2009, 0)).getString().getString()).isEqualTo("Comment 2009");
+        List<XSSFHyperlink> links = xws.getHyperlinkList();
+        assertThat(links).hasSize(2002);
+        assertThat(links.get(0).getCellRef()).isEqualTo("A1");
+        assertThat(links.get(0).getAddress()).isEqualTo("https://github.com/dhatim/fastexcel");
+        assertThat(links.get(1).getCellRef()).isEqualTo("A2:C2");
+        assertThat(links.get(1).getAddress()).isEqualTo("https://www.dhatim.com");
+        assertThat(xws.getHyperlink(1500, 1).getAddress()).isEqualTo("https://www.dhatim.com/1500");
+        assertThat(xws.getTables()).hasSize(1);
+    }
+
     @Test
     void hideGridLines() throws IOException {
         byte[] data = writeWorkbook(wb -> {
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RangeIndexTest {
+
+    @Test
+    void matchesExhaustiveSearch() {
+        SplittableRandom random = new SplittableRandom(42);
+        RangeIndex index = new RangeIndex();
+        List<int[]> ranges = new ArrayList<>();
+        for (int i = 0; i < 20_000; ++i) {
+            int[] q = randomRange(random);
+            boolean expected = ranges.stream().anyMatch(a -> overlap(a, q));
+            assertThat(index.overlaps(q[0], q[1], q[2], q[3])).isEqualTo(expected);
+            if (!expected) {
+                index.add(q[0], q[1], q[2], q[3]);
+                ranges.add(q);
+            }
+        }
+        assertThat(index.size()).isEqualTo(ranges.size()).isGreaterThan(100);
+        for (int i = 0; i < 20_000; ++i) {
+            int r = random.nextInt(1100);
+            int c = random.nextInt(110);
+            assertThat(index.contains(r, c)).isEqualTo(ranges.stream().anyMatch(a -> overlap(a, new int[]{r, c, r, c})));
+        }
+        for (int c = 0; c < 110; ++c) {
+            BitSet expected = new BitSet();
+            for (int[] a : ranges) {
+                if (a[1] <= c && c <= a[3]) {
+                    expected.set(a[0], a[2] + 1);
+                }
+            }
+            BitSet covered = new BitSet();
+            index.coveredRows(c, covered);
+            assertThat(covered).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    void largeRanges() {
+        RangeIndex index = new RangeIndex();
+        index.add(0, 0, 4999, 49);
+        index.add(Worksheet.MAX_ROWS - 1, Worksheet.MAX_COLS - 1, Worksheet.MAX_ROWS - 1, Worksheet.MAX_COLS - 1);
+        assertThat(index.overlaps(4999, 49, 10_000, 100)).isTrue();
+        assertThat(index.overlaps(5000, 0, 10_000, 49)).isFalse();
+        assertThat(index.overlaps(0, 50, Worksheet.MAX_ROWS - 2, Worksheet.MAX_COLS - 1)).isFalse();
+        assertThat(index.contains(2500, 25)).isTrue();
+        assertThat(index.contains(Worksheet.MAX_ROWS - 1, Worksheet.MAX_COLS - 1)).isTrue();
+        assertThat(new RangeIndex().contains(0, 0)).isFalse();
+    }
+
+    private static int[] randomRange(SplittableRandom random) {
+        int top = random.nextInt(1000);
+        int left = random.nextInt(100);
+        return new int[]{top, left, top + random.nextInt(random.nextBoolean() ? 3 : 100), left + random.nextInt(10)};
+    }
+
+    private static boolean overlap(int[] a, int[] b) {
+        return a[0] <= b[2] && b[0] <= a[2] && a[1] <= b[3] && b[1] <= a[3];
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RowMetadataTest {
+
+    @Test
+    void attributes() {
+        RowMetadata metadata = new RowMetadata();
+        assertThat(metadata.getLastRow()).isEqualTo(-1);
+        assertThat(metadata.isHidden(5)).isFalse();
+        assertThat(metadata.getHeight(5)).isNaN();
+        assertThat(metadata.getStyle(Worksheet.MAX_ROWS - 1)).isZero();
+
+        assertThat(metadata.setHidden(5, true)).isTrue();
+        assertThat(metadata.setHidden(5, true)).isFalse();
+        metadata.increaseLevel(5);
+        metadata.increaseLevel(5);
+        metadata.setHeight(3000, 25.5);
+        metadata.setStyle(Worksheet.MAX_ROWS - 1, 4);
+        assertThat(metadata.isHidden(5)).isTrue();
+        assertThat(metadata.getLevel(5)).isEqualTo((byte) 2);
+        assertThat(metadata.getHeight(3000)).isEqualTo(25.5);
+        assertThat(metadata.getHeight(3001)).isNaN();
+        assertThat(metadata.getStyle(Worksheet.MAX_ROWS - 1)).isEqualTo(4);
+        assertThat(metadata.getLastRow()).isEqualTo(Worksheet.MAX_ROWS - 1);
+
+        // Heights alone do not make rows written
+        assertThat(metadata.isWritten(3000)).isFalse();
+        assertThat(metadata.nextWrittenRow(0)).isEqualTo(5);
+        assertThat(metadata.nextWrittenRow(6)).isEqualTo(Worksheet.MAX_ROWS - 1);
+        assertThat(metadata.setHidden(5, false)).isTrue();
+        assertThat(metadata.isWritten(5)).isTrue();
+        assertThat(metadata.isHidden(5)).isFalse();
+        assertThat(metadata.getLevel(5)).isEqualTo((byte) 2);
+        metadata.setStyle(Worksheet.MAX_ROWS - 1, 0);
+        assertThat(metadata.nextWrittenRow(6)).isEqualTo(-1);
+
+        assertThrows(IllegalArgumentException.class, () -> metadata.setHidden(Worksheet.MAX_ROWS, true));
+        assertThrows(IllegalArgumentException.class, () -> metadata.setHeight(-1, 10));
+        for (int i = 2; i < 7; ++i) {
+            metadata.increaseLevel(5);
+        }
+        assertThrows(IllegalStateException.class, () -> metadata.increaseLevel(5));
+        assertThat(metadata.isHidden(5)).isFalse();
+    }
+
+    @Test
+    void copyOfBand() {
+        RowMetadata metadata = new RowMetadata();
+        metadata.setHidden(10, true);
+        metadata.setHeight(2000, 30);
+        metadata.setStyle(2050, 3);
+        metadata.setStyle(5000, 4);
+        RowMetadata copy = metadata.copy(1500, 3000);
+        metadata.setStyle(2050, 5);
+        metadata.setHeight(2001, 12);
+        assertThat(copy.getHeight(2000)).isEqualTo(30);
+        assertThat(copy.getHeight(2001)).isNaN();
+        assertThat(copy.getStyle(2050)).isEqualTo(3);
+        assertThat(copy.isWritten(2050)).isTrue();
+        // Rows of pages outside of the band are not copied
+        assertThat(copy.isHidden(10)).isFalse();
+        assertThat(copy.getStyle(5000)).isZero();
+        assertThat(copy.getLastRow()).isEqualTo(2999);
+        assertThat(new RowMetadata().copy(0, 100).getStyle(0)).isZero();
+    }
+}
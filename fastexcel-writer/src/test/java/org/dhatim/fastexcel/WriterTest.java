@@ -18,6 +18,9 @@ package org.dhatim.fastexcel;
 import org.junit.jupiter.api.Test;
 
 import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
 import static org.assertj.core.api.Assertions.assertThat;
 
 class WriterTest {
@@ -43,4 +46,57 @@ class WriterTest {
         assertThat(s).isEqualTo("some characters are ignored:  or ");
     }
 
+    @Test
+    void testNumbers() throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        Writer w = new Writer(baos, 64);
+        StringBuilder expected = new StringBuilder();
+        long[] longs = {0, 1, -1, 9, 10, 99, 100, 12345, Integer.MAX_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE, 999_999_999_999L, -1_000_000_000_000_000_000L};
+        for (long l : longs) {
+            w.append(l).append(' ');
+            w.append((int) l).append(' ');
+            expected.append(l).append(' ').append((int) l).append(' ');
+        }
+        double[] doubles = {0.0, -0.0, 1.0, -1.0, 123.0, 0.5, 1.234, 9_999_999.0, 10_000_000.0, 1e10, -1e-10, 1e16, 0.001, 0.01, Double.NaN, Double.POSITIVE_INFINITY, Double.MIN_VALUE, Double.MAX_VALUE};
+        String[] formatted = {"0", "-0", "1", "-1", "123", "0.5", "1.234", "9999999", "10000000", "10000000000", "-1E-10", "1E16", "1E-3", "0.01", "NaN", "Infinity", "4.9E-324", "1.7976931348623157E308"};
+        for (int i = 0; i < doubles.length; ++i) {
+            w.append(doubles[i]).append(' ');
+            expected.append(formatted[i]).append(' ');
+        }
+        w.flush();
+        assertThat(baos.toString("UTF-8")).isEqualTo(expected.toString());
+    }
+
+    @Test
+    void testUtf8EncodingAcrossBufferBoundaries() throws Exception {
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder();
+        String[] samples = {"a", "é", "中", "\ud83d\ude01", "<", "Ω"};
+        for (int i = 0; i < 10_000; ++i) {
+            sb.append(samples[random.nextInt(samples.length)]);
+        }
+        String s = sb.toString();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        Writer w = new Writer(baos, 64);
+        w.append(s);
+        w.flush();
+        assertThat(baos.toByteArray()).isEqualTo(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testEscapingMatchesHelper() throws Exception {
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder();
+        String[] samples = {"plain text ", "é", "中文", "\ud83d\ude01", "<", ">", "&", "'", "\"", "\t", "\u0001", "\ud800", "\u007f"};
+        for (int i = 0; i < 5_000; ++i) {
+            sb.append(samples[random.nextInt(samples.length)]);
+        }
+        String s = sb.toString();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        Writer w = new Writer(baos, 64);
+        w.appendEscaped(s);
+        w.flush();
+        assertThat(baos.toString("UTF-8")).isEqualTo(new XmlEscapeHelper().escape(s));
+    }
+
 }
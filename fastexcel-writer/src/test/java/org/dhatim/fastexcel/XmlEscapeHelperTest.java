@@ -15,7 +15,8 @@ class XmlEscapeHelperTest {
 			"with\"signs\",with&quot;signs&quot;",
 			"random&more,random&amp;more",
 			"<this will be escaped \ud83d\ude01>,&lt;this will be escaped &#x1f601;&gt;",
-			"nothing+!()happens,nothing+!()happens"})
+			"nothing+!()happens,nothing+!()happens",
+			"caf\u00e9 \u4e2d,caf&#xe9; &#x4e2d;"})
 	public void testEscaping(String input, String expected) {
 		XmlEscapeHelper xmlEscapeHelper = new XmlEscapeHelper();
 		assertEquals(expected, xmlEscapeHelper.escape(input));
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2016 Dhatim.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.dhatim.fastexcel.jdbc;
+
+import org.apache.poi.xssf.usermodel.XSSFRow;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.dhatim.fastexcel.Workbook;
+import org.dhatim.fastexcel.Worksheet;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ResultSetExporterTest {
+
+    private static final int NB_ROWS = 250;
+    private static final LocalDateTime START = LocalDateTime.of(2024, 3, 1, 8, 30, 15);
+
+    private Connection connection;
+
+    @BeforeEach
+    void createTable() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:export");
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE trades (id BIGINT, name VARCHAR(50), price DECIMAL(20, 4), ratio DOUBLE,"
+                    + " active BOOLEAN, trade_date DATE, trade_time TIME, created TIMESTAMP,"
+                    + " created_tz TIMESTAMP WITH TIME ZONE)");
+        }
+        try (PreparedStatement stmt = connection.prepareStatement("INSERT INTO trades VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+            for (int i = 0; i < NB_ROWS; ++i) {
+                LocalDateTime created = START.plusDays(i).plusMinutes(i);
+                stmt.setLong(1, i);
+                stmt.setString(2, i % 10 == 0 ? null : "Trade " + i);
+                stmt.setBigDecimal(3, new BigDecimal("12345678901234.5678").add(BigDecimal.valueOf(i)));
+                stmt.setDouble(4, i / 8.0);
+                stmt.setBoolean(5, i % 2 == 0);
+                stmt.setObject(6, created.toLocalDate());
+                stmt.setObject(7, created.toLocalTime());
+                stmt.setObject(8, created);
+                stmt.setObject(9, created.atOffset(ZoneOffset.ofHours(2)));
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    @AfterEach
+    void dropTable() throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("DROP TABLE trades");
+        }
+        connection.close();
+    }
+
+    private XSSFWorkbook export(Function<Workbook, ResultSetExporter> exporter) throws Exception {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT * FROM trades ORDER BY id");
+             Workbook wb = new Workbook(os, "Test", "1.0")) {
+            Worksheet last = exporter.apply(wb).export(rs);
+            last.rowWriter().nextRow().cell("End");
+        }
+        return new XSSFWorkbook(new ByteArrayInputStream(os.toByteArray()));
+    }
+
+    @Test
+    void columnTypes() throws Exception {
+        XSSFWorkbook xwb = export(wb -> new ResultSetExporter(wb, "Trades"));
+        assertThat(xwb.getNumberOfSheets()).isEqualTo(1);
+        XSSFSheet xws = xwb.getSheet("Trades");
+        XSSFRow header = xws.getRow(0);
+        assertThat(header.getCell(0).getStringCellValue()).isEqualTo("ID");
+        assertThat(header.getCell(8).getStringCellValue()).isEqualTo("CREATED_TZ");
+        for (int i = 0; i < NB_ROWS; ++i) {
+            XSSFRow row = xws.getRow(i + 1);
+            LocalDateTime created = START.plusDays(i).plusMinutes(i);
+            assertThat(row.getCell(0).getNumericCellValue()).isEqualTo(i);
+            if (i % 10 == 0) {
+                assertThat(row.getCell(1)).isNull();
+            } else {
+                assertThat(row.getCell(1).getStringCellValue()).isEqualTo("Trade " + i);
+            }
+            assertThat(row.getCell(2).getRawValue()).isEqualTo(new BigDecimal("12345678901234.5678").add(BigDecimal.valueOf(i)).toString());
+            assertThat(row.getCell(3).getNumericCellValue()).isEqualTo(i / 8.0);
+            assertThat(row.getCell(4).getBooleanCellValue()).isEqualTo(i % 2 == 0);
+            assertThat(row.getCell(5).getLocalDateTimeCellValue()).isEqualTo(created.toLocalDate().atStartOfDay());
+            assertThat(row.getCell(5).getCellStyle().getDataFormatString()).isEqualTo("yyyy-mm-dd");
+            assertThat(LocalTime.ofSecondOfDay(Math.round(row.getCell(6).getNumericCellValue() * 86400))).isEqualTo(created.toLocalTime());
+            assertThat(row.getCell(6).getCellStyle().getDataFormatString()).isEqualTo("hh:mm:ss");
+            assertThat(row.getCell(7).getLocalDateTimeCellValue()).isEqualTo(created);
+            assertThat(row.getCell(7).getCellStyle().getDataFormatString()).isEqualTo("yyyy-mm-dd hh:mm:ss");
+            assertThat(row.getCell(8).getLocalDateTimeCellValue()).isEqualTo(created);
+        }
+        assertThat(xws.getRow(NB_ROWS + 1).getCell(0).getStringCellValue()).isEqualTo("End");
+    }
+
+    @Test
+    void newWorksheetWhenFull() throws Exception {
+        XSSFWorkbook xwb = export(wb -> new ResultSetExporter(wb, "Trades").maxRowsPerWorksheet(100));
+        // 99 records per worksheet after the header row
+        assertThat(xwb.getNumberOfSheets()).isEqualTo(3);
+        assertThat(xwb.getSheetName(1)).isEqualTo("Trades_1");
+        int id = 0;
+        for (int s = 0; s < 3; ++s) {
+            XSSFSheet xws = xwb.getSheetAt(s);
+            assertThat(xws.getRow(0).getCell(0).getStringCellValue()).isEqualTo("ID");
+            for (int r = 1; r < 100 && id < NB_ROWS; ++r) {
+                assertThat(xws.getRow(r).getCell(0).getNumericCellValue()).isEqualTo(id++);
+            }
+        }
+        assertThat(id).isEqualTo(NB_ROWS);
+        assertThat(xwb.getSheetAt(0).getLastRowNum()).isEqualTo(99);
+        assertThat(xwb.getSheetAt(2).getRow(NB_ROWS - 2 * 99 + 1).getCell(0).getStringCellValue()).isEqualTo("End");
+    }
+
+    @Test
+    void withoutHeader() throws Exception {
+        XSSFWorkbook xwb = export(wb -> new ResultSetExporter(wb, "Trades").withoutHeader().maxRowsPerWorksheet(125));
+        assertThat(xwb.getNumberOfSheets()).isEqualTo(2);
+        assertThat(xwb.getSheetAt(0).getRow(0).getCell(0).getNumericCellValue()).isEqualTo(0);
+        assertThat(xwb.getSheetAt(0).getLastRowNum()).isEqualTo(124);
+        assertThat(xwb.getSheetAt(1).getRow(0).getCell(0).getNumericCellValue()).isEqualTo(125);
+        assertThat(xwb.getSheetAt(1).getRow(125).getCell(0).getStringCellValue()).isEqualTo("End");
+    }
+
+    @Test
+    void invalidRowsPerWorksheet() {
+        assertThrows(IllegalArgumentException.class, () -> new ResultSetExporter(new Workbook(new ByteArrayOutputStream(), "Test", "1.0"), "Trades").maxRowsPerWorksheet(1));
+    }
+}